@@ -26,6 +26,19 @@ public interface Characteristic {
    */
   void supplyValue(JsonObjectBuilder characteristicBuilder);
 
+  /**
+   * supplyValue的异步版本，不阻塞调用线程，在值可用时写入键值对。
+   *
+   * <p>默认实现直接调用{@link #supplyValue(JsonObjectBuilder)}。
+   *
+   * @param characteristicBuilder 添加键值对的JsonObjectBuilder对象，在返回的future完成之前不能使用.
+   * @return 键值对写入后完成的future
+   */
+  default CompletableFuture<Void> supplyValueAsync(JsonObjectBuilder characteristicBuilder) {
+    supplyValue(characteristicBuilder);
+    return CompletableFuture.completedFuture(null);
+  }
+
   /**
    * 构建JSON形式描述的Characteristic对象
    *
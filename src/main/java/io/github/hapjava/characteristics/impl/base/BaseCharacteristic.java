@@ -7,7 +7,6 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
@@ -141,12 +140,27 @@ public abstract class BaseCharacteristic<T> implements Characteristic, Eventable
   /** {@inheritDoc} */
   @Override
   public void supplyValue(JsonObjectBuilder builder) {
-    try {
-      setJsonValue(builder, getValue().get());
-    } catch (InterruptedException | ExecutionException e) {
-      logger.warn("Error retrieving value", e);
-      setJsonValue(builder, getDefault());
+    supplyValueAsync(builder).join();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CompletableFuture<Void> supplyValueAsync(JsonObjectBuilder builder) {
+    CompletableFuture<T> futureValue = getValue();
+
+    if (futureValue == null) {
+      futureValue = CompletableFuture.completedFuture(getDefault());
     }
+
+    return futureValue.handle(
+        (value, t) -> {
+          if (t != null) {
+            logger.warn("Error retrieving value", t);
+            value = getDefault();
+          }
+          setJsonValue(builder, value);
+          return null;
+        });
   }
 
   /** {@inheritDoc} */
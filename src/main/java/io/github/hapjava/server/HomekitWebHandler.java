@@ -10,4 +10,12 @@ public interface HomekitWebHandler {
   void stop();
 
   void resetConnections();
+
+  /**
+   * Resets only the connections created by {@code clientConnectionFactory}, leaving the ones of
+   * other roots served by this handler open.
+   */
+  default void resetConnections(HomekitClientConnectionFactory clientConnectionFactory) {
+    resetConnections();
+  }
 }
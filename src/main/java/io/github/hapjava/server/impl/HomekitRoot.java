@@ -4,11 +4,13 @@ import io.github.hapjava.accessories.Bridge;
 import io.github.hapjava.accessories.HomekitAccessory;
 import io.github.hapjava.server.HomekitAuthInfo;
 import io.github.hapjava.server.HomekitWebHandler;
+import io.github.hapjava.server.impl.connections.EventMetrics;
 import io.github.hapjava.server.impl.connections.HomekitClientConnectionFactoryImpl;
 import io.github.hapjava.server.impl.connections.SubscriptionManager;
+import io.github.hapjava.server.impl.http.HomekitClientConnectionFactory;
 import io.github.hapjava.server.impl.jmdns.JmdnsHomekitAdvertiser;
+import io.github.hapjava.server.impl.pairing.SessionResumptionCache;
 import java.io.IOException;
-import java.net.InetAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,15 +33,11 @@ public class HomekitRoot {
   private final String label;
   private final HomekitRegistry registry;
   private final SubscriptionManager subscriptions = new SubscriptionManager();
+  private final SessionResumptionCache sessions = new SessionResumptionCache();
+  private HomekitClientConnectionFactory connectionFactory;
   private boolean started = false;
   private int configurationIndex = 1;
 
-  HomekitRoot(
-      String label, HomekitWebHandler webHandler, InetAddress localhost, HomekitAuthInfo authInfo)
-      throws IOException {
-    this(label, webHandler, authInfo, new JmdnsHomekitAdvertiser(localhost));
-  }
-
   HomekitRoot(
       String label,
       HomekitWebHandler webHandler,
@@ -80,7 +78,7 @@ public class HomekitRoot {
     logger.trace("Added accessory " + accessory.getName());
     if (started) {
       registry.reset();
-      webHandler.resetConnections();
+      webHandler.resetConnections(connectionFactory);
     }
   }
 
@@ -96,7 +94,7 @@ public class HomekitRoot {
     logger.trace("Removed accessory " + accessory.getName());
     if (started) {
       registry.reset();
-      webHandler.resetConnections();
+      webHandler.resetConnections(connectionFactory);
     }
   }
 
@@ -109,9 +107,11 @@ public class HomekitRoot {
   public void start() {
     started = true;
     registry.reset();
+    connectionFactory =
+        new HomekitClientConnectionFactoryImpl(
+            authInfo, registry, subscriptions, sessions, advertiser);
     webHandler
-        .start(
-            new HomekitClientConnectionFactoryImpl(authInfo, registry, subscriptions, advertiser))
+        .start(connectionFactory)
         .thenAccept(
             port -> {
               try {
@@ -171,6 +171,16 @@ public class HomekitRoot {
     }
   }
 
+  /**
+   * Counters of the events held back, coalesced or dropped for controllers that are connected to
+   * this root but do not read their events fast enough.
+   *
+   * @return the event delivery counters of this root
+   */
+  public EventMetrics getEventMetrics() {
+    return subscriptions.getMetrics();
+  }
+
   HomekitRegistry getRegistry() {
     return registry;
   }
@@ -3,10 +3,20 @@ package io.github.hapjava.server.impl;
 import io.github.hapjava.accessories.HomekitAccessory;
 import io.github.hapjava.server.HomekitAuthInfo;
 import io.github.hapjava.server.impl.http.impl.HomekitHttpServer;
+import io.github.hapjava.server.impl.http.impl.HomekitRuntime;
+import io.github.hapjava.server.impl.http.impl.ServerMetrics;
+import io.github.hapjava.server.impl.http.impl.ServerSettings;
+import io.github.hapjava.server.impl.http.impl.Transport;
+import io.github.hapjava.server.impl.http.impl.WireTap;
+import io.github.hapjava.server.impl.jmdns.JmdnsHomekitAdvertiser;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.security.InvalidAlgorithmParameterException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 
@@ -30,8 +40,10 @@ public class HomekitServer {
 
   // HomeKit的HttpServer，设计为final
   private final HomekitHttpServer http;
-  // 使用的Java JDK的InetAddress
-  private final InetAddress localAddress;
+  // 使用的Java JDK的InetAddress，可以有多个
+  private final List<InetAddress> localAddresses;
+  // 多个HomekitServer共享的运行时，未共享时为null
+  private final HomekitRuntime runtime;
 
   /**
    * HomeKitServer构建实例对象的构造方法。其中包含了创建线程的数量，服务地址，端口。
@@ -44,8 +56,102 @@ public class HomekitServer {
    * @throws IOException 无法绑定时的异常处理
    */
   public HomekitServer(InetAddress localAddress, int port, int nThreads) throws IOException {
-    this.localAddress = localAddress;
-    http = new HomekitHttpServer(localAddress, port, nThreads);
+    this(localAddress, port, nThreads, Transport.AUTO);
+  }
+
+  /**
+   * 指定Netty传输方式的构造方法。默认的{@link Transport#AUTO}在Linux上使用原生epoll，其他平台使用NIO。
+   * 在接入大量accessory且有许多controller保持长连接的bridge上，原生传输可以降低事件分发的延迟和CPU开销。
+   *
+   * @param localAddress 须绑定的本地地址
+   * @param port 须绑定的本地服务的端口
+   * @param nThreads http服务器的线程数量
+   * @param transport 使用的Netty传输方式
+   * @throws IOException 无法绑定时的异常处理
+   */
+  public HomekitServer(InetAddress localAddress, int port, int nThreads, Transport transport)
+      throws IOException {
+    this.localAddresses = Collections.singletonList(localAddress);
+    this.runtime = null;
+    http = new HomekitHttpServer(localAddress, port, nThreads, transport);
+  }
+
+  /**
+   * 分别指定Netty worker事件循环和accessory请求处理线程池大小的构造方法。
+   *
+   * <p>请求处理线程池的队列是有界的，当所有线程都忙且队列已满时，新的请求会直接以HTTP 503应答。
+   *
+   * @param localAddress 须绑定的本地地址
+   * @param port 须绑定的本地服务的端口
+   * @param transport 使用的Netty传输方式
+   * @param workerThreads Netty worker事件循环的数量，0表示使用Netty的默认值
+   * @param handlerThreads 处理（可能阻塞的）accessory请求的线程数量
+   * @param handlerQueueCapacity 等待处理线程的请求队列的容量
+   * @throws IOException 无法绑定时的异常处理
+   */
+  public HomekitServer(
+      InetAddress localAddress,
+      int port,
+      Transport transport,
+      int workerThreads,
+      int handlerThreads,
+      int handlerQueueCapacity)
+      throws IOException {
+    this(
+        Collections.singletonList(localAddress),
+        port,
+        transport,
+        workerThreads,
+        handlerThreads,
+        handlerQueueCapacity);
+  }
+
+  /**
+   * 同时绑定多个本地地址的构造方法，例如多个网卡的IPv4和IPv6地址，所有地址使用同一个端口，并且mDNS会在每个地址上广播，使controller得到对应的地址记录。
+   *
+   * <p>在使用epoll传输时，可以通过{@link ServerSettings#setAcceptorsPerAddress(int)}在每个地址上以SO_REUSEPORT
+   * 绑定多个监听socket，把接受连接的负载分散到多个线程上。
+   *
+   * @param localAddresses 须绑定的本地地址，至少一个
+   * @param port 须绑定的本地服务的端口
+   * @param transport 使用的Netty传输方式
+   * @param workerThreads Netty worker事件循环的数量，0表示使用Netty的默认值
+   * @param handlerThreads 处理（可能阻塞的）accessory请求的线程数量
+   * @param handlerQueueCapacity 等待处理线程的请求队列的容量
+   * @throws IOException 无法绑定时的异常处理
+   */
+  public HomekitServer(
+      Collection<InetAddress> localAddresses,
+      int port,
+      Transport transport,
+      int workerThreads,
+      int handlerThreads,
+      int handlerQueueCapacity)
+      throws IOException {
+    this.localAddresses = new ArrayList<>(localAddresses);
+    this.runtime = null;
+    http =
+        new HomekitHttpServer(
+            localAddresses, port, transport, workerThreads, handlerThreads, handlerQueueCapacity);
+  }
+
+  /**
+   * 基于共享运行时的构造方法。同一个进程中运行多个bridge（例如每个场所或楼层一个）时，所有HomekitServer可以共用同一个{@link
+   * HomekitRuntime}的事件循环、请求处理线程池、定时器以及每个地址上的mDNS响应器，线程数量不会随bridge的数量增加。
+   *
+   * <p>{@link #stop()}只会停止本服务器，共享的运行时须在所有服务器停止之后通过{@link HomekitRuntime#shutdown()}关闭。{@link
+   * #getMetrics()}仍然只统计本服务器的请求。
+   *
+   * @param runtime 共享的运行时
+   * @param localAddresses 须绑定的本地地址，至少一个
+   * @param port 须绑定的本地服务的端口
+   * @throws IOException 无法绑定时的异常处理
+   */
+  public HomekitServer(HomekitRuntime runtime, Collection<InetAddress> localAddresses, int port)
+      throws IOException {
+    this.localAddresses = new ArrayList<>(localAddresses);
+    this.runtime = runtime;
+    http = new HomekitHttpServer(runtime, localAddresses, port);
   }
 
   /**
@@ -79,11 +185,39 @@ public class HomekitServer {
    * 而说回stop方法，其实调用的是底层netty的shutdownGracefully方法，这个方法将会在NettyHomekitHttpService
    * #shutdown()方法中继续分析。
    *
+   * <p>关闭事件循环之前，已建立的连接会先处理完已经收到的请求并写出排队的应答，最多等待 {@link ServerSettings#setDrainTimeout}设置的时间。
    */
   public void stop() {
     http.stop();
   }
 
+  /**
+   * 获取http服务器的运行指标，例如请求处理队列的深度和正在处理请求的线程数量。
+   *
+   * @return 服务器运行指标
+   */
+  public ServerMetrics getMetrics() {
+    return http.getMetrics();
+  }
+
+  /**
+   * 获取http服务器的可调参数，例如每个连接的写缓冲区高低水位线。修改对之后建立的连接生效。
+   *
+   * @return 服务器可调参数
+   */
+  public ServerSettings getSettings() {
+    return http.getSettings();
+  }
+
+  /**
+   * 获取线路监听器，可在运行时针对某一个controller地址开启，按采样率把解密后和加密前的HAP消息记录到固定大小的堆外环形缓冲区中，并可随时导出。
+   *
+   * @return 线路监听器
+   */
+  public WireTap getWireTap() {
+    return http.getWireTap();
+  }
+
   /**
    * Accessory两种类型之一：普通的单个一对一的accessory，非桥接方式
    *
@@ -98,7 +232,7 @@ public class HomekitServer {
   public HomekitStandaloneAccessoryServer createStandaloneAccessory(
       HomekitAuthInfo authInfo, HomekitAccessory accessory)
       throws IOException, ExecutionException, InterruptedException {
-    return new HomekitStandaloneAccessoryServer(accessory, http, localAddress, authInfo);
+    return new HomekitStandaloneAccessoryServer(accessory, http, authInfo, newAdvertiser());
   }
 
   /**
@@ -126,13 +260,21 @@ public class HomekitServer {
       String firmwareRevision,
       String hardwareRevision)
       throws IOException {
-    HomekitRoot root = new HomekitRoot(label, http, localAddress, authInfo);
+    HomekitRoot root = new HomekitRoot(label, http, authInfo, newAdvertiser());
     root.addAccessory(
         new HomekitBridge(
             label, serialNumber, model, manufacturer, firmwareRevision, hardwareRevision));
     return root;
   }
 
+  // 共享运行时的mDNS响应器由所有bridge共用，否则每个accessory root创建自己的响应器
+  private JmdnsHomekitAdvertiser newAdvertiser() throws IOException {
+    if (runtime != null) {
+      return new JmdnsHomekitAdvertiser(runtime.getResponders(localAddresses));
+    }
+    return new JmdnsHomekitAdvertiser(localAddresses);
+  }
+
   /**
    * 下面为默认状态下，通过HomekitUtils工具类随机生成PIN，Mac，Salt以及密钥
    * 服务器端生成用作配对？
@@ -3,8 +3,9 @@ package io.github.hapjava.server.impl;
 import io.github.hapjava.accessories.HomekitAccessory;
 import io.github.hapjava.server.HomekitAuthInfo;
 import io.github.hapjava.server.HomekitWebHandler;
+import io.github.hapjava.server.impl.connections.EventMetrics;
+import io.github.hapjava.server.impl.jmdns.JmdnsHomekitAdvertiser;
 import java.io.IOException;
-import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.concurrent.ExecutionException;
 
@@ -23,10 +24,10 @@ public class HomekitStandaloneAccessoryServer {
   HomekitStandaloneAccessoryServer(
       HomekitAccessory accessory,
       HomekitWebHandler webHandler,
-      InetAddress localhost,
-      HomekitAuthInfo authInfo)
+      HomekitAuthInfo authInfo,
+      JmdnsHomekitAdvertiser advertiser)
       throws UnknownHostException, IOException, ExecutionException, InterruptedException {
-    root = new HomekitRoot(accessory.getName().get(), webHandler, localhost, authInfo);
+    root = new HomekitRoot(accessory.getName().get(), webHandler, authInfo, advertiser);
     root.addAccessory(accessory);
   }
 
@@ -34,4 +35,12 @@ public class HomekitStandaloneAccessoryServer {
   public void start() {
     root.start();
   }
+
+  /**
+   * @return counters of the events held back, coalesced or dropped for slow controllers
+   * @see HomekitRoot#getEventMetrics()
+   */
+  public EventMetrics getEventMetrics() {
+    return root.getEventMetrics();
+  }
 }
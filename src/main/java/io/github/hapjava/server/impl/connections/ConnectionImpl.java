@@ -2,20 +2,21 @@ package io.github.hapjava.server.impl.connections;
 
 import io.github.hapjava.server.HomekitAuthInfo;
 import io.github.hapjava.server.impl.HomekitRegistry;
-import io.github.hapjava.server.impl.crypto.ChachaDecoder;
-import io.github.hapjava.server.impl.crypto.ChachaEncoder;
+import io.github.hapjava.server.impl.crypto.AeadContext;
+import io.github.hapjava.server.impl.crypto.AeadProvider;
+import io.github.hapjava.server.impl.crypto.AeadProviders;
 import io.github.hapjava.server.impl.http.HomekitClientConnection;
 import io.github.hapjava.server.impl.http.HttpRequest;
 import io.github.hapjava.server.impl.http.HttpResponse;
 import io.github.hapjava.server.impl.jmdns.JmdnsHomekitAdvertiser;
+import io.github.hapjava.server.impl.pairing.SessionResumptionCache;
 import io.github.hapjava.server.impl.pairing.UpgradeResponse;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
 import java.util.function.Consumer;
-import org.bouncycastle.util.Pack;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,13 +26,21 @@ import org.slf4j.LoggerFactory;
  */
 class ConnectionImpl implements HomekitClientConnection {
 
+  private static final int MAX_FRAME_LENGTH = 0x400;
+
   private final HttpSession httpSession;
-  private LengthPrefixedByteArrayProcessor binaryProcessor;
-  private int inboundBinaryMessageCount = 0;
-  private int outboundBinaryMessageCount = 0;
-  private byte[] readKey;
-  private byte[] writeKey;
-  private boolean isUpgraded = false;
+  /**
+   * Guards the session keys. Unlike the monitor of the connection, which is held while a request is
+   * handled, it is only ever held briefly, so closing never waits for a slow setter or handshake.
+   */
+  private final Object keysLock = new Object();
+  private AeadContext readContext;
+  private AeadContext writeContext;
+  private final byte[] inboundLength = new byte[2];
+  private byte[] encryptScratch;
+  private volatile boolean isUpgraded = false;
+  private boolean closed = false;
+  private volatile boolean writable = true;
   private final Consumer<HttpResponse> outOfBandMessageCallback;
   private final SubscriptionManager subscriptions;
 
@@ -42,111 +51,144 @@ class ConnectionImpl implements HomekitClientConnection {
       HomekitRegistry registry,
       Consumer<HttpResponse> outOfBandMessageCallback,
       SubscriptionManager subscriptions,
+      SessionResumptionCache sessions,
       JmdnsHomekitAdvertiser advertiser) {
-    httpSession = new HttpSession(authInfo, registry, subscriptions, this, advertiser);
+    httpSession = new HttpSession(authInfo, registry, subscriptions, sessions, this, advertiser);
     this.outOfBandMessageCallback = outOfBandMessageCallback;
     this.subscriptions = subscriptions;
   }
 
   @Override
-  public synchronized HttpResponse handleRequest(HttpRequest request) throws IOException {
-    return doHandleRequest(request);
-  }
-
-  private HttpResponse doHandleRequest(HttpRequest request) throws IOException {
-    HttpResponse response =
+  public synchronized CompletionStage<HttpResponse> handleRequest(HttpRequest request) {
+    CompletionStage<HttpResponse> response =
         isUpgraded
             ? httpSession.handleAuthenticatedRequest(request)
             : httpSession.handleRequest(request);
-    if (response instanceof UpgradeResponse) {
-      isUpgraded = true;
-      readKey = ((UpgradeResponse) response).getReadKey().array();
-      writeKey = ((UpgradeResponse) response).getWriteKey().array();
+    // pairing responses are already complete, so an upgrade takes effect before this returns
+    return response.thenApply(
+        r -> {
+          if (r instanceof UpgradeResponse) {
+            upgrade((UpgradeResponse) r);
+          }
+          LOGGER.trace(r.getStatusCode() + " " + request.getUri());
+          return r;
+        });
+  }
+
+  private void upgrade(UpgradeResponse response) {
+    byte[] readKey = response.getReadKey().array();
+    byte[] writeKey = response.getWriteKey().array();
+    synchronized (keysLock) {
+      if (!closed) {
+        AeadProvider aead = AeadProviders.getDefault();
+        readContext = aead.newContext(readKey, false);
+        writeContext = aead.newContext(writeKey, true);
+        isUpgraded = true;
+      }
     }
-    LOGGER.trace(response.getStatusCode() + " " + request.getUri());
-    return response;
+    Arrays.fill(readKey, (byte) 0);
+    Arrays.fill(writeKey, (byte) 0);
   }
 
   @Override
-  public byte[] decryptRequest(byte[] ciphertext) {
-    if (!isUpgraded) {
-      throw new RuntimeException("Cannot handle binary before connection is upgraded");
-    }
-    if (binaryProcessor == null) {
-      binaryProcessor = new LengthPrefixedByteArrayProcessor();
+  public void decryptRequest(ByteBuffer frame) throws IOException {
+    if (readContext == null) {
+      throw new IOException("Cannot handle binary before connection is upgraded");
     }
-    Collection<byte[]> res = binaryProcessor.handle(ciphertext);
-    if (res.isEmpty()) {
-      return new byte[0];
-    } else {
-      try (ByteArrayOutputStream decrypted = new ByteArrayOutputStream()) {
-        res.stream()
-            .map(msg -> decrypt(msg))
-            .forEach(
-                bytes -> {
-                  try {
-                    decrypted.write(bytes);
-                  } catch (Exception e) {
-                    throw new RuntimeException(e);
-                  }
-                });
-        return decrypted.toByteArray();
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      }
+    if (!frame.hasArray()) {
+      throw new IllegalArgumentException("Frame buffer must be array backed");
     }
+    int length = frame.remaining() - 16;
+    inboundLength[0] = (byte) length;
+    inboundLength[1] = (byte) (length >>> 8);
+    readContext.decrypt(
+        inboundLength, 0, 2, frame.array(), frame.arrayOffset() + frame.position(), length);
+  }
+
+  @Override
+  public int encryptedLength(int plaintextLength) {
+    int frames = (plaintextLength + MAX_FRAME_LENGTH - 1) / MAX_FRAME_LENGTH;
+    return plaintextLength + frames * (2 + 16);
   }
 
   @Override
-  public byte[] encryptResponse(byte[] response) throws IOException {
-    int offset = 0;
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-      while (offset < response.length) {
-        short length = (short) Math.min(response.length - offset, 0x400);
-        byte[] lengthBytes =
-            ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN).putShort(length).array();
-        baos.write(lengthBytes);
-
-        byte[] nonce = Pack.longToLittleEndian(outboundBinaryMessageCount++);
-        byte[] plaintext;
-        if (response.length == length) {
-          plaintext = response;
-        } else {
-          plaintext = new byte[length];
-          System.arraycopy(response, offset, plaintext, 0, length);
+  public void encryptResponse(ByteBuffer plaintext, ByteBuffer ciphertext) throws IOException {
+    if (writeContext == null) {
+      throw new IOException("Connection is not upgraded or has been closed");
+    }
+    if (!ciphertext.hasArray()) {
+      throw new IllegalArgumentException("Ciphertext buffer must be array backed");
+    }
+    byte[] out = ciphertext.array();
+    while (plaintext.hasRemaining()) {
+      int length = Math.min(plaintext.remaining(), MAX_FRAME_LENGTH);
+      // the little endian length is both the frame header and the additional data
+      int lengthOffset = ciphertext.arrayOffset() + ciphertext.position();
+      ciphertext.put((byte) length).put((byte) (length >>> 8));
+
+      byte[] in;
+      int inOffset;
+      if (plaintext.hasArray()) {
+        in = plaintext.array();
+        inOffset = plaintext.arrayOffset() + plaintext.position();
+        // cast so that the Java 8 Buffer.position(int) is linked whichever JDK compiles this
+        ((Buffer) plaintext).position(plaintext.position() + length);
+      } else {
+        // direct buffers, such as pooled header buffers, are staged through a reusable array
+        if (encryptScratch == null) {
+          encryptScratch = new byte[MAX_FRAME_LENGTH];
         }
-        offset += length;
-        baos.write(new ChachaEncoder(writeKey, nonce).encodeCiphertext(plaintext, lengthBytes));
+        in = encryptScratch;
+        inOffset = 0;
+        plaintext.get(in, 0, length);
       }
-      return baos.toByteArray();
-    }
-  }
 
-  private byte[] decrypt(byte[] msg) {
-    byte[] mac = new byte[16];
-    byte[] ciphertext = new byte[msg.length - 16];
-    System.arraycopy(msg, 0, ciphertext, 0, msg.length - 16);
-    System.arraycopy(msg, msg.length - 16, mac, 0, 16);
-    byte[] additionalData =
-        ByteBuffer.allocate(2)
-            .order(ByteOrder.LITTLE_ENDIAN)
-            .putShort((short) (msg.length - 16))
-            .array();
-    try {
-      byte[] nonce = Pack.longToLittleEndian(inboundBinaryMessageCount++);
-      return new ChachaDecoder(readKey, nonce).decodeCiphertext(mac, additionalData, ciphertext);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+      writeContext.encrypt(out, lengthOffset, 2, in, inOffset, length, out, lengthOffset + 2);
+      ((Buffer) ciphertext).position(ciphertext.position() + length + 16);
     }
   }
 
+  /**
+   * Releases the subscriptions and the session keys once the channel has been closed. Called on the
+   * event loop, so it does not wait for a request that is still being handled.
+   */
   @Override
   public void close() {
     subscriptions.removeConnection(this);
+    httpSession.close();
+    synchronized (keysLock) {
+      closed = true;
+      if (readContext != null) {
+        readContext.destroy();
+        writeContext.destroy();
+      }
+      readContext = null;
+      writeContext = null;
+      encryptScratch = null;
+      isUpgraded = false;
+    }
   }
 
   @Override
   public void outOfBand(HttpResponse message) {
     outOfBandMessageCallback.accept(message);
   }
+
+  @Override
+  public boolean isWritable() {
+    return writable;
+  }
+
+  @Override
+  public void writabilityChanged(boolean writable) {
+    this.writable = writable;
+    if (writable) {
+      subscriptions.flushDeferred(this);
+    }
+  }
+
+  @Override
+  public CompletionStage<Void> drain() {
+    return subscriptions.drain(this);
+  }
 }
@@ -0,0 +1,31 @@
+package io.github.hapjava.server.impl.connections;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of events held back for controllers that do not read fast enough. An event is deferred
+ * when the write buffer of its connection is above the high water mark, coalesced when a newer
+ * change of the same characteristic replaces one that is still deferred, and dropped when the
+ * connection closes before it could be sent or too many characteristics are already deferred.
+ */
+public class EventMetrics {
+
+  final LongAdder deferred = new LongAdder();
+  final LongAdder coalesced = new LongAdder();
+  final LongAdder dropped = new LongAdder();
+
+  /** @return number of events held back because their connection was not writable */
+  public long getDeferredCount() {
+    return deferred.sum();
+  }
+
+  /** @return number of deferred events replaced by a newer change of the same characteristic */
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  /** @return number of deferred events that were never sent */
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+}
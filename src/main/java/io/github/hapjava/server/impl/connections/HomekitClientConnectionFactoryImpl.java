@@ -6,6 +6,7 @@ import io.github.hapjava.server.impl.http.HomekitClientConnection;
 import io.github.hapjava.server.impl.http.HomekitClientConnectionFactory;
 import io.github.hapjava.server.impl.http.HttpResponse;
 import io.github.hapjava.server.impl.jmdns.JmdnsHomekitAdvertiser;
+import io.github.hapjava.server.impl.pairing.SessionResumptionCache;
 import java.util.function.Consumer;
 
 public class HomekitClientConnectionFactoryImpl implements HomekitClientConnectionFactory {
@@ -13,22 +14,25 @@ public class HomekitClientConnectionFactoryImpl implements HomekitClientConnecti
   private final HomekitAuthInfo authInfo;
   private final HomekitRegistry registry;
   private final SubscriptionManager subscriptions;
+  private final SessionResumptionCache sessions;
   private final JmdnsHomekitAdvertiser advertiser;
 
   public HomekitClientConnectionFactoryImpl(
       HomekitAuthInfo authInfo,
       HomekitRegistry registry,
       SubscriptionManager subscriptions,
+      SessionResumptionCache sessions,
       JmdnsHomekitAdvertiser advertiser) {
     this.registry = registry;
     this.authInfo = authInfo;
     this.subscriptions = subscriptions;
+    this.sessions = sessions;
     this.advertiser = advertiser;
   }
 
   @Override
   public HomekitClientConnection createConnection(Consumer<HttpResponse> outOfBandMessageCallback) {
     return new ConnectionImpl(
-        authInfo, registry, outOfBandMessageCallback, subscriptions, advertiser);
+        authInfo, registry, outOfBandMessageCallback, subscriptions, sessions, advertiser);
   }
 }
@@ -12,10 +12,13 @@ import io.github.hapjava.server.impl.json.CharacteristicsController;
 import io.github.hapjava.server.impl.pairing.PairVerificationManager;
 import io.github.hapjava.server.impl.pairing.PairingManager;
 import io.github.hapjava.server.impl.pairing.PairingUpdateController;
+import io.github.hapjava.server.impl.pairing.SessionResumptionCache;
 import io.github.hapjava.server.impl.responses.InternalServerErrorResponse;
 import io.github.hapjava.server.impl.responses.NotFoundResponse;
-import java.io.IOException;
 import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +35,7 @@ class HttpSession {
   private final HomekitAuthInfo authInfo;
   private final HomekitRegistry registry;
   private final SubscriptionManager subscriptions;
+  private final SessionResumptionCache sessions;
   private final HomekitClientConnection connection;
   private final JmdnsHomekitAdvertiser advertiser;
 
@@ -41,67 +45,86 @@ class HttpSession {
       HomekitAuthInfo authInfo,
       HomekitRegistry registry,
       SubscriptionManager subscriptions,
+      SessionResumptionCache sessions,
       HomekitClientConnection connection,
       JmdnsHomekitAdvertiser advertiser) {
     this.authInfo = authInfo;
     this.registry = registry;
     this.subscriptions = subscriptions;
+    this.sessions = sessions;
     this.connection = connection;
     this.advertiser = advertiser;
   }
 
-  public HttpResponse handleRequest(HttpRequest request) throws IOException {
+  public CompletionStage<HttpResponse> handleRequest(HttpRequest request) {
     switch (request.getUri()) {
       case "/pair-setup":
-        return handlePairSetup(request);
+        return CompletableFuture.completedFuture(handlePairSetup(request));
 
       case "/pair-verify":
-        return handlePairVerify(request);
+        return CompletableFuture.completedFuture(handlePairVerify(request));
 
       default:
         if (registry.isAllowUnauthenticatedRequests()) {
           return handleAuthenticatedRequest(request);
         } else {
           logger.warn("Unrecognized request for " + request.getUri());
-          return new NotFoundResponse();
+          return CompletableFuture.completedFuture(NotFoundResponse.INSTANCE);
         }
     }
   }
 
-  public HttpResponse handleAuthenticatedRequest(HttpRequest request) throws IOException {
-    advertiser.setDiscoverable(
-        false); // brigde is already bound and should not be discoverable anymore
+  /**
+   * Handles a request of a verified controller. The returned stage may complete later, once the
+   * accessories involved have answered; it never completes exceptionally.
+   */
+  public CompletionStage<HttpResponse> handleAuthenticatedRequest(HttpRequest request) {
     try {
-      switch (request.getUri()) {
-        case "/accessories":
-          return getAccessoryController().listing();
-
-        case "/characteristics":
-          switch (request.getMethod()) {
-            case PUT:
-              return getCharacteristicsController().put(request, connection);
-
-            default:
-              logger.warn("Unrecognized method for " + request.getUri());
-              return new NotFoundResponse();
-          }
-
-        case "/pairings":
-          return new PairingUpdateController(authInfo, advertiser).handle(request);
-
-        default:
-          if (request.getUri().startsWith("/characteristics?")) {
-            return getCharacteristicsController().get(request);
-          }
-          logger.warn("Unrecognized request for " + request.getUri());
-          return new NotFoundResponse();
-      }
+      advertiser.setDiscoverable(
+          false); // brigde is already bound and should not be discoverable anymore
+      return routeAuthenticatedRequest(request).exceptionally(HttpSession::internalServerError);
     } catch (Exception e) {
-      logger.warn("Could not handle request", e);
-      return new InternalServerErrorResponse(e);
+      return CompletableFuture.completedFuture(internalServerError(e));
+    }
+  }
+
+  private CompletableFuture<HttpResponse> routeAuthenticatedRequest(HttpRequest request)
+      throws Exception {
+    switch (request.getUri()) {
+      case "/accessories":
+        return getAccessoryController().listing();
+
+      case "/characteristics":
+        switch (request.getMethod()) {
+          case PUT:
+            return CompletableFuture.completedFuture(
+                getCharacteristicsController().put(request, connection));
+
+          default:
+            logger.warn("Unrecognized method for " + request.getUri());
+            return CompletableFuture.completedFuture(NotFoundResponse.INSTANCE);
+        }
+
+      case "/pairings":
+        return CompletableFuture.completedFuture(
+            new PairingUpdateController(authInfo, advertiser).handle(request));
+
+      default:
+        if (request.getUri().startsWith("/characteristics?")) {
+          return getCharacteristicsController().get(request);
+        }
+        logger.warn("Unrecognized request for " + request.getUri());
+        return CompletableFuture.completedFuture(NotFoundResponse.INSTANCE);
     }
   }
 
+  private static HttpResponse internalServerError(Throwable t) {
+    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    logger.warn("Could not handle request", cause);
+    return new InternalServerErrorResponse(
+        cause instanceof Exception ? (Exception) cause : new CompletionException(cause));
+  }
+
   private HttpResponse handlePairSetup(HttpRequest request) {
     if (pairingManager == null) {
       synchronized (HttpSession.class) {
@@ -122,7 +145,7 @@ class HttpSession {
     if (pairVerificationManager == null) {
       synchronized (HttpSession.class) {
         if (pairVerificationManager == null) {
-          pairVerificationManager = new PairVerificationManager(authInfo, registry);
+          pairVerificationManager = new PairVerificationManager(authInfo, registry, sessions);
         }
       }
     }
@@ -134,6 +157,12 @@ class HttpSession {
     }
   }
 
+  /** Drops the pairing state of a closed connection. */
+  public void close() {
+    pairingManager = null;
+    pairVerificationManager = null;
+  }
+
   private synchronized AccessoryController getAccessoryController() {
     if (accessoryController == null) {
       accessoryController = new AccessoryController(registry);
@@ -4,12 +4,24 @@ import io.github.hapjava.characteristics.EventableCharacteristic;
 import io.github.hapjava.server.impl.http.HomekitClientConnection;
 import io.github.hapjava.server.impl.http.HttpResponse;
 import io.github.hapjava.server.impl.json.EventController;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,13 +29,41 @@ public class SubscriptionManager {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionManager.class);
 
+  /** Upper bound of characteristics held back for a single connection. */
+  static final int MAX_DEFERRED_EVENTS = 1024;
+
+  /** How long the values of an event may take to read before the event is skipped. */
+  static final long EVENT_READ_TIMEOUT_MILLIS = 10_000;
+
+  /** Shared by every manager; its daemon thread only starts with the first event. */
+  private static final Timer EVENT_READ_TIMER =
+      new HashedWheelTimer(new DefaultThreadFactory("homekit-event-timeout", true));
+
   private final ConcurrentMap<EventableCharacteristic, Set<HomekitClientConnection>> subscriptions =
       new ConcurrentHashMap<>();
   private final ConcurrentMap<HomekitClientConnection, Set<EventableCharacteristic>> reverse =
       new ConcurrentHashMap<>();
   private final ConcurrentMap<HomekitClientConnection, ArrayList<PendingNotification>>
       pendingNotifications = new ConcurrentHashMap<>();
+  private final ConcurrentMap<HomekitClientConnection, Map<Long, PendingNotification>>
+      deferredNotifications = new ConcurrentHashMap<>();
+  private final Set<HomekitClientConnection> draining = newSet();
+  private final EventMetrics metrics = new EventMetrics();
+  /** The last event of each characteristic not yet sent to each connection, guarded by this. */
+  private final Map<HomekitClientConnection, Map<Long, CompletableFuture<Void>>> eventChains =
+      new HashMap<>();
   private int nestedBatches = 0;
+  private final Timer timer;
+  private final long eventReadTimeoutMillis;
+
+  public SubscriptionManager() {
+    this(EVENT_READ_TIMER, EVENT_READ_TIMEOUT_MILLIS);
+  }
+
+  SubscriptionManager(Timer timer, long eventReadTimeoutMillis) {
+    this.timer = timer;
+    this.eventReadTimeoutMillis = eventReadTimeoutMillis;
+  }
 
   public synchronized void addSubscription(
       int aid,
@@ -72,6 +112,12 @@ public class SubscriptionManager {
   public synchronized void removeConnection(HomekitClientConnection connection) {
     Set<EventableCharacteristic> characteristics = reverse.remove(connection);
     pendingNotifications.remove(connection);
+    eventChains.remove(connection);
+    draining.remove(connection);
+    Map<Long, PendingNotification> deferred = deferredNotifications.remove(connection);
+    if (deferred != null) {
+      metrics.dropped.add(deferred.size());
+    }
     if (characteristics != null) {
       for (EventableCharacteristic characteristic : characteristics) {
         Set<HomekitClientConnection> characteristicSubscriptions =
@@ -100,9 +146,10 @@ public class SubscriptionManager {
       LOGGER.trace("Publishing batched changes");
       for (ConcurrentMap.Entry<HomekitClientConnection, ArrayList<PendingNotification>> entry :
           pendingNotifications.entrySet()) {
+        HomekitClientConnection connection = entry.getKey();
+        ArrayList<PendingNotification> notifications = entry.getValue();
         try {
-          HttpResponse message = new EventController().getMessage(entry.getValue());
-          entry.getKey().outOfBand(message);
+          deliver(connection, new EventController().getMessage(notifications), notifications);
         } catch (Exception e) {
           LOGGER.warn("Failed to create new event message", e);
         }
@@ -129,17 +176,189 @@ public class SubscriptionManager {
       return;
     }
 
+    List<PendingNotification> notification =
+        Collections.singletonList(new PendingNotification(accessoryId, iid, changed));
     try {
-      HttpResponse message = new EventController().getMessage(accessoryId, iid, changed);
+      CompletableFuture<HttpResponse> message =
+          new EventController().getMessage(accessoryId, iid, changed);
       LOGGER.trace("Publishing change for " + accessoryId);
       for (HomekitClientConnection connection : subscribers) {
-        connection.outOfBand(message);
+        deliver(connection, message, notification);
       }
     } catch (Exception e) {
       LOGGER.warn("Failed to create new event message", e);
     }
   }
 
+  /**
+   * Sends an event to a connection once the earlier events of the same characteristics have been
+   * sent to it, even when the values are read asynchronously and arrive out of order, so a
+   * controller never ends up with a stale value. Events of other characteristics or to other
+   * connections do not wait for a slow read, and an event whose values have not been read within
+   * {@link #EVENT_READ_TIMEOUT_MILLIS} is skipped so that it does not hold up later ones.
+   */
+  private synchronized void deliver(
+      HomekitClientConnection connection,
+      CompletableFuture<HttpResponse> message,
+      List<PendingNotification> notifications) {
+    Map<Long, CompletableFuture<Void>> chains =
+        eventChains.computeIfAbsent(connection, c -> new HashMap<>());
+    List<CompletableFuture<Void>> earlier = new ArrayList<>();
+    for (PendingNotification notification : notifications) {
+      CompletableFuture<Void> chain = chains.get(key(notification));
+      if (chain != null) {
+        earlier.add(chain);
+      }
+    }
+    CompletableFuture<Void> sent =
+        CompletableFuture.allOf(earlier.toArray(new CompletableFuture<?>[0]))
+            .thenCombine(withReadTimeout(message), (previous, next) -> next)
+            .thenAccept(next -> send(connection, next, notifications))
+            .exceptionally(
+                e -> {
+                  if (e.getCause() instanceof TimeoutException) {
+                    LOGGER.warn(
+                        "Skipping event to {}: {}",
+                        connection.hashCode(),
+                        e.getCause().getMessage());
+                  } else {
+                    LOGGER.warn("Failed to create new event message", e);
+                  }
+                  return null;
+                });
+    for (PendingNotification notification : notifications) {
+      chains.put(key(notification), sent);
+    }
+    sent.thenRun(() -> sent(connection, notifications, sent));
+  }
+
+  private CompletableFuture<HttpResponse> withReadTimeout(CompletableFuture<HttpResponse> message) {
+    if (message.isDone()) {
+      return message;
+    }
+    CompletableFuture<HttpResponse> bounded = new CompletableFuture<>();
+    Timeout timeout =
+        timer.newTimeout(
+            t ->
+                bounded.completeExceptionally(
+                    new TimeoutException(
+                        "values not read within " + eventReadTimeoutMillis + " ms")),
+            eventReadTimeoutMillis,
+            TimeUnit.MILLISECONDS);
+    message.whenComplete(
+        (response, e) -> {
+          timeout.cancel();
+          if (e != null) {
+            bounded.completeExceptionally(e);
+          } else {
+            bounded.complete(response);
+          }
+        });
+    return bounded;
+  }
+
+  /** Forgets the chains that end with an event which has been sent. */
+  private synchronized void sent(
+      HomekitClientConnection connection,
+      List<PendingNotification> notifications,
+      CompletableFuture<Void> sent) {
+    Map<Long, CompletableFuture<Void>> chains = eventChains.get(connection);
+    if (chains == null) {
+      return;
+    }
+    for (PendingNotification notification : notifications) {
+      chains.remove(key(notification), sent);
+    }
+    if (chains.isEmpty()) {
+      eventChains.remove(connection);
+    }
+  }
+
+  private static Long key(PendingNotification notification) {
+    return ((long) notification.aid << 32) | (notification.iid & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Writes an event to a connection, or holds back its changes while the connection is above its
+   * write-buffer high water mark and is not being drained. Only the characteristic is kept, so a
+   * held change is coalesced with later changes of the same characteristic and the current value is
+   * read once it is sent.
+   */
+  private void send(
+      HomekitClientConnection connection,
+      HttpResponse message,
+      List<PendingNotification> notifications) {
+    if (connection.isWritable() || draining.contains(connection)) {
+      connection.outOfBand(message);
+    } else {
+      defer(connection, notifications);
+    }
+  }
+
+  private synchronized void defer(
+      HomekitClientConnection connection, List<PendingNotification> notifications) {
+    if (!reverse.containsKey(connection)) {
+      metrics.dropped.add(notifications.size()); // connection has already been closed
+      return;
+    }
+    Map<Long, PendingNotification> deferred =
+        deferredNotifications.computeIfAbsent(connection, c -> new LinkedHashMap<>());
+    for (PendingNotification notification : notifications) {
+      Long key = key(notification);
+      if (deferred.containsKey(key)) {
+        metrics.coalesced.increment();
+      } else if (deferred.size() >= MAX_DEFERRED_EVENTS) {
+        metrics.dropped.increment();
+      } else {
+        deferred.put(key, notification);
+        metrics.deferred.increment();
+      }
+    }
+  }
+
+  /**
+   * Sends the changes held back for a connection as a single event, once its write buffer has
+   * drained below the low water mark.
+   */
+  public synchronized void flushDeferred(HomekitClientConnection connection) {
+    Map<Long, PendingNotification> deferred = deferredNotifications.remove(connection);
+    if (deferred == null) {
+      return;
+    }
+    LOGGER.trace("Publishing {} deferred changes to {}", deferred.size(), connection.hashCode());
+    ArrayList<PendingNotification> notifications = new ArrayList<>(deferred.values());
+    try {
+      deliver(connection, new EventController().getMessage(notifications), notifications);
+    } catch (Exception e) {
+      LOGGER.warn("Failed to create new event message", e);
+    }
+  }
+
+  /**
+   * Sends the changes held back for a connection that is about to be closed, and any later ones,
+   * without waiting for its write buffer to drain.
+   *
+   * @return a stage completing once every event published to the connection so far has been passed
+   *     to it
+   */
+  public synchronized CompletableFuture<Void> drain(HomekitClientConnection connection) {
+    if (!reverse.containsKey(connection)) {
+      return CompletableFuture.completedFuture(null);
+    }
+    draining.add(connection);
+    flushDeferred(connection);
+    Map<Long, CompletableFuture<Void>> chains = eventChains.get(connection);
+    if (chains == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return CompletableFuture.allOf(
+        new HashSet<>(chains.values()).toArray(new CompletableFuture<?>[0]));
+  }
+
+  public EventMetrics getMetrics() {
+    return metrics;
+  }
+
   /** Remove all existing subscriptions */
   public void removeAll() {
     LOGGER.trace("Removing {} reverse connections from subscription manager", reverse.size());
@@ -0,0 +1,43 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.io.IOException;
+
+/**
+ * ChaCha20-Poly1305 for one direction of a session. The nonce is a counter starting at 0 and
+ * incremented with every frame. Not thread-safe.
+ */
+public interface AeadContext {
+
+  /**
+   * Encrypts {@code length} bytes of {@code in} starting at {@code inOffset} and writes the
+   * ciphertext followed by the 16 byte MAC to {@code out} at {@code outOffset}. The buffers may be
+   * the same.
+   */
+  void encrypt(
+      byte[] additionalData,
+      int additionalDataOffset,
+      int additionalDataLength,
+      byte[] in,
+      int inOffset,
+      int length,
+      byte[] out,
+      int outOffset);
+
+  /**
+   * Authenticates the {@code length} bytes of ciphertext at {@code offset} in {@code buffer}, which
+   * are followed by their 16 byte MAC, and decrypts them in place.
+   *
+   * @throws IOException if the MAC does not match
+   */
+  void decrypt(
+      byte[] additionalData,
+      int additionalDataOffset,
+      int additionalDataLength,
+      byte[] buffer,
+      int offset,
+      int length)
+      throws IOException;
+
+  /** Overwrites the key material; the context cannot be used afterwards. */
+  void destroy();
+}
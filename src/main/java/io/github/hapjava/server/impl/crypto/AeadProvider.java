@@ -0,0 +1,41 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.io.IOException;
+
+/**
+ * An implementation of ChaCha20-Poly1305 as HAP uses it: 32 byte keys, 8 byte nonces and 16 byte
+ * tags. {@link AeadProviders#getDefault()} returns the one in use.
+ */
+public interface AeadProvider {
+
+  /** Short name of the implementation for logging. */
+  String getName();
+
+  /**
+   * Creates the context of one direction of an upgraded session.
+   *
+   * @param key the 32 byte session key of this direction
+   * @param forEncryption whether frames are encrypted or decrypted
+   */
+  AeadContext newContext(byte[] key, boolean forEncryption);
+
+  /**
+   * Encrypts a single message.
+   *
+   * @param nonce 8 bytes
+   * @param additionalData authenticated data, or null
+   * @return the ciphertext followed by the 16 byte tag
+   */
+  byte[] seal(byte[] key, byte[] nonce, byte[] additionalData, byte[] plaintext) throws IOException;
+
+  /**
+   * Authenticates and decrypts a single message.
+   *
+   * @param nonce 8 bytes
+   * @param additionalData authenticated data, or null
+   * @return the plaintext
+   * @throws IOException if the tag does not match
+   */
+  byte[] open(byte[] key, byte[] nonce, byte[] additionalData, byte[] ciphertext, byte[] tag)
+      throws IOException;
+}
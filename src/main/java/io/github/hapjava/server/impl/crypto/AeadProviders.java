@@ -0,0 +1,91 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.bouncycastle.util.encoders.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the ChaCha20-Poly1305 implementation once per process: the JDK cipher where the JDK has
+ * one, otherwise BouncyCastle. An implementation is only chosen if it passes a known answer test.
+ */
+public final class AeadProviders {
+
+  private static final Logger logger = LoggerFactory.getLogger(AeadProviders.class);
+
+  private static final byte[] KEY =
+      Hex.decode("808182838485868788898a8b8c8d8e8f909192939495969798999a9b9c9d9e9f");
+  private static final byte[] NONCE = "PV-Msg02".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] ADDITIONAL_DATA = Hex.decode("50515253c0c1c2");
+  private static final byte[] PLAINTEXT =
+      "Ladies and Gentlemen of the class of '99".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] SEALED =
+      Hex.decode(
+          "3b37af1308f96e2cebb17a58e66211eb9fd198ca794d9da9ed5948338c5ad774"
+              + "19d4109ba49e87f7246683fe54aa74257c582d3e658c53eb");
+
+  private AeadProviders() {}
+
+  /** Returns the implementation in use, choosing it on the first call. */
+  public static AeadProvider getDefault() {
+    return Holder.DEFAULT;
+  }
+
+  /**
+   * Returns the first of the candidates that is available and passes the self test.
+   *
+   * @throws IllegalStateException if none of them does
+   */
+  static AeadProvider select(AeadProvider... candidates) {
+    for (AeadProvider candidate : candidates) {
+      try {
+        selfTest(candidate);
+        logger.debug("Using {} ChaCha20-Poly1305", candidate.getName());
+        return candidate;
+      } catch (Exception | LinkageError e) {
+        logger.debug("{} ChaCha20-Poly1305 cannot be used", candidate.getName(), e);
+      }
+    }
+    throw new IllegalStateException("No ChaCha20-Poly1305 implementation passed the self test");
+  }
+
+  static void selfTest(AeadProvider provider) throws IOException {
+    byte[] sealed = provider.seal(KEY, NONCE, ADDITIONAL_DATA, PLAINTEXT);
+    if (!Arrays.equals(SEALED, sealed)) {
+      throw new IOException("Known answer test failed");
+    }
+    byte[] opened =
+        provider.open(
+            KEY,
+            NONCE,
+            ADDITIONAL_DATA,
+            Arrays.copyOf(sealed, PLAINTEXT.length),
+            Arrays.copyOfRange(sealed, PLAINTEXT.length, sealed.length));
+    if (!Arrays.equals(PLAINTEXT, opened)) {
+      throw new IOException("Known answer could not be decrypted");
+    }
+
+    // the first frame of a session uses the nonce 0
+    byte[] frame = new byte[PLAINTEXT.length + 16];
+    AeadContext encryption = provider.newContext(KEY, true);
+    encryption.encrypt(
+        ADDITIONAL_DATA, 0, ADDITIONAL_DATA.length, PLAINTEXT, 0, PLAINTEXT.length, frame, 0);
+    encryption.destroy();
+    if (!Arrays.equals(provider.seal(KEY, new byte[8], ADDITIONAL_DATA, PLAINTEXT), frame)) {
+      throw new IOException("Session frame does not match");
+    }
+    AeadContext decryption = provider.newContext(KEY, false);
+    decryption.decrypt(ADDITIONAL_DATA, 0, ADDITIONAL_DATA.length, frame, 0, PLAINTEXT.length);
+    decryption.destroy();
+    if (!Arrays.equals(PLAINTEXT, Arrays.copyOf(frame, PLAINTEXT.length))) {
+      throw new IOException("Session frame could not be decrypted");
+    }
+  }
+
+  private static class Holder {
+    static final AeadProvider DEFAULT =
+        select(new JdkAeadProvider(), new BouncyCastleAeadProvider());
+  }
+}
@@ -0,0 +1,29 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.io.IOException;
+
+/** ChaCha20-Poly1305 assembled from the BouncyCastle engines, available on every Java version. */
+class BouncyCastleAeadProvider implements AeadProvider {
+
+  @Override
+  public String getName() {
+    return "BouncyCastle";
+  }
+
+  @Override
+  public AeadContext newContext(byte[] key, boolean forEncryption) {
+    return new ChachaPolyContext(key, forEncryption);
+  }
+
+  @Override
+  public byte[] seal(byte[] key, byte[] nonce, byte[] additionalData, byte[] plaintext)
+      throws IOException {
+    return new ChachaEncoder(key, nonce).encodeCiphertext(plaintext, additionalData);
+  }
+
+  @Override
+  public byte[] open(byte[] key, byte[] nonce, byte[] additionalData, byte[] ciphertext, byte[] tag)
+      throws IOException {
+    return new ChachaDecoder(key, nonce).decodeCiphertext(tag, additionalData, ciphertext);
+  }
+}
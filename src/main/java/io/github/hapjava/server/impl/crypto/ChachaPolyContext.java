@@ -0,0 +1,141 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.bouncycastle.crypto.engines.ChaChaEngine;
+import org.bouncycastle.crypto.generators.Poly1305KeyGenerator;
+import org.bouncycastle.crypto.macs.Poly1305;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.bouncycastle.crypto.tls.AlertDescription;
+import org.bouncycastle.crypto.tls.TlsFatalAlert;
+import org.bouncycastle.util.Pack;
+
+/**
+ * {@link AeadContext} on the BouncyCastle engines, producing the same frames as {@link
+ * ChachaEncoder} and {@link ChachaDecoder}. The engine, the MAC and their parameters are set up
+ * once and reused, so encrypting or decrypting a frame allocates nothing.
+ */
+public class ChachaPolyContext implements AeadContext {
+
+  private static final int MAC_LENGTH = 16;
+  private static final byte[] ZEROES = new byte[MAC_LENGTH];
+
+  private final ChaChaEngine cipher = new ChaChaEngine(20);
+  private final Poly1305 poly = new Poly1305();
+  /** Only changes the nonce when the engine is initialised again. */
+  private final ParametersWithIV nonceParameters = new ParametersWithIV(null, new byte[8]);
+  /** The array of {@link #nonceParameters}, which copies the one it is given. */
+  private final byte[] nonce = nonceParameters.getIV();
+
+  private final KeyParameter macKey = new KeyParameter(new byte[32]);
+  private final byte[] firstBlock = new byte[64];
+  private final byte[] lengths = new byte[16];
+  private final byte[] mac = new byte[MAC_LENGTH];
+  private final boolean forEncryption;
+  private long counter = 0;
+
+  /**
+   * @param key the 32 byte session key of this direction
+   * @param forEncryption whether frames are encrypted or decrypted
+   */
+  public ChachaPolyContext(byte[] key, boolean forEncryption) {
+    this.forEncryption = forEncryption;
+    // the key is set once, later frames only change the nonce
+    cipher.init(forEncryption, new ParametersWithIV(new KeyParameter(key), nonce));
+  }
+
+  @Override
+  public void encrypt(
+      byte[] additionalData,
+      int additionalDataOffset,
+      int additionalDataLength,
+      byte[] in,
+      int inOffset,
+      int length,
+      byte[] out,
+      int outOffset) {
+    if (!forEncryption) {
+      throw new IllegalStateException("Context is for decryption");
+    }
+    nextFrame();
+    cipher.processBytes(in, inOffset, length, out, outOffset);
+    calculateMac(
+        additionalData, additionalDataOffset, additionalDataLength, out, outOffset, length);
+    System.arraycopy(mac, 0, out, outOffset + length, MAC_LENGTH);
+  }
+
+  @Override
+  public void decrypt(
+      byte[] additionalData,
+      int additionalDataOffset,
+      int additionalDataLength,
+      byte[] buffer,
+      int offset,
+      int length)
+      throws IOException {
+    if (forEncryption) {
+      throw new IllegalStateException("Context is for encryption");
+    }
+    nextFrame();
+    calculateMac(
+        additionalData, additionalDataOffset, additionalDataLength, buffer, offset, length);
+    int difference = 0;
+    for (int i = 0; i < MAC_LENGTH; i++) {
+      difference |= mac[i] ^ buffer[offset + length + i];
+    }
+    if (difference != 0) {
+      throw new TlsFatalAlert(AlertDescription.bad_record_mac);
+    }
+    cipher.processBytes(buffer, offset, length, buffer, offset);
+  }
+
+  @Override
+  public void destroy() {
+    cipher.init(forEncryption, new ParametersWithIV(new KeyParameter(new byte[32]), nonce));
+    Arrays.fill(macKey.getKey(), (byte) 0);
+    Arrays.fill(firstBlock, (byte) 0);
+    counter = -1;
+  }
+
+  /** Sets the nonce of the next frame and derives its one-time Poly1305 key. */
+  private void nextFrame() {
+    if (counter < 0) {
+      throw new IllegalStateException("Context has been destroyed");
+    }
+    Pack.longToLittleEndian(counter++, nonce, 0);
+    cipher.init(forEncryption, nonceParameters);
+
+    Arrays.fill(firstBlock, (byte) 0);
+    cipher.processBytes(firstBlock, 0, firstBlock.length, firstBlock, 0);
+    // NOTE: The BC implementation puts 'r' after 'k'
+    byte[] key = macKey.getKey();
+    System.arraycopy(firstBlock, 0, key, 16, 16);
+    System.arraycopy(firstBlock, 16, key, 0, 16);
+    Poly1305KeyGenerator.clamp(key);
+    poly.init(macKey);
+  }
+
+  private void calculateMac(
+      byte[] additionalData,
+      int additionalDataOffset,
+      int additionalDataLength,
+      byte[] ciphertext,
+      int offset,
+      int length) {
+    poly.update(additionalData, additionalDataOffset, additionalDataLength);
+    pad(additionalDataLength);
+    poly.update(ciphertext, offset, length);
+    pad(length);
+    Pack.longToLittleEndian(additionalDataLength, lengths, 0);
+    Pack.longToLittleEndian(length, lengths, 8);
+    poly.update(lengths, 0, lengths.length);
+    poly.doFinal(mac, 0);
+  }
+
+  private void pad(int length) {
+    if (length % 16 != 0) {
+      poly.update(ZEROES, 0, 16 - length % 16);
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import net.i2p.crypto.eddsa.EdDSAEngine;
+
+/**
+ * Ed25519 engines kept per thread. An engine is initialised again for every signature, which resets
+ * its digest, so it can be reused for any key once the previous signature is done.
+ */
+final class EdsaEngines {
+
+  private static final ThreadLocal<Signature> engines =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return new EdDSAEngine(MessageDigest.getInstance("SHA-512"));
+            } catch (NoSuchAlgorithmException e) {
+              throw new IllegalStateException("SHA-512 is not available", e);
+            }
+          });
+
+  private EdsaEngines() {}
+
+  static Signature get() {
+    return engines.get();
+  }
+}
@@ -5,7 +5,6 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Signature;
 import java.security.SignatureException;
-import net.i2p.crypto.eddsa.EdDSAEngine;
 import net.i2p.crypto.eddsa.EdDSAPrivateKey;
 import net.i2p.crypto.eddsa.EdDSAPublicKey;
 import net.i2p.crypto.eddsa.spec.EdDSANamedCurveTable;
@@ -15,10 +14,12 @@ import net.i2p.crypto.eddsa.spec.EdDSAPublicKeySpec;
 
 public class EdsaSigner {
 
+  private final byte[] privateKeyBytes;
   private final EdDSAPublicKey publicKey;
   private final EdDSAPrivateKey privateKey;
 
   public EdsaSigner(byte[] privateKeyBytes) {
+    this.privateKeyBytes = privateKeyBytes.clone();
     EdDSAParameterSpec spec = EdDSANamedCurveTable.getByName("ed25519-sha-512");
     EdDSAPrivateKeySpec privateKeySpec = new EdDSAPrivateKeySpec(privateKeyBytes, spec);
     EdDSAPublicKeySpec pubKeySpec = new EdDSAPublicKeySpec(privateKeySpec.getA(), spec);
@@ -30,9 +31,14 @@ public class EdsaSigner {
     return publicKey.getAbyte();
   }
 
+  /** Whether this signer was created for the given private key. */
+  public boolean hasPrivateKey(byte[] privateKeyBytes) {
+    return MessageDigest.isEqual(this.privateKeyBytes, privateKeyBytes);
+  }
+
   public byte[] sign(byte[] material)
       throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
-    Signature sgr = new EdDSAEngine(MessageDigest.getInstance("SHA-512"));
+    Signature sgr = EdsaEngines.get();
     sgr.initSign(privateKey);
     sgr.update(material);
     return sgr.sign();
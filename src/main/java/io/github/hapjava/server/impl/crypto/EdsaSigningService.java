@@ -0,0 +1,46 @@
+package io.github.hapjava.server.impl.crypto;
+
+import io.github.hapjava.server.HomekitAuthInfo;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Signs with the long term key of a {@link HomekitAuthInfo}. The {@link EdsaSigner}, which expands
+ * the private key and derives its public key, is created once per auth info instead of once per
+ * pairing, and signatures are made on engines kept per thread. The private key is read from the
+ * auth info on every use, so a key that was replaced takes effect with the next signature.
+ */
+public final class EdsaSigningService {
+
+  /** Holds no reference to its keys, so an auth info that is no longer used can be collected. */
+  private static final Map<HomekitAuthInfo, AtomicReference<EdsaSigner>> signers =
+      new WeakHashMap<>();
+
+  private final HomekitAuthInfo authInfo;
+  private final AtomicReference<EdsaSigner> signer;
+
+  private EdsaSigningService(HomekitAuthInfo authInfo, AtomicReference<EdsaSigner> signer) {
+    this.authInfo = authInfo;
+    this.signer = signer;
+  }
+
+  public static EdsaSigningService forAuthInfo(HomekitAuthInfo authInfo) {
+    AtomicReference<EdsaSigner> signer;
+    synchronized (signers) {
+      signer = signers.computeIfAbsent(authInfo, key -> new AtomicReference<>());
+    }
+    return new EdsaSigningService(authInfo, signer);
+  }
+
+  /** The signer for the current private key of the auth info. */
+  public EdsaSigner getSigner() {
+    byte[] privateKey = authInfo.getPrivateKey();
+    EdsaSigner current = signer.get();
+    if (current == null || !current.hasPrivateKey(privateKey)) {
+      current = new EdsaSigner(privateKey);
+      signer.set(current);
+    }
+    return current;
+  }
+}
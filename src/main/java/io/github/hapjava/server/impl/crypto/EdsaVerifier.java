@@ -1,9 +1,7 @@
 package io.github.hapjava.server.impl.crypto;
 
 import java.security.MessageDigest;
-import java.security.PublicKey;
 import java.security.Signature;
-import net.i2p.crypto.eddsa.EdDSAEngine;
 import net.i2p.crypto.eddsa.EdDSAPublicKey;
 import net.i2p.crypto.eddsa.spec.EdDSANamedCurveTable;
 import net.i2p.crypto.eddsa.spec.EdDSAParameterSpec;
@@ -11,7 +9,7 @@ import net.i2p.crypto.eddsa.spec.EdDSAPublicKeySpec;
 
 public class EdsaVerifier {
 
-  private final PublicKey publicKey;
+  private final EdDSAPublicKey publicKey;
 
   public EdsaVerifier(byte[] publicKey) {
     EdDSAParameterSpec spec = EdDSANamedCurveTable.getByName("ed25519-sha-512");
@@ -19,8 +17,13 @@ public class EdsaVerifier {
     this.publicKey = new EdDSAPublicKey(pubKey);
   }
 
+  /** Whether this verifier was created for the given public key. */
+  public boolean hasPublicKey(byte[] publicKey) {
+    return MessageDigest.isEqual(this.publicKey.getAbyte(), publicKey);
+  }
+
   public boolean verify(byte[] data, byte[] signature) throws Exception {
-    Signature sgr = new EdDSAEngine(MessageDigest.getInstance("SHA-512"));
+    Signature sgr = EdsaEngines.get();
     sgr.initVerify(publicKey);
     sgr.update(data);
 
@@ -0,0 +1,76 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.bouncycastle.util.Arrays;
+
+/**
+ * The {@code ChaCha20-Poly1305} cipher of the JDK, available from Java 11 on and intrinsified by
+ * newer JVMs. It takes the 12 byte nonces of RFC 8439, so the 8 byte nonces of HAP are prefixed
+ * with 4 zero bytes, which yields the same key stream for messages shorter than 256 GB.
+ */
+class JdkAeadProvider implements AeadProvider {
+
+  static final String TRANSFORMATION = "ChaCha20-Poly1305";
+  static final String KEY_ALGORITHM = "ChaCha20";
+
+  /** @throws IllegalStateException if the JDK does not have the cipher */
+  static Cipher newCipher() {
+    try {
+      return Cipher.getInstance(TRANSFORMATION);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(TRANSFORMATION + " is not available", e);
+    }
+  }
+
+  /** Writes the 8 byte {@code nonce} to the end of the 12 byte {@code iv}. */
+  static IvParameterSpec iv(byte[] nonce, byte[] iv) {
+    System.arraycopy(nonce, 0, iv, 4, 8);
+    return new IvParameterSpec(iv);
+  }
+
+  @Override
+  public String getName() {
+    return "JDK";
+  }
+
+  @Override
+  public AeadContext newContext(byte[] key, boolean forEncryption) {
+    return new JdkChachaPolyContext(key, forEncryption);
+  }
+
+  @Override
+  public byte[] seal(byte[] key, byte[] nonce, byte[] additionalData, byte[] plaintext)
+      throws IOException {
+    Cipher cipher = newCipher();
+    try {
+      cipher.init(
+          Cipher.ENCRYPT_MODE, new SecretKeySpec(key, KEY_ALGORITHM), iv(nonce, new byte[12]));
+      if (additionalData != null) {
+        cipher.updateAAD(additionalData);
+      }
+      return cipher.doFinal(plaintext);
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Could not encrypt message", e);
+    }
+  }
+
+  @Override
+  public byte[] open(byte[] key, byte[] nonce, byte[] additionalData, byte[] ciphertext, byte[] tag)
+      throws IOException {
+    Cipher cipher = newCipher();
+    try {
+      cipher.init(
+          Cipher.DECRYPT_MODE, new SecretKeySpec(key, KEY_ALGORITHM), iv(nonce, new byte[12]));
+      if (additionalData != null) {
+        cipher.updateAAD(additionalData);
+      }
+      return cipher.doFinal(Arrays.concatenate(ciphertext, tag));
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Could not authenticate message", e);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import org.bouncycastle.util.Pack;
+
+/**
+ * {@link AeadContext} on a JDK {@link Cipher}, which is initialised again with the next nonce for
+ * every frame.
+ */
+class JdkChachaPolyContext implements AeadContext {
+
+  private final Cipher cipher = JdkAeadProvider.newCipher();
+  private final int mode;
+  private final byte[] nonce = new byte[8];
+  private final byte[] iv = new byte[12];
+  private SecretKeySpec key;
+  private long counter = 0;
+
+  JdkChachaPolyContext(byte[] key, boolean forEncryption) {
+    this.mode = forEncryption ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE;
+    this.key = new SecretKeySpec(key, JdkAeadProvider.KEY_ALGORITHM);
+  }
+
+  @Override
+  public void encrypt(
+      byte[] additionalData,
+      int additionalDataOffset,
+      int additionalDataLength,
+      byte[] in,
+      int inOffset,
+      int length,
+      byte[] out,
+      int outOffset) {
+    if (mode != Cipher.ENCRYPT_MODE) {
+      throw new IllegalStateException("Context is for decryption");
+    }
+    try {
+      nextFrame();
+      cipher.updateAAD(additionalData, additionalDataOffset, additionalDataLength);
+      cipher.doFinal(in, inOffset, length, out, outOffset);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Could not encrypt frame", e);
+    }
+  }
+
+  @Override
+  public void decrypt(
+      byte[] additionalData,
+      int additionalDataOffset,
+      int additionalDataLength,
+      byte[] buffer,
+      int offset,
+      int length)
+      throws IOException {
+    if (mode != Cipher.DECRYPT_MODE) {
+      throw new IllegalStateException("Context is for encryption");
+    }
+    try {
+      nextFrame();
+      cipher.updateAAD(additionalData, additionalDataOffset, additionalDataLength);
+      cipher.doFinal(buffer, offset, length + 16, buffer, offset);
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Could not authenticate frame", e);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    counter = -1;
+    key = null;
+    try {
+      // the cipher keeps its own copy of the key
+      cipher.init(
+          mode,
+          new SecretKeySpec(new byte[32], JdkAeadProvider.KEY_ALGORITHM),
+          JdkAeadProvider.iv(new byte[8], new byte[12]));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Could not overwrite key", e);
+    }
+  }
+
+  private void nextFrame() throws GeneralSecurityException {
+    if (counter < 0) {
+      throw new IllegalStateException("Context has been destroyed");
+    }
+    Pack.longToLittleEndian(counter++, nonce, 0);
+    cipher.init(mode, key, JdkAeadProvider.iv(nonce, iv));
+  }
+}
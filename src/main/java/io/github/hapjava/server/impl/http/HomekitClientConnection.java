@@ -1,18 +1,57 @@
 package io.github.hapjava.server.impl.http;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionStage;
 
 public interface HomekitClientConnection {
 
-  HttpResponse handleRequest(HttpRequest request) throws IOException;
+  /**
+   * Starts handling a request and returns the stage that completes with its response. Requests of
+   * one connection are started one at a time and in order, but the returned stages may complete
+   * later and in any order; the body of {@code request} must be read before returning.
+   */
+  CompletionStage<HttpResponse> handleRequest(HttpRequest request);
 
   //解谜
-  byte[] decryptRequest(byte[] ciphertext);
+  /**
+   * Authenticates and decrypts one frame in place. The remaining bytes of {@code frame} are its
+   * ciphertext followed by the 16 byte tag; on return the ciphertext has been replaced by the
+   * plaintext. Frames must be passed in the order they were received.
+   *
+   * @throws IOException if the connection is not upgraded or the frame fails authentication
+   */
+  void decryptRequest(ByteBuffer frame) throws IOException;
 
   // 加密
-  byte[] encryptResponse(byte[] plaintext) throws IOException;
+  /**
+   * Frames and encrypts the remaining bytes of {@code plaintext} into {@code ciphertext}, which
+   * must have at least {@link #encryptedLength(int)} bytes remaining.
+   */
+  void encryptResponse(ByteBuffer plaintext, ByteBuffer ciphertext) throws IOException;
+
+  /** Number of bytes written by {@link #encryptResponse(ByteBuffer, ByteBuffer)}. */
+  int encryptedLength(int plaintextLength);
 
   void close();
 
   void outOfBand(HttpResponse message);
+
+  /**
+   * Whether out-of-band messages can be written right away. While this is false the write buffer of
+   * the connection is above its high water mark and events should be held back.
+   */
+  boolean isWritable();
+
+  /** Called from the connection's event loop whenever {@link #isWritable()} changes. */
+  void writabilityChanged(boolean writable);
+
+  /**
+   * Called once the connection is about to be closed. Events that were held back while the
+   * connection was not writable are sent anyway, since nothing else would ever send them.
+   *
+   * @return a stage completing once every event published so far has been passed to {@link
+   *     #outOfBand(HttpResponse)}
+   */
+  CompletionStage<Void> drain();
 }
@@ -11,6 +11,13 @@ public interface HttpResponse {
 
   int getStatusCode();
 
+  /**
+   * 应答的消息体。返回的buffer在写入socket的过程中只会被包装（wrap）而不会被复制，因此调用方不能修改它。
+   *
+   * <p>同一个应答（例如事件通知）可能被写入多个连接。
+   *
+   * @return 应答的消息体
+   */
   default ByteBuffer getBody() {
     return ByteBuffer.allocate(0);
   }
@@ -0,0 +1,23 @@
+package io.github.hapjava.server.impl.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A response whose body is produced piece by piece while it is sent, so that a large body is never
+ * held in memory as a whole. The response encoder does not call {@link #getBody()}, but it must
+ * still return the whole body for other callers, even if it has to render it to do so. A streaming
+ * response can be written once only.
+ */
+public interface StreamingHttpResponse extends HttpResponse {
+
+  /** Length of the whole body in bytes. */
+  int getContentLength();
+
+  /**
+   * Writes the next piece of the body, called from the event loop of the connection.
+   *
+   * @return false if the body had been written completely and nothing was written
+   */
+  boolean writeNext(OutputStream out) throws IOException;
+}
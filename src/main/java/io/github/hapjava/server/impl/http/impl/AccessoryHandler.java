@@ -3,26 +3,85 @@ package io.github.hapjava.server.impl.http.impl;
 import io.github.hapjava.server.impl.http.HomekitClientConnection;
 import io.github.hapjava.server.impl.http.HomekitClientConnectionFactory;
 import io.github.hapjava.server.impl.http.HttpResponse;
+import io.github.hapjava.server.impl.responses.InternalServerErrorResponse;
+import io.github.hapjava.server.impl.responses.ServiceUnavailableResponse;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.handler.codec.http.*;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class AccessoryHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+/**
+ * Runs on the channel's event loop and hands each request to the shared {@link RequestExecutor},
+ * or, for a step of pair-setup or pair-verify, to the runtime's executor for handshakes. Requests
+ * of one connection are started one at a time, in the order they arrived; a request waits in {@link
+ * #pending} only until the previous one has been handed to its handler, not until it has been
+ * answered. The response stages may complete in any order and are written in request order through
+ * {@link #responses}, so no executor thread waits for a slow accessory.
+ *
+ * <p>Since each connection has at most one request in the executor's queue, and queues the next one
+ * behind those of all other connections, the executor serves connections round-robin however many
+ * requests one of them sends. A connection's {@link #pending} queue is further held back while it
+ * has the maximum number of unanswered requests, its controller has used up its request rate, or a
+ * pair-verify or accessory listing waits for its turn in the server's {@link ReconnectAdmission},
+ * and the connection is not read from while that queue is full.
+ */
+class AccessoryHandler extends SimpleChannelInboundHandler<HomekitHttpRequest> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(AccessoryHandler.class);
 
   private HomekitClientConnection connection;
   private final HomekitClientConnectionFactory homekitClientConnectionFactory;
+  private final Executor requestExecutor;
+  private final Executor handshakeExecutor;
+  private final ServerSettings settings;
+  private final ServerMetrics metrics;
+  private final ControllerRateLimiter rateLimiter;
+  private final ReconnectAdmission admission;
+  private InetAddress controller;
+  private ScheduledFuture<?> retry;
+  private volatile int queueDepth = 0;
+  private final Queue<HomekitHttpRequest> pending = new ArrayDeque<>();
+  private final Queue<PendingResponse> responses = new ArrayDeque<>();
+  private boolean starting = false;
+  /** Whether the request at the head of {@link #pending} has been admitted already. */
+  private boolean admitted = false;
+  private boolean draining = false;
+  /** Whether events held back for the connection are still being sent before it is closed. */
+  private boolean drainingEvents = false;
 
-  public AccessoryHandler(HomekitClientConnectionFactory homekitClientConnectionFactory) {
+  public AccessoryHandler(
+      HomekitClientConnectionFactory homekitClientConnectionFactory,
+      Executor requestExecutor,
+      Executor handshakeExecutor,
+      ServerSettings settings,
+      ServerMetrics metrics,
+      ControllerRateLimiter rateLimiter,
+      ReconnectAdmission admission) {
     this.homekitClientConnectionFactory = homekitClientConnectionFactory;
+    this.requestExecutor = requestExecutor;
+    this.handshakeExecutor = handshakeExecutor;
+    this.settings = settings;
+    this.metrics = metrics;
+    this.rateLimiter = rateLimiter;
+    this.admission = admission;
   }
 
   @Override
@@ -34,61 +93,252 @@ class AccessoryHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
               if (!channel.isActive()) {
                 return;
               }
-              channel.writeAndFlush(NettyResponseUtil.createResponse(response));
+              channel.writeAndFlush(response);
             });
-    LOGGER.trace("New HomeKit connection from " + ctx.channel().remoteAddress().toString());
+    SocketAddress remoteAddress = channel.remoteAddress();
+    if (remoteAddress instanceof InetSocketAddress) {
+      controller = ((InetSocketAddress) remoteAddress).getAddress();
+      rateLimiter.register(controller);
+    }
+    metrics.connectionOpened(remoteAddress, () -> queueDepth);
+    LOGGER.trace("New HomeKit connection from " + remoteAddress.toString());
     super.channelActive(ctx);
   }
 
   @Override
   public void channelInactive(ChannelHandlerContext ctx) throws Exception {
     LOGGER.trace("Terminated HomeKit connection from " + ctx.channel().remoteAddress().toString());
+    HomekitHttpRequest req;
+    while ((req = pending.poll()) != null) {
+      req.release();
+    }
+    if (retry != null) {
+      retry.cancel(false);
+    }
+    if (controller != null) {
+      rateLimiter.unregister(controller);
+    }
+    metrics.connectionClosed(ctx.channel().remoteAddress());
+    if (connection != null) {
+      connection.close();
+    }
     super.channelInactive(ctx);
   }
 
   @Override
-  public void channelRead0(ChannelHandlerContext ctx, FullHttpRequest req) throws Exception {
-    try {
-      HttpResponse response = connection.handleRequest(new FullRequestHttpRequestImpl(req));
-      if (response.doUpgrade()) {
-        ChannelPipeline pipeline = ctx.channel().pipeline();
-        pipeline.addBefore(
-            ServerInitializer.HTTP_HANDLER_NAME, "binary", new BinaryHandler(connection));
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    if (connection != null) {
+      connection.writabilityChanged(ctx.channel().isWritable());
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+
+  @Override
+  public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+    if (evt == DrainEvent.INSTANCE) {
+      ctx.channel().config().setAutoRead(false);
+      draining = true;
+      if (connection != null) {
+        drainingEvents = true;
+        connection
+            .drain()
+            .whenComplete(
+                (v, e) ->
+                    ctx.executor()
+                        .execute(
+                            () -> {
+                              drainingEvents = false;
+                              closeIfDrained(ctx);
+                            }));
       }
-      sendResponse(response, ctx);
+      closeIfDrained(ctx);
+    } else if (evt instanceof IdleStateEvent) {
+      LOGGER.debug(
+          "Closing HomeKit connection from {} after {}",
+          ctx.channel().remoteAddress(),
+          ((IdleStateEvent) evt).state());
+      metrics.connectionReaped();
+      ctx.close();
+    } else {
+      super.userEventTriggered(ctx, evt);
+    }
+  }
+
+  @Override
+  public void channelRead0(ChannelHandlerContext ctx, HomekitHttpRequest req) throws Exception {
+    req.retain();
+    pending.add(req);
+    if (pending.size() >= settings.getMaxQueuedRequestsPerConnection()) {
+      ctx.channel().config().setAutoRead(false);
+    }
+    startNext(ctx);
+  }
+
+  /**
+   * Hands the oldest waiting request to the executor unless one is being started already, the
+   * connection has too many unanswered requests, the request has to wait for admission, or its
+   * controller has to wait for its rate limit. A request that is not admitted is answered with 503.
+   */
+  private void startNext(ChannelHandlerContext ctx) {
+    HomekitHttpRequest req;
+    while (!starting && retry == null && (req = pending.peek()) != null) {
+      if (responses.size() >= settings.getMaxConcurrentRequestsPerConnection()) {
+        break;
+      }
+      if (!admitted) {
+        long wait = admission.tryAcquire(req.getUri());
+        if (wait == ReconnectAdmission.REJECTED) {
+          LOGGER.debug("Reconnect admission is saturated, rejecting " + req.getUri());
+          pending.poll();
+          req.release();
+          PendingResponse response = new PendingResponse();
+          responses.add(response);
+          complete(ctx, response, ServiceUnavailableResponse.INSTANCE);
+          continue;
+        }
+        // the token is taken or reserved, so it is not asked for again after waiting
+        admitted = true;
+        if (wait > 0) {
+          retryAfter(ctx, wait);
+          break;
+        }
+      }
+      long wait = rateLimiter.tryAcquire(controller);
+      if (wait > 0) {
+        retryAfter(ctx, wait);
+        break;
+      }
+      pending.poll();
+      admitted = false;
+      final HomekitHttpRequest request = req;
+      final PendingResponse response = new PendingResponse();
+      responses.add(response);
+      starting = true;
+      Executor executor = isHandshake(request.getUri()) ? handshakeExecutor : requestExecutor;
+      try {
+        executor.execute(() -> start(ctx, request, response));
+      } catch (RejectedExecutionException e) {
+        LOGGER.debug("Executor is saturated, rejecting " + request.getUri());
+        request.release();
+        starting = false;
+        complete(ctx, response, ServiceUnavailableResponse.INSTANCE);
+      }
+    }
+    queueDepth = pending.size();
+    if (!draining
+        && !ctx.channel().config().isAutoRead()
+        && pending.size() < settings.getMaxQueuedRequestsPerConnection()) {
+      ctx.channel().config().setAutoRead(true);
+    }
+  }
+
+  /** Whether the request is a step of pair-setup or pair-verify, which only needs the CPU. */
+  static boolean isHandshake(String uri) {
+    return "/pair-setup".equals(uri) || "/pair-verify".equals(uri);
+  }
+
+  private void retryAfter(ChannelHandlerContext ctx, long nanos) {
+    retry =
+        ctx.executor()
+            .schedule(
+                () -> {
+                  retry = null;
+                  startNext(ctx);
+                  closeIfDrained(ctx);
+                },
+                nanos,
+                TimeUnit.NANOSECONDS);
+  }
+
+  private void start(ChannelHandlerContext ctx, HomekitHttpRequest req, PendingResponse response) {
+    CompletionStage<HttpResponse> stage;
+    try {
+      stage = connection.handleRequest(req);
     } catch (Exception e) {
       LOGGER.warn("Error handling homekit http request", e);
-      sendResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error: " + e.getMessage(), ctx);
+      stage = CompletableFuture.completedFuture(InternalServerErrorResponse.INSTANCE);
+    } finally {
+      req.release();
     }
+    execute(
+        ctx,
+        () -> {
+          starting = false;
+          startNext(ctx);
+          closeIfDrained(ctx);
+        });
+    stage.whenComplete(
+        (result, error) -> {
+          if (error != null) {
+            LOGGER.warn("Error handling homekit http request", error);
+            result = InternalServerErrorResponse.INSTANCE;
+          }
+          HttpResponse completed = result;
+          execute(ctx, () -> complete(ctx, response, completed));
+        });
   }
 
-  private void sendResponse(
-      HttpResponseStatus status, String responseBody, ChannelHandlerContext ctx) {
-    if (responseBody == null) {
-      responseBody = "";
+  private void execute(ChannelHandlerContext ctx, Runnable task) {
+    try {
+      ctx.executor().execute(task);
+    } catch (RejectedExecutionException e) {
+      LOGGER.debug("Event loop is shutting down, dropping response");
     }
-    FullHttpResponse response =
-        new DefaultFullHttpResponse(
-            HttpVersion.HTTP_1_1,
-            status,
-            Unpooled.copiedBuffer(responseBody.getBytes(StandardCharsets.UTF_8)));
-    response.headers().set(HttpHeaders.Names.CONTENT_TYPE, "text/plain");
-    response.headers().set(HttpHeaders.Names.CONTENT_LENGTH, response.content().readableBytes());
-    response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
-    ctx.write(response);
-    ctx.flush();
   }
 
-  private void sendResponse(HttpResponse homekitResponse, ChannelHandlerContext ctx) {
-    FullHttpResponse response = NettyResponseUtil.createResponse(homekitResponse);
-    ctx.write(response);
-    ctx.flush();
+  /** Writes every response at the head of {@link #responses} that has completed. */
+  private void complete(ChannelHandlerContext ctx, PendingResponse response, HttpResponse result) {
+    response.result = result;
+    boolean written = false;
+    PendingResponse head;
+    while ((head = responses.peek()) != null && head.result != null) {
+      responses.poll();
+      if (head.result.doUpgrade()) {
+        ChannelPipeline pipeline = ctx.channel().pipeline();
+        // below the wire tap, so that it records plaintext
+        String above =
+            pipeline.get(ServerInitializer.TAP_HANDLER_NAME) != null
+                ? ServerInitializer.TAP_HANDLER_NAME
+                : ServerInitializer.HTTP_HANDLER_NAME;
+        pipeline.addBefore(
+            above, ServerInitializer.BINARY_HANDLER_NAME, new BinaryHandler(connection));
+        pipeline.addBefore(
+            ServerInitializer.BINARY_HANDLER_NAME,
+            ServerInitializer.FRAME_DECODER_NAME,
+            new EncryptedFrameDecoder(connection));
+        verified(pipeline);
+      }
+      ctx.write(head.result);
+      written = true;
+    }
+    if (written) {
+      ctx.flush();
+      // answered requests no longer count against the concurrency limit
+      startNext(ctx);
+    }
+    closeIfDrained(ctx);
   }
 
-  @Override
-  public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
-    ctx.flush();
-    super.channelReadComplete(ctx);
+  /**
+   * Closes a draining connection once every request it has received has been answered and its held
+   * back events have been sent, after everything queued for it has been written.
+   */
+  private void closeIfDrained(ChannelHandlerContext ctx) {
+    if (draining && !drainingEvents && !starting && pending.isEmpty() && responses.isEmpty()) {
+      draining = false;
+      ctx.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+    }
+  }
+
+  /** Replaces the short timeouts of pairing with the ones of a verified session. */
+  private void verified(ChannelPipeline pipeline) {
+    if (pipeline.get(ServerInitializer.IDLE_HANDLER_NAME) != null) {
+      pipeline.remove(ServerInitializer.IDLE_HANDLER_NAME);
+    }
+    IdleStateHandler idleStateHandler = settings.newIdleStateHandler(true);
+    if (idleStateHandler != null) {
+      pipeline.addFirst(ServerInitializer.IDLE_HANDLER_NAME, idleStateHandler);
+    }
   }
 
   @Override
@@ -101,4 +351,14 @@ class AccessoryHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
     }
     ctx.close();
   }
+
+  /** Asks the handler to stop reading and close the connection once it has been drained. */
+  enum DrainEvent {
+    INSTANCE
+  }
+
+  /** Slot for a response in request order; {@code result} is set once its stage completes. */
+  private static class PendingResponse {
+    private HttpResponse result;
+  }
 }
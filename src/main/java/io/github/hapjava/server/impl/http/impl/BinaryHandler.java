@@ -2,16 +2,22 @@ package io.github.hapjava.server.impl.http.impl;
 
 import io.github.hapjava.server.impl.http.HomekitClientConnection;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ByteToMessageCodec;
+import io.netty.channel.ChannelPromise;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class BinaryHandler extends ByteToMessageCodec<ByteBuf> {
+/**
+ * Encrypts the responses and events of an upgraded connection. The first request that arrives
+ * encrypted, decrypted by the {@link EncryptedFrameDecoder} in front of this handler, switches it
+ * on, so the response completing pair-verify is still sent in the clear. Every buffer is encrypted
+ * as it is written, so a streamed body goes out one chunk at a time.
+ */
+public class BinaryHandler extends ChannelDuplexHandler {
 
   private static final Logger logger = LoggerFactory.getLogger(BinaryHandler.class);
 
@@ -23,26 +29,55 @@ public class BinaryHandler extends ByteToMessageCodec<ByteBuf> {
   }
 
   @Override
-  protected void encode(ChannelHandlerContext ctx, ByteBuf msg, ByteBuf out) throws Exception {
-    if (started) {
-      debugData("Sending data", msg, ctx);
-      byte[] b = new byte[msg.readableBytes()];
-      msg.readBytes(b);
-      out.writeBytes(connection.encryptResponse(b));
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    if (started && msg instanceof ByteBuf) {
+      ByteBuf plaintext = (ByteBuf) msg;
+      ByteBuf ciphertext;
+      try {
+        debugData("Sending data", plaintext, ctx);
+        ciphertext = encrypt(ctx, plaintext);
+      } finally {
+        plaintext.release();
+      }
+      ctx.write(ciphertext, promise);
     } else {
-      out.writeBytes(msg);
+      ctx.write(msg, promise);
+    }
+  }
+
+  /**
+   * Encrypts the whole message into a single pooled buffer of exactly the encrypted size. The
+   * plaintext is read through its NIO views, so a composite header and body buffer is not merged
+   * first.
+   */
+  private ByteBuf encrypt(ChannelHandlerContext ctx, ByteBuf plaintext) throws IOException {
+    int length = connection.encryptedLength(plaintext.readableBytes());
+    ByteBuf ciphertext = ctx.alloc().heapBuffer(length, length);
+    try {
+      ByteBuffer out = ciphertext.nioBuffer(ciphertext.writerIndex(), length);
+      for (ByteBuffer in : plaintext.nioBuffers()) {
+        connection.encryptResponse(in, out);
+      }
+      ciphertext.writerIndex(ciphertext.writerIndex() + out.position());
+      return ciphertext;
+    } catch (IOException | RuntimeException e) {
+      ciphertext.release();
+      throw e;
     }
   }
 
   @Override
-  protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-    byte[] b = new byte[in.readableBytes()];
-    in.readBytes(b);
-    byte[] decrypted = connection.decryptRequest(b);
-    ByteBuf outBuf = Unpooled.copiedBuffer(decrypted);
-    debugData("Received data", outBuf, ctx);
-    out.add(outBuf);
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (!(msg instanceof ByteBuf)) {
+      ctx.fireChannelRead(msg);
+      return;
+    }
+    // already decrypted by the EncryptedFrameDecoder below
+    ByteBuf plaintext = (ByteBuf) msg;
     started = true;
+    debugData("Received data", plaintext, ctx);
+    ctx.fireChannelRead(plaintext);
   }
 
   @Override
@@ -0,0 +1,65 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One token bucket per controller address, shared by all connections of that controller to a
+ * server, limiting how many requests it may start according to {@link
+ * ServerSettings#setControllerRequestRate(double, int)}. A bucket exists while the controller has
+ * at least one connection open.
+ */
+class ControllerRateLimiter {
+
+  private final ServerSettings settings;
+  private final ConcurrentMap<InetAddress, Bucket> buckets = new ConcurrentHashMap<>();
+
+  ControllerRateLimiter(ServerSettings settings) {
+    this.settings = settings;
+  }
+
+  void register(InetAddress controller) {
+    buckets.compute(
+        controller,
+        (address, bucket) -> {
+          Bucket registered = bucket == null ? new Bucket() : bucket;
+          registered.connections++;
+          return registered;
+        });
+  }
+
+  void unregister(InetAddress controller) {
+    buckets.computeIfPresent(
+        controller, (address, bucket) -> --bucket.connections == 0 ? null : bucket);
+  }
+
+  /**
+   * Takes a token from the bucket of the controller if it has one.
+   *
+   * @param controller address of the controller, or null if it is not known
+   * @return 0 if the request may start, otherwise the nanoseconds until a token is available
+   */
+  long tryAcquire(InetAddress controller) {
+    return tryAcquire(controller, System.nanoTime());
+  }
+
+  long tryAcquire(InetAddress controller, long now) {
+    double requestsPerSecond;
+    int burst;
+    synchronized (settings) {
+      requestsPerSecond = settings.getControllerRequestsPerSecond();
+      burst = settings.getControllerRequestBurst();
+    }
+    if (requestsPerSecond <= 0 || controller == null) {
+      return 0;
+    }
+    Bucket bucket = buckets.get(controller);
+    return bucket == null ? 0 : bucket.tryAcquire(requestsPerSecond, burst, now);
+  }
+
+  private static class Bucket extends TokenBucket {
+    /** Guarded by the map entry of the bucket. */
+    private int connections;
+  }
+}
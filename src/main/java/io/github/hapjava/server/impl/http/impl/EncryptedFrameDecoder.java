@@ -0,0 +1,59 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.http.HomekitClientConnection;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Splits the inbound stream of an upgraded connection into its encrypted frames, each a 2 byte
+ * little endian length followed by that many bytes of ciphertext and a 16 byte tag. A frame is
+ * decoded once all of it has arrived, however it was split into TCP segments: it is copied once
+ * into a pooled buffer, authenticated and decrypted there in place, and passed on as plaintext.
+ */
+class EncryptedFrameDecoder extends ByteToMessageDecoder {
+
+  /** The largest frame the HAP specification allows. */
+  static final int MAX_FRAME_LENGTH = 0x400;
+
+  private static final int TAG_LENGTH = 16;
+
+  private final HomekitClientConnection connection;
+
+  EncryptedFrameDecoder(HomekitClientConnection connection) {
+    this.connection = connection;
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out)
+      throws IOException {
+    if (in.readableBytes() < 2) {
+      return;
+    }
+    int length = in.getUnsignedShortLE(in.readerIndex());
+    if (length > MAX_FRAME_LENGTH) {
+      throw new CorruptedFrameException("Encrypted frame of " + length + " bytes is too long");
+    }
+    if (in.readableBytes() < 2 + length + TAG_LENGTH) {
+      return;
+    }
+    in.skipBytes(2);
+    ByteBuf frame = ctx.alloc().heapBuffer(length + TAG_LENGTH);
+    try {
+      in.readBytes(frame, length + TAG_LENGTH);
+      connection.decryptRequest(frame.nioBuffer(frame.readerIndex(), length + TAG_LENGTH));
+    } catch (IOException | RuntimeException e) {
+      frame.release();
+      throw e;
+    }
+    if (length == 0) {
+      frame.release();
+      return;
+    }
+    frame.writerIndex(frame.readerIndex() + length);
+    out.add(frame);
+  }
+}
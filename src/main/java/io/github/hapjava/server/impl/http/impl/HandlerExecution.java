@@ -0,0 +1,41 @@
+package io.github.hapjava.server.impl.http.impl;
+
+/**
+ * The kind of threads running the accessory request handling. Reading a characteristic may block
+ * until a slow backend answers, so with many such accessories a small pool of platform threads is
+ * quickly exhausted while virtual threads, available from Java 21 on, cost next to nothing while
+ * they wait.
+ */
+public enum HandlerExecution {
+
+  /** Virtual threads when running on Java 21 or later, platform threads everywhere else. */
+  AUTO,
+
+  /** One virtual thread per request. Fails at startup before Java 21. */
+  VIRTUAL,
+
+  /** A fixed pool of platform threads. */
+  PLATFORM;
+
+  /**
+   * Resolves {@link #AUTO} to the best kind of threads available on this JVM.
+   *
+   * @return the concrete kind, never {@link #AUTO}.
+   * @throws IllegalStateException if {@link #VIRTUAL} was requested but is not available.
+   */
+  public HandlerExecution resolve() {
+    switch (this) {
+      case AUTO:
+        return VirtualThreads.isAvailable() ? VIRTUAL : PLATFORM;
+
+      case VIRTUAL:
+        if (!VirtualThreads.isAvailable()) {
+          throw new IllegalStateException("Virtual threads require Java 21 or later");
+        }
+        return VIRTUAL;
+
+      default:
+        return PLATFORM;
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.http.HttpMethod;
+import io.github.hapjava.server.impl.http.HttpRequest;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * Request produced by {@link HomekitRequestDecoder}. The body is a retained slice of the received
+ * bytes and is only copied when {@link #getBody()} is called.
+ */
+class HomekitHttpRequest extends DefaultByteBufHolder implements HttpRequest {
+
+  private final HttpMethod method;
+  private final String uri;
+
+  HomekitHttpRequest(HttpMethod method, String uri, ByteBuf body) {
+    super(body);
+    this.method = method;
+    this.uri = uri;
+  }
+
+  @Override
+  public String getUri() {
+    return uri;
+  }
+
+  @Override
+  public byte[] getBody() {
+    ByteBuf body = content();
+    byte[] ret = new byte[body.readableBytes()];
+    body.getBytes(body.readerIndex(), ret);
+    return ret;
+  }
+
+  @Override
+  public HttpMethod getMethod() {
+    return method;
+  }
+
+  @Override
+  public String toString() {
+    return method + " " + uri;
+  }
+}
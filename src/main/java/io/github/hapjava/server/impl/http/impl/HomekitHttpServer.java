@@ -3,14 +3,25 @@ package io.github.hapjava.server.impl.http.impl;
 import io.github.hapjava.server.HomekitWebHandler;
 import io.github.hapjava.server.impl.http.HomekitClientConnectionFactory;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public class HomekitHttpServer implements HomekitWebHandler {
 
   private NettyHomekitHttpService service = null;
-  private final InetAddress localAddress;
+  private final HomekitRuntime runtime;
+  private final List<InetAddress> localAddresses;
   private final int port;
-  private final int nThreads;
+  private final Transport transport;
+  private final int workerThreads;
+  private final int handlerThreads;
+  private final int handlerQueueCapacity;
+  private final ServerMetrics metrics = new ServerMetrics();
+  private final ServerSettings settings = new ServerSettings();
+  private final WireTap wireTap = new WireTap();
 
   @Override
   public void stop() {
@@ -20,15 +31,95 @@ public class HomekitHttpServer implements HomekitWebHandler {
   }
 
   public HomekitHttpServer(InetAddress localAddress, int port, int nThreads) {
-    this.localAddress = localAddress;
+    this(localAddress, port, nThreads, Transport.AUTO);
+  }
+
+  public HomekitHttpServer(InetAddress localAddress, int port, int nThreads, Transport transport) {
+    this(localAddress, port, transport, nThreads, nThreads, RequestExecutor.DEFAULT_QUEUE_CAPACITY);
+  }
+
+  public HomekitHttpServer(
+      InetAddress localAddress,
+      int port,
+      Transport transport,
+      int workerThreads,
+      int handlerThreads,
+      int handlerQueueCapacity) {
+    this(
+        Collections.singletonList(localAddress),
+        port,
+        transport,
+        workerThreads,
+        handlerThreads,
+        handlerQueueCapacity);
+  }
+
+  /**
+   * @param localAddresses addresses to listen on, all with the same port, for example the IPv4 and
+   *     IPv6 addresses of several interfaces
+   */
+  public HomekitHttpServer(
+      Collection<InetAddress> localAddresses,
+      int port,
+      Transport transport,
+      int workerThreads,
+      int handlerThreads,
+      int handlerQueueCapacity) {
+    if (localAddresses.isEmpty()) {
+      throw new IllegalArgumentException("At least one local address is required");
+    }
+    this.runtime = null;
+    this.localAddresses = new ArrayList<>(localAddresses);
+    this.port = port;
+    this.transport = transport;
+    this.workerThreads = workerThreads;
+    this.handlerThreads = handlerThreads;
+    this.handlerQueueCapacity = handlerQueueCapacity;
+  }
+
+  /**
+   * Serves the connections with the threads of a runtime shared with other servers. Stopping this
+   * server leaves the runtime running.
+   *
+   * @param runtime event loops, handler threads and timer shared by the servers of this process
+   * @param localAddresses addresses to listen on, all with the same port
+   */
+  public HomekitHttpServer(
+      HomekitRuntime runtime, Collection<InetAddress> localAddresses, int port) {
+    if (localAddresses.isEmpty()) {
+      throw new IllegalArgumentException("At least one local address is required");
+    }
+    this.runtime = runtime;
+    this.localAddresses = new ArrayList<>(localAddresses);
     this.port = port;
-    this.nThreads = nThreads;
+    this.transport = runtime.getTransport();
+    this.workerThreads = 0;
+    this.handlerThreads = 0;
+    this.handlerQueueCapacity = 0;
   }
 
   @Override
   public CompletableFuture<Integer> start(HomekitClientConnectionFactory clientConnectionFactory) {
     if (service == null) {
-      this.service = NettyHomekitHttpService.create(localAddress, port, nThreads);
+      if (runtime != null) {
+        this.service =
+            NettyHomekitHttpService.create(
+                runtime, false, localAddresses, port, settings, metrics, wireTap);
+      } else {
+        Transport resolved = transport.resolve();
+        int acceptors =
+            NettyHomekitHttpService.acceptorsPerAddress(resolved, settings) * localAddresses.size();
+        this.service =
+            NettyHomekitHttpService.create(
+                new HomekitRuntime(
+                    resolved, acceptors, workerThreads, handlerThreads, handlerQueueCapacity),
+                true,
+                localAddresses,
+                port,
+                settings,
+                metrics,
+                wireTap);
+      }
       return this.service.create(clientConnectionFactory);
     } else {
       throw new RuntimeException("HomekitHttpServer can only be started once");
@@ -39,4 +130,21 @@ public class HomekitHttpServer implements HomekitWebHandler {
   public void resetConnections() {
     service.resetConnections();
   }
+
+  @Override
+  public void resetConnections(HomekitClientConnectionFactory clientConnectionFactory) {
+    service.resetConnections(clientConnectionFactory);
+  }
+
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public ServerSettings getSettings() {
+    return settings;
+  }
+
+  public WireTap getWireTap() {
+    return wireTap;
+  }
 }
@@ -0,0 +1,233 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.http.HttpMethod;
+import io.github.hapjava.server.impl.http.HttpResponse;
+import io.github.hapjava.server.impl.responses.BadRequestResponse;
+import io.github.hapjava.server.impl.responses.PayloadTooLargeResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses the small subset of HTTP/1.1 that HAP controllers send, straight from the decrypted input,
+ * into {@link HomekitHttpRequest}s. Only the request line and {@code Content-Length} are
+ * interpreted; the body is passed on as a retained slice of the input.
+ *
+ * <p>The request head is limited to {@link #MAX_HEADER_LENGTH} bytes and each route has its own
+ * body limit, so a connection never buffers more than a few kilobytes for a request it is going to
+ * refuse. Malformed requests are answered with 400, oversized bodies with 413, and the connection
+ * is closed in both cases.
+ */
+class HomekitRequestDecoder extends ByteToMessageDecoder {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HomekitRequestDecoder.class);
+
+  static final int MAX_HEADER_LENGTH = 8 * 1024;
+  static final int DEFAULT_BODY_LIMIT = 1024;
+
+  private static final Map<String, Integer> BODY_LIMITS = bodyLimits();
+
+  private static final byte[] HTTP_VERSION = "HTTP/1.".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] CONTENT_LENGTH = "content-length".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] TRANSFER_ENCODING =
+      "transfer-encoding".getBytes(StandardCharsets.US_ASCII);
+
+  private enum State {
+    REQUEST_LINE,
+    HEADERS,
+    BODY,
+    REJECTED
+  }
+
+  private State state = State.REQUEST_LINE;
+  private int headerLength;
+  private HttpMethod method;
+  private String uri;
+  private int contentLength;
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+    switch (state) {
+      case REQUEST_LINE:
+      case HEADERS:
+        readLine(ctx, in);
+        if (state != State.BODY) {
+          break;
+        }
+        // the head is complete: an empty body has to be emitted together with its last line
+      case BODY:
+        if (in.readableBytes() >= contentLength) {
+          ByteBuf body =
+              contentLength == 0 ? Unpooled.EMPTY_BUFFER : in.readRetainedSlice(contentLength);
+          out.add(new HomekitHttpRequest(method, uri, body));
+          reset();
+        }
+        break;
+
+      case REJECTED:
+        in.skipBytes(in.readableBytes());
+        break;
+    }
+  }
+
+  private void readLine(ChannelHandlerContext ctx, ByteBuf in) {
+    int start = in.readerIndex();
+    int lf = in.indexOf(start, in.writerIndex(), (byte) '\n');
+    if (lf < 0) {
+      if (headerLength + in.readableBytes() > MAX_HEADER_LENGTH) {
+        reject(ctx, in, BadRequestResponse.INSTANCE, "request head too long");
+      }
+      return;
+    }
+    headerLength += lf - start + 1;
+    if (headerLength > MAX_HEADER_LENGTH) {
+      reject(ctx, in, BadRequestResponse.INSTANCE, "request head too long");
+      return;
+    }
+    int end = lf > start && in.getByte(lf - 1) == '\r' ? lf - 1 : lf;
+    in.readerIndex(lf + 1);
+
+    if (state == State.REQUEST_LINE) {
+      if (end == start) {
+        return; // leading empty lines are ignored, as RFC 7230 suggests
+      }
+      if (!readRequestLine(in, start, end)) {
+        reject(ctx, in, BadRequestResponse.INSTANCE, "malformed request line");
+        return;
+      }
+      state = State.HEADERS;
+    } else if (end == start) {
+      if (contentLength > bodyLimit(uri)) {
+        reject(ctx, in, PayloadTooLargeResponse.INSTANCE, contentLength + " byte body");
+        return;
+      }
+      state = State.BODY;
+    } else if (!readHeader(in, start, end)) {
+      reject(ctx, in, BadRequestResponse.INSTANCE, "malformed header");
+    }
+  }
+
+  private boolean readRequestLine(ByteBuf in, int start, int end) {
+    int methodEnd = in.indexOf(start, end, (byte) ' ');
+    int uriEnd = methodEnd < 0 ? -1 : in.indexOf(methodEnd + 1, end, (byte) ' ');
+    if (uriEnd < 0 || !matches(in, uriEnd + 1, end, HTTP_VERSION, false)) {
+      return false;
+    }
+    method = method(in, start, methodEnd);
+    if (method == null || uriEnd == methodEnd + 1 || in.getByte(methodEnd + 1) != '/') {
+      return false;
+    }
+    uri = in.toString(methodEnd + 1, uriEnd - methodEnd - 1, StandardCharsets.US_ASCII);
+    return true;
+  }
+
+  private boolean readHeader(ByteBuf in, int start, int end) {
+    int colon = in.indexOf(start, end, (byte) ':');
+    if (colon <= start) {
+      return false;
+    }
+    if (isName(in, start, colon, TRANSFER_ENCODING)) {
+      return false; // HAP bodies always carry a Content-Length
+    }
+    if (!isName(in, start, colon, CONTENT_LENGTH)) {
+      return true;
+    }
+    long length = -1;
+    for (int i = colon + 1; i < end; i++) {
+      byte b = in.getByte(i);
+      if (b >= '0' && b <= '9') {
+        length = Math.min((length < 0 ? 0 : length * 10) + (b - '0'), Integer.MAX_VALUE);
+      } else if (b != ' ' && b != '\t') {
+        return false;
+      }
+    }
+    if (length < 0) {
+      return false;
+    }
+    contentLength = (int) length;
+    return true;
+  }
+
+  private void reject(ChannelHandlerContext ctx, ByteBuf in, HttpResponse response, String reason) {
+    LOGGER.debug("Rejecting request from " + ctx.channel().remoteAddress() + ": " + reason);
+    state = State.REJECTED;
+    in.skipBytes(in.readableBytes());
+    ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+  }
+
+  private void reset() {
+    state = State.REQUEST_LINE;
+    headerLength = 0;
+    method = null;
+    uri = null;
+    contentLength = 0;
+  }
+
+  private static HttpMethod method(ByteBuf in, int start, int end) {
+    switch (end - start) {
+      case 3:
+        if (in.getByte(start) == 'G' && in.getShort(start + 1) == ('E' << 8 | 'T')) {
+          return HttpMethod.GET;
+        }
+        if (in.getByte(start) == 'P' && in.getShort(start + 1) == ('U' << 8 | 'T')) {
+          return HttpMethod.PUT;
+        }
+        return null;
+
+      case 4:
+        boolean post = in.getInt(start) == ('P' << 24 | 'O' << 16 | 'S' << 8 | 'T');
+        return post ? HttpMethod.POST : null;
+
+      default:
+        return null;
+    }
+  }
+
+  private static boolean isName(ByteBuf in, int start, int end, byte[] lowerCaseName) {
+    return end - start == lowerCaseName.length && matches(in, start, end, lowerCaseName, true);
+  }
+
+  /** Whether the bytes at {@code start} begin with {@code expected} (lower case if ignoreCase). */
+  private static boolean matches(
+      ByteBuf in, int start, int end, byte[] expected, boolean ignoreCase) {
+    if (end - start < expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      byte b = in.getByte(start + i);
+      if (ignoreCase && b >= 'A' && b <= 'Z') {
+        b += 'a' - 'A';
+      }
+      if (b != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int bodyLimit(String uri) {
+    int query = uri.indexOf('?');
+    Integer limit = BODY_LIMITS.get(query < 0 ? uri : uri.substring(0, query));
+    return limit == null ? DEFAULT_BODY_LIMIT : limit;
+  }
+
+  private static Map<String, Integer> bodyLimits() {
+    Map<String, Integer> limits = new HashMap<>();
+    limits.put("/accessories", 0);
+    limits.put("/pair-setup", 2 * 1024);
+    limits.put("/pair-verify", 1024);
+    limits.put("/pairings", 1024);
+    // a controller may write to every characteristic of a large bridge at once
+    limits.put("/characteristics", 64 * 1024);
+    return Collections.unmodifiableMap(limits);
+  }
+}
@@ -0,0 +1,243 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.http.HttpResponse;
+import io.github.hapjava.server.impl.http.StreamingHttpResponse;
+import io.github.hapjava.server.impl.json.HapJsonNoContentResponse;
+import io.github.hapjava.server.impl.responses.BadRequestResponse;
+import io.github.hapjava.server.impl.responses.ConflictResponse;
+import io.github.hapjava.server.impl.responses.InternalServerErrorResponse;
+import io.github.hapjava.server.impl.responses.NotFoundResponse;
+import io.github.hapjava.server.impl.responses.PayloadTooLargeResponse;
+import io.github.hapjava.server.impl.responses.ServiceUnavailableResponse;
+import io.github.hapjava.server.impl.responses.UnauthorizedResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Encodes {@link HttpResponse}s for HAP. Status lines and the common headers are written from
+ * pre-encoded constants into a single pooled buffer of exactly the response size, so that {@link
+ * BinaryHandler} encrypts each response as one run of frames. Bodies larger than {@link
+ * #COPY_THRESHOLD} are not copied but appended as a wrapped component. The shared fixed responses
+ * (such as {@link NotFoundResponse#INSTANCE}) are encoded once and reused. The bodies of large
+ * {@link StreamingHttpResponse}s are produced chunk by chunk as they are sent.
+ */
+class HomekitResponseEncoder extends MessageToMessageEncoder<HttpResponse> {
+
+  static final int COPY_THRESHOLD = 8 * 1024;
+
+  private static final byte[] CRLF = {'\r', '\n'};
+  private static final byte[] HEADER_SEPARATOR = {':', ' '};
+  private static final byte[] CONTENT_LENGTH = ascii("Content-Length: ");
+  private static final byte[] CONNECTION_KEEP_ALIVE = ascii("Connection: keep-alive\r\n");
+
+  private static final int[] STATUS_CODES = {
+    200, 204, 207, 400, 401, 404, 405, 409, 413, 422, 429, 470, 500, 503
+  };
+  private static final Map<Integer, byte[]> HTTP_STATUS_LINES = statusLines("HTTP/1.1");
+  private static final Map<Integer, byte[]> EVENT_STATUS_LINES = statusLines("EVENT/1.0");
+
+  private static final Map<String, byte[]> HEADER_NAMES = asciiMap("Content-type", "Content-Type");
+  private static final Map<String, byte[]> HEADER_VALUES =
+      asciiMap("application/hap+json", "application/pairing+tlv8");
+
+  private static final Map<HttpResponse, byte[]> FIXED_RESPONSES = fixedResponses();
+
+  @Override
+  protected void encode(ChannelHandlerContext ctx, HttpResponse msg, List<Object> out)
+      throws IOException {
+    byte[] fixed = FIXED_RESPONSES.get(msg);
+    if (fixed != null) {
+      out.add(Unpooled.wrappedBuffer(fixed));
+      return;
+    }
+    if (msg instanceof StreamingHttpResponse) {
+      encodeStreaming(ctx, (StreamingHttpResponse) msg, out);
+      return;
+    }
+    ByteBuffer body = msg.getBody();
+    int bodyLength = body.remaining();
+    byte[] statusLine = statusLine(msg);
+    int headerLength = headerLength(statusLine, msg.getHeaders(), bodyLength);
+    if (bodyLength <= COPY_THRESHOLD) {
+      // heap rather than direct: the buffer is usually read by the encryption, not the socket
+      ByteBuf buf = ctx.alloc().heapBuffer(headerLength + bodyLength, headerLength + bodyLength);
+      writeHeader(buf, statusLine, msg.getHeaders(), bodyLength);
+      writeBody(buf, body);
+      out.add(buf);
+    } else {
+      ByteBuf header = ctx.alloc().heapBuffer(headerLength, headerLength);
+      writeHeader(header, statusLine, msg.getHeaders(), bodyLength);
+      out.add(
+          ctx.alloc().compositeBuffer(2).addComponents(true, header, Unpooled.wrappedBuffer(body)));
+    }
+  }
+
+  /**
+   * Writes a small streamed body right after the header like any other; a larger one follows as a
+   * {@link StreamingBodyInput} that the {@link ChunkedWriteHandler} below reads as the channel
+   * drains.
+   */
+  private static void encodeStreaming(
+      ChannelHandlerContext ctx, StreamingHttpResponse msg, List<Object> out) throws IOException {
+    int bodyLength = msg.getContentLength();
+    byte[] statusLine = statusLine(msg);
+    int headerLength = headerLength(statusLine, msg.getHeaders(), bodyLength);
+    if (bodyLength > COPY_THRESHOLD) {
+      ByteBuf header = ctx.alloc().heapBuffer(headerLength, headerLength);
+      writeHeader(header, statusLine, msg.getHeaders(), bodyLength);
+      out.add(header);
+      out.add(new StreamingBodyInput(msg));
+      return;
+    }
+    ByteBuf buf = ctx.alloc().heapBuffer(headerLength + bodyLength, headerLength + bodyLength);
+    try {
+      writeHeader(buf, statusLine, msg.getHeaders(), bodyLength);
+      ByteBufOutputStream body = new ByteBufOutputStream(buf);
+      while (msg.writeNext(body)) {}
+      if (buf.readableBytes() != headerLength + bodyLength) {
+        throw new IOException("Body does not match its length of " + bodyLength + " bytes");
+      }
+    } catch (IOException | RuntimeException e) {
+      buf.release();
+      throw e;
+    }
+    out.add(buf);
+  }
+
+  private static byte[] statusLine(HttpResponse msg) {
+    int status = msg.getStatusCode();
+    boolean event = msg.getVersion() == HttpResponse.HttpVersion.EVENT_1_0;
+    byte[] line = (event ? EVENT_STATUS_LINES : HTTP_STATUS_LINES).get(status);
+    if (line == null) {
+      line = statusLine(event ? "EVENT/1.0" : "HTTP/1.1", status);
+    }
+    return line;
+  }
+
+  private static int headerLength(byte[] statusLine, Map<String, String> headers, int bodyLength) {
+    int length = statusLine.length;
+    for (Entry<String, String> header : headers.entrySet()) {
+      length += header.getKey().length() + HEADER_SEPARATOR.length;
+      length += header.getValue().length() + CRLF.length;
+    }
+    length += CONTENT_LENGTH.length + decimalLength(bodyLength) + CRLF.length;
+    return length + CONNECTION_KEEP_ALIVE.length + CRLF.length;
+  }
+
+  private static void writeHeader(
+      ByteBuf buf, byte[] statusLine, Map<String, String> headers, int bodyLength) {
+    buf.writeBytes(statusLine);
+    for (Entry<String, String> header : headers.entrySet()) {
+      writeAscii(buf, HEADER_NAMES, header.getKey());
+      buf.writeBytes(HEADER_SEPARATOR);
+      writeAscii(buf, HEADER_VALUES, header.getValue());
+      buf.writeBytes(CRLF);
+    }
+    buf.writeBytes(CONTENT_LENGTH);
+    writeDecimal(buf, bodyLength);
+    buf.writeBytes(CRLF);
+    buf.writeBytes(CONNECTION_KEEP_ALIVE);
+    buf.writeBytes(CRLF);
+  }
+
+  private static void writeBody(ByteBuf buf, ByteBuffer body) {
+    if (body.hasArray()) {
+      buf.writeBytes(body.array(), body.arrayOffset() + body.position(), body.remaining());
+    } else {
+      buf.writeBytes(body.duplicate());
+    }
+  }
+
+  private static void writeAscii(ByteBuf buf, Map<String, byte[]> constants, String value) {
+    byte[] encoded = constants.get(value);
+    if (encoded != null) {
+      buf.writeBytes(encoded);
+    } else {
+      ByteBufUtil.writeAscii(buf, value);
+    }
+  }
+
+  private static void writeDecimal(ByteBuf buf, int value) {
+    int index = buf.writerIndex() + decimalLength(value);
+    buf.writerIndex(index);
+    do {
+      buf.setByte(--index, '0' + value % 10);
+      value /= 10;
+    } while (value > 0);
+  }
+
+  private static int decimalLength(int value) {
+    int length = 1;
+    while (value >= 10) {
+      value /= 10;
+      length++;
+    }
+    return length;
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static Map<String, byte[]> asciiMap(String... values) {
+    Map<String, byte[]> map = new HashMap<>();
+    for (String value : values) {
+      map.put(value, ascii(value));
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+  private static byte[] statusLine(String version, int status) {
+    return ascii(
+        version + " " + status + " " + HttpResponseStatus.valueOf(status).reasonPhrase() + "\r\n");
+  }
+
+  private static Map<Integer, byte[]> statusLines(String version) {
+    Map<Integer, byte[]> lines = new HashMap<>();
+    for (int status : STATUS_CODES) {
+      lines.put(status, statusLine(version, status));
+    }
+    return Collections.unmodifiableMap(lines);
+  }
+
+  private static Map<HttpResponse, byte[]> fixedResponses() {
+    Map<HttpResponse, byte[]> responses = new IdentityHashMap<>();
+    for (HttpResponse response :
+        new HttpResponse[] {
+          HapJsonNoContentResponse.INSTANCE,
+          BadRequestResponse.INSTANCE,
+          UnauthorizedResponse.INSTANCE,
+          NotFoundResponse.INSTANCE,
+          ConflictResponse.INSTANCE,
+          PayloadTooLargeResponse.INSTANCE,
+          InternalServerErrorResponse.INSTANCE,
+          ServiceUnavailableResponse.INSTANCE
+        }) {
+      ByteBuffer body = response.getBody();
+      byte[] statusLine = statusLine(response);
+      int length = headerLength(statusLine, response.getHeaders(), body.remaining());
+      ByteBuf buf = UnpooledByteBufAllocator.DEFAULT.heapBuffer(length + body.remaining());
+      writeHeader(buf, statusLine, response.getHeaders(), body.remaining());
+      writeBody(buf, body);
+      responses.put(response, ByteBufUtil.getBytes(buf));
+      buf.release();
+    }
+    return Collections.unmodifiableMap(responses);
+  }
+}
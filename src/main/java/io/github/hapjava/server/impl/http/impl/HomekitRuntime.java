@@ -0,0 +1,216 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.crypto.AeadProviders;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.jmdns.JmDNS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Threads and responders that any number of {@link HomekitHttpServer}s in one process can share:
+ * the boss and worker event loops, the executor running the (possibly blocking) accessory request
+ * handling, the executor running the pairing handshakes, a timer for deadlines and one mDNS
+ * responder per local address. Servers built from a runtime do not shut it down when they are
+ * stopped, so the number of threads stays the same no matter how many bridges are added; call
+ * {@link #shutdown()} once all of them have been stopped.
+ */
+public class HomekitRuntime {
+
+  private static final Logger logger = LoggerFactory.getLogger(HomekitRuntime.class);
+
+  private final Transport transport;
+  private final EventLoopGroup bossGroup;
+  private final EventLoopGroup workerGroup;
+  private final RequestExecutor requestExecutor;
+  private final RequestExecutor handshakeExecutor;
+  private final HashedWheelTimer timer;
+  private final Map<InetAddress, JmDNS> responders = new HashMap<>();
+
+  /** Creates a runtime with the default transport and thread counts. */
+  public HomekitRuntime() {
+    this(
+        Transport.AUTO,
+        HandlerExecution.AUTO,
+        1,
+        0,
+        Runtime.getRuntime().availableProcessors(),
+        RequestExecutor.DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /** Runs the request handling on virtual threads when running on Java 21 or later. */
+  public HomekitRuntime(
+      Transport transport,
+      int bossThreads,
+      int workerThreads,
+      int handlerThreads,
+      int handlerQueueCapacity) {
+    this(
+        transport,
+        HandlerExecution.AUTO,
+        bossThreads,
+        workerThreads,
+        handlerThreads,
+        handlerQueueCapacity);
+  }
+
+  /** Runs the pairing handshakes on one platform thread per processor. */
+  public HomekitRuntime(
+      Transport transport,
+      HandlerExecution handlerExecution,
+      int bossThreads,
+      int workerThreads,
+      int handlerThreads,
+      int handlerQueueCapacity) {
+    this(
+        transport,
+        handlerExecution,
+        bossThreads,
+        workerThreads,
+        handlerThreads,
+        handlerQueueCapacity,
+        Runtime.getRuntime().availableProcessors(),
+        RequestExecutor.DEFAULT_HANDSHAKE_QUEUE_CAPACITY);
+  }
+
+  /**
+   * @param transport Netty transport of all servers built from this runtime
+   * @param handlerExecution kind of threads running the request handling
+   * @param bossThreads number of event loops accepting connections
+   * @param workerThreads number of event loops serving the connections, 0 for Netty's default
+   * @param handlerThreads number of threads running the blocking accessory request handling
+   * @param handlerQueueCapacity number of requests that may wait for a handler thread before
+   *     further requests are answered with 503. Virtual threads do not wait, so there up to {@code
+   *     handlerThreads + handlerQueueCapacity} requests are handled at the same time.
+   * @param handshakeThreads number of platform threads running the pair-setup and pair-verify
+   *     handshakes, which only need the CPU
+   * @param handshakeQueueCapacity number of handshake steps that may wait for a handshake thread
+   *     before further ones are answered with 503
+   */
+  public HomekitRuntime(
+      Transport transport,
+      HandlerExecution handlerExecution,
+      int bossThreads,
+      int workerThreads,
+      int handlerThreads,
+      int handlerQueueCapacity,
+      int handshakeThreads,
+      int handshakeQueueCapacity) {
+    this.transport = transport.resolve();
+    HandlerExecution execution = handlerExecution.resolve();
+    logger.debug(
+        "Using {} transport with {} boss, {} worker, {} {} handler and {} handshake threads, {}"
+            + " ciphers",
+        this.transport,
+        bossThreads,
+        workerThreads,
+        handlerThreads,
+        execution,
+        handshakeThreads,
+        AeadProviders.getDefault().getName());
+    bossGroup =
+        this.transport.newEventLoopGroup(bossThreads, new DefaultThreadFactory("homekit-boss"));
+    workerGroup =
+        this.transport.newEventLoopGroup(workerThreads, new DefaultThreadFactory("homekit-worker"));
+    requestExecutor = new RequestExecutor(execution, handlerThreads, handlerQueueCapacity);
+    handshakeExecutor =
+        new RequestExecutor(
+            HandlerExecution.PLATFORM,
+            "homekit-handshake",
+            handshakeThreads,
+            handshakeQueueCapacity);
+    timer = new HashedWheelTimer(new DefaultThreadFactory("homekit-timer"));
+  }
+
+  /**
+   * Returns the mDNS responders of the given addresses, creating those that do not exist yet. Every
+   * bridge advertising on an address shares its responder.
+   *
+   * @param localAddresses addresses to advertise on
+   * @return one responder per address
+   * @throws IOException if a responder cannot be created
+   */
+  public synchronized List<JmDNS> getResponders(Collection<InetAddress> localAddresses)
+      throws IOException {
+    List<JmDNS> result = new ArrayList<>(localAddresses.size());
+    for (InetAddress localAddress : localAddresses) {
+      JmDNS responder = responders.get(localAddress);
+      if (responder == null) {
+        responder = JmDNS.create(localAddress);
+        responders.put(localAddress, responder);
+      }
+      result.add(responder);
+    }
+    return result;
+  }
+
+  /** @return number of requests of all servers waiting for a handler thread */
+  public int getHandlerQueueDepth() {
+    return requestExecutor.getQueueDepth();
+  }
+
+  /** @return number of handler threads currently processing a request of any server */
+  public int getHandlerActiveThreads() {
+    return requestExecutor.getActiveThreads();
+  }
+
+  /** @return number of handshake steps of all servers waiting for a handshake thread */
+  public int getHandshakeQueueDepth() {
+    return handshakeExecutor.getQueueDepth();
+  }
+
+  /** @return number of handshake threads currently processing a handshake step of any server */
+  public int getHandshakeActiveThreads() {
+    return handshakeExecutor.getActiveThreads();
+  }
+
+  /** Stops the threads and mDNS responders. The servers using them must have been stopped. */
+  public synchronized void shutdown() {
+    workerGroup.shutdownGracefully();
+    bossGroup.shutdownGracefully();
+    requestExecutor.shutdown();
+    handshakeExecutor.shutdown();
+    timer.stop();
+    for (JmDNS responder : responders.values()) {
+      try {
+        responder.close();
+      } catch (IOException e) {
+        logger.debug("Could not close mDNS responder", e);
+      }
+    }
+    responders.clear();
+  }
+
+  Transport getTransport() {
+    return transport;
+  }
+
+  EventLoopGroup getBossGroup() {
+    return bossGroup;
+  }
+
+  EventLoopGroup getWorkerGroup() {
+    return workerGroup;
+  }
+
+  RequestExecutor getRequestExecutor() {
+    return requestExecutor;
+  }
+
+  RequestExecutor getHandshakeExecutor() {
+    return handshakeExecutor;
+  }
+
+  Timer getTimer() {
+    return timer;
+  }
+}
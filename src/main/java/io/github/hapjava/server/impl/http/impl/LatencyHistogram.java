@@ -0,0 +1,56 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in buckets with fixed upper bounds, from one millisecond to five seconds. The
+ * last bucket counts everything longer than the largest bound. Recording does not lock, so a
+ * snapshot taken while durations are recorded may be off by the ones in flight.
+ */
+public class LatencyHistogram {
+
+  private static final long[] UPPER_BOUNDS_MILLIS = {
+    1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000
+  };
+
+  private final LongAdder[] counts = new LongAdder[UPPER_BOUNDS_MILLIS.length + 1];
+
+  LatencyHistogram() {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  void record(long nanos) {
+    long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    int bucket = 0;
+    while (bucket < UPPER_BOUNDS_MILLIS.length && millis >= UPPER_BOUNDS_MILLIS[bucket]) {
+      bucket++;
+    }
+    counts[bucket].increment();
+  }
+
+  /** @return the exclusive upper bound of each bucket but the last, in milliseconds */
+  public long[] getUpperBoundsMillis() {
+    return UPPER_BOUNDS_MILLIS.clone();
+  }
+
+  /** @return the number of durations in each bucket, one more than there are upper bounds */
+  public long[] getCounts() {
+    long[] snapshot = new long[counts.length];
+    for (int i = 0; i < counts.length; i++) {
+      snapshot[i] = counts[i].sum();
+    }
+    return snapshot;
+  }
+
+  /** @return the number of durations recorded */
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : counts) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+}
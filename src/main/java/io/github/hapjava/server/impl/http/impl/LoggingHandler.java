@@ -6,11 +6,19 @@ import java.io.IOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Logs every buffer read and written at trace level. Only added to connections accepted while trace
+ * logging {@link #isEnabled() is enabled}, so other connections do not pay for it.
+ */
 public class LoggingHandler extends ChannelDuplexHandler {
 
   private static final Logger logger = LoggerFactory.getLogger(LoggingHandler.class);
   private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
 
+  static boolean isEnabled() {
+    return logger.isTraceEnabled();
+  }
+
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
     if (logger.isTraceEnabled() && msg instanceof ByteBuf) {
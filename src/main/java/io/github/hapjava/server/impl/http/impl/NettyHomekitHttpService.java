@@ -4,52 +4,143 @@ import io.github.hapjava.server.impl.http.HomekitClientConnectionFactory;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
 import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.ChannelGroupFuture;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.util.Timeout;
 import io.netty.util.concurrent.*;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 class NettyHomekitHttpService {
 
-  private final EventLoopGroup bossGroup;
-  private final EventLoopGroup workerGroup;
+  private final HomekitRuntime runtime;
+  private final boolean ownsRuntime;
+  private final Executor requestExecutor;
+  private final Executor handshakeExecutor;
 
   private static final Logger logger = LoggerFactory.getLogger(NettyHomekitHttpService.class);
-  private final ChannelGroup allChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
-  private final InetAddress localAddress;
+  private final ConcurrentMap<HomekitClientConnectionFactory, ChannelGroup> channelGroups =
+      new ConcurrentHashMap<>();
+  private final ChannelGroup serverChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+  private final List<InetAddress> localAddresses;
+  private final int acceptorsPerAddress;
   private final int port;
-  private final int nThreads;
+  private final ServerSettings settings;
+  private final ServerMetrics metrics;
+  private final WireTap wireTap;
+  private final ControllerRateLimiter rateLimiter;
+  private final ReconnectAdmission admission;
 
-  public static NettyHomekitHttpService create(InetAddress localAddress, int port, int nThreads) {
-    return new NettyHomekitHttpService(localAddress, port, nThreads);
+  /**
+   * @param runtime event loops, handler and handshake threads and timer serving the connections
+   * @param ownsRuntime whether {@link #shutdown()} also shuts down the runtime, which is the case
+   *     when it was created for this service only
+   * @param settings tunables read whenever a connection is accepted
+   * @param metrics counters updated by the connections
+   * @param wireTap recorder of the plaintext messages of one controller
+   */
+  public static NettyHomekitHttpService create(
+      HomekitRuntime runtime,
+      boolean ownsRuntime,
+      List<InetAddress> localAddresses,
+      int port,
+      ServerSettings settings,
+      ServerMetrics metrics,
+      WireTap wireTap) {
+    return new NettyHomekitHttpService(
+        runtime, ownsRuntime, localAddresses, port, settings, metrics, wireTap);
   }
 
-  private NettyHomekitHttpService(InetAddress localAddress, int port, int nThreads) {
-    bossGroup = new NioEventLoopGroup();
-    workerGroup = new NioEventLoopGroup();
-    this.localAddress = localAddress;
+  private NettyHomekitHttpService(
+      HomekitRuntime runtime,
+      boolean ownsRuntime,
+      List<InetAddress> localAddresses,
+      int port,
+      ServerSettings settings,
+      ServerMetrics metrics,
+      WireTap wireTap) {
+    this.runtime = runtime;
+    this.ownsRuntime = ownsRuntime;
+    this.requestExecutor = metrics.instrument(runtime.getRequestExecutor());
+    this.handshakeExecutor = metrics.instrumentHandshakes(runtime.getHandshakeExecutor());
+    this.acceptorsPerAddress = acceptorsPerAddress(runtime.getTransport(), settings);
+    if (acceptorsPerAddress < settings.getAcceptorsPerAddress()) {
+      logger.warn("Multiple acceptors per address require the epoll transport, using one");
+    }
+    this.localAddresses = localAddresses;
     this.port = port;
-    this.nThreads = nThreads;
+    this.settings = settings;
+    this.metrics = metrics;
+    this.wireTap = wireTap;
+    this.rateLimiter = new ControllerRateLimiter(settings);
+    this.admission = new ReconnectAdmission(settings, metrics, runtime.getTimer());
   }
 
+  /** SO_REUSEPORT lets the kernel spread new connections over several listening sockets. */
+  static int acceptorsPerAddress(Transport transport, ServerSettings settings) {
+    return transport == Transport.EPOLL ? settings.getAcceptorsPerAddress() : 1;
+  }
+
+  /**
+   * Binds every local address, {@link ServerSettings#getAcceptorsPerAddress()} times each with
+   * epoll. The first socket determines the port when none was given, and the others use that port.
+   *
+   * @return a future completing with the port once every socket has been bound
+   */
   public CompletableFuture<Integer> create(HomekitClientConnectionFactory connectionFactory) {
-    final CompletableFuture<Integer> portFuture = new CompletableFuture<Integer>();
+    ChannelGroup channels =
+        channelGroups.computeIfAbsent(
+            connectionFactory, f -> new DefaultChannelGroup(GlobalEventExecutor.INSTANCE));
     ServerBootstrap b = new ServerBootstrap();
-    b.group(bossGroup, workerGroup)
-        .channel(NioServerSocketChannel.class)
+    b.group(runtime.getBossGroup(), runtime.getWorkerGroup())
+        .channel(runtime.getTransport().serverChannelClass())
         .handler(new LoggingHandler(LogLevel.INFO))
-        .childHandler(new ServerInitializer(connectionFactory, allChannels, nThreads))
+        .childHandler(
+            new ServerInitializer(
+                connectionFactory,
+                channels,
+                requestExecutor,
+                handshakeExecutor,
+                settings,
+                metrics,
+                wireTap,
+                rateLimiter,
+                admission))
         .option(ChannelOption.SO_BACKLOG, 128)
         .childOption(ChannelOption.SO_KEEPALIVE, true);
+    if (acceptorsPerAddress > 1) {
+      runtime.getTransport().enableReusePort(b);
+    }
+    return bind(b, localAddresses.get(0), port)
+        .thenCompose(
+            boundPort -> {
+              List<CompletableFuture<Integer>> others = new ArrayList<>();
+              for (int a = 0; a < localAddresses.size(); a++) {
+                for (int i = a == 0 ? 1 : 0; i < acceptorsPerAddress; i++) {
+                  others.add(bind(b, localAddresses.get(a), boundPort));
+                }
+              }
+              return CompletableFuture.allOf(others.toArray(new CompletableFuture<?>[0]))
+                  .thenApply(v -> boundPort);
+            });
+  }
+
+  private CompletableFuture<Integer> bind(ServerBootstrap b, InetAddress localAddress, int port) {
+    final CompletableFuture<Integer> portFuture = new CompletableFuture<Integer>();
     final ChannelFuture bindFuture = b.bind(localAddress, port);
+    serverChannels.add(bindFuture.channel());
     bindFuture.addListener(
         new GenericFutureListener<Future<? super Void>>() {
 
@@ -73,13 +164,63 @@ class NettyHomekitHttpService {
     return portFuture;
   }
 
+  /**
+   * Stops accepting connections and drains the open ones, then shuts down the runtime if it is not
+   * shared. Blocks for at most the drain timeout of the {@link ServerSettings}.
+   */
   public void shutdown() {
-    workerGroup.shutdownGracefully();
-    bossGroup.shutdownGracefully();
+    serverChannels.close().awaitUninterruptibly();
+    CompletableFuture.allOf(
+            channelGroups.values().stream().map(this::drain).toArray(CompletableFuture<?>[]::new))
+        .join();
+    if (ownsRuntime) {
+      runtime.shutdown();
+    }
   }
 
   public void resetConnections() {
     logger.trace("Resetting connections");
-    allChannels.close();
+    channelGroups.values().forEach(this::drain);
+  }
+
+  /** Drains only the connections that were created by {@code connectionFactory}. */
+  public void resetConnections(HomekitClientConnectionFactory connectionFactory) {
+    ChannelGroup channels = channelGroups.get(connectionFactory);
+    if (channels != null) {
+      logger.trace("Resetting {} connections", channels.size());
+      drain(channels);
+    }
+  }
+
+  /**
+   * Lets every connection of the group finish the requests it has already received and write out
+   * what is queued for it, including the events held back while it was not writable, then closes
+   * it. Connections still open after the drain timeout are closed right away.
+   *
+   * @return a future completing once all connections of the group are closed
+   */
+  private CompletableFuture<Void> drain(ChannelGroup channels) {
+    CompletableFuture<Void> drained = new CompletableFuture<>();
+    ChannelGroupFuture closed = channels.newCloseFuture();
+    List<Channel> draining = new ArrayList<>(channels);
+    for (Channel channel : draining) {
+      channel.pipeline().fireUserEventTriggered(AccessoryHandler.DrainEvent.INSTANCE);
+    }
+    Timeout deadline =
+        runtime
+            .getTimer()
+            .newTimeout(
+                t -> {
+                  logger.debug("Connections did not drain in time, closing them");
+                  draining.forEach(Channel::close);
+                },
+                settings.getDrainTimeoutMillis(),
+                TimeUnit.MILLISECONDS);
+    closed.addListener(
+        f -> {
+          deadline.cancel();
+          drained.complete(null);
+        });
+    return drained;
   }
 }
@@ -0,0 +1,143 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One token bucket per server in front of the requests every controller sends when it reconnects,
+ * pair-verify and the accessory listing, configured by {@link
+ * ServerSettings#setReconnectAdmission(double, int, long, TimeUnit)}. When a reset of the
+ * connections or a change of the accessories makes the whole home reconnect at once, requests above
+ * the rate reserve a later token and wait for it, up to the maximum wait, or are turned away right
+ * away so that the controller backs off.
+ *
+ * <p>A reconnect wave starts with the first request that cannot be admitted right away and ends
+ * once the bucket has filled up again, which a timer checks even when no further controller
+ * reconnects. Its duration, from that request to the last one that had to wait or was turned away,
+ * is reported to the {@link ServerMetrics}.
+ */
+class ReconnectAdmission {
+
+  /** Returned by {@link #tryAcquire(String)} for a request that has to be turned away. */
+  static final long REJECTED = TokenBucket.NOT_TAKEN;
+
+  private final ServerSettings settings;
+  private final ServerMetrics metrics;
+  private final Timer timer;
+  private final TokenBucket bucket = new TokenBucket();
+
+  private boolean inWave = false;
+  private long waveStarted;
+  private long lastThrottled;
+  private Timeout settleCheck;
+
+  ReconnectAdmission(ServerSettings settings, ServerMetrics metrics, Timer timer) {
+    this.settings = settings;
+    this.metrics = metrics;
+    this.timer = timer;
+  }
+
+  /** Whether requests for the URI are subject to admission. */
+  static boolean applies(String uri) {
+    return "/pair-verify".equals(uri) || "/accessories".equals(uri);
+  }
+
+  /**
+   * Takes a token for a request, or reserves the next free one if it is due within the maximum
+   * wait.
+   *
+   * @param uri URI of the request
+   * @return 0 if the request may start, the nanoseconds until its reserved token is due, or {@link
+   *     #REJECTED} if it has to be turned away
+   */
+  long tryAcquire(String uri) {
+    return tryAcquire(uri, System.nanoTime());
+  }
+
+  long tryAcquire(String uri, long now) {
+    if (!applies(uri)) {
+      return 0;
+    }
+    double requestsPerSecond;
+    int burst;
+    long maxWaitNanos;
+    synchronized (settings) {
+      requestsPerSecond = settings.getReconnectRequestsPerSecond();
+      burst = settings.getReconnectRequestBurst();
+      maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(settings.getReconnectMaxWaitMillis());
+    }
+    if (requestsPerSecond <= 0) {
+      return 0;
+    }
+    long wait;
+    synchronized (this) {
+      settleIfFull(requestsPerSecond, burst, now);
+      wait = bucket.reserve(requestsPerSecond, burst, maxWaitNanos, now);
+      if (wait != 0) {
+        if (!inWave) {
+          inWave = true;
+          waveStarted = now;
+        }
+        lastThrottled = now;
+        scheduleSettleCheck(requestsPerSecond, burst);
+      }
+    }
+    if (wait == 0) {
+      metrics.admittedRightAway();
+    } else if (wait == REJECTED) {
+      metrics.admissionRejected();
+    } else {
+      metrics.admittedAfterWait(wait);
+    }
+    return wait;
+  }
+
+  /** Ends the current wave if the bucket has filled up, and checks again later if it has not. */
+  void settle(long now) {
+    double requestsPerSecond;
+    int burst;
+    synchronized (settings) {
+      requestsPerSecond = settings.getReconnectRequestsPerSecond();
+      burst = settings.getReconnectRequestBurst();
+    }
+    synchronized (this) {
+      settleCheck = null;
+      if (requestsPerSecond <= 0) {
+        // admission has been turned off since
+        settleWave();
+      } else if (!settleIfFull(requestsPerSecond, burst, now)) {
+        scheduleSettleCheck(requestsPerSecond, burst);
+      }
+    }
+  }
+
+  /** @return whether no wave is in progress any more */
+  private boolean settleIfFull(double requestsPerSecond, int burst, long now) {
+    bucket.refill(requestsPerSecond, burst, now);
+    if (bucket.getTokens() >= burst) {
+      settleWave();
+    }
+    return !inWave;
+  }
+
+  private void settleWave() {
+    if (inWave) {
+      inWave = false;
+      metrics.reconnectWaveSettled(lastThrottled - waveStarted);
+    }
+  }
+
+  /** Checks for the end of the wave once the bucket should have filled up again. */
+  private void scheduleSettleCheck(double requestsPerSecond, int burst) {
+    if (settleCheck != null) {
+      return;
+    }
+    long delay = TokenBucket.nanosFor(burst - bucket.getTokens(), requestsPerSecond);
+    try {
+      settleCheck = timer.newTimeout(t -> settle(System.nanoTime()), delay, TimeUnit.NANOSECONDS);
+    } catch (IllegalStateException e) {
+      // the timer has been stopped, the server is shutting down
+    }
+  }
+}
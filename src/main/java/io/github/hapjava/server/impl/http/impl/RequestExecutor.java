@@ -0,0 +1,136 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool that runs the potentially blocking accessory request handling off the event loops.
+ * When every thread is busy and the queue is full, {@link #execute(Runnable)} throws a {@link
+ * RejectedExecutionException} so the caller can answer with a 503 instead of letting latency grow
+ * without limit.
+ *
+ * <p>Each {@link HomekitRuntime} has one for the accessory requests and one for the pair-setup and
+ * pair-verify handshakes, which are CPU bound and would otherwise hold up the requests of
+ * controllers that are already connected while many controllers reconnect at once.
+ *
+ * <p>With {@link HandlerExecution#VIRTUAL} every admitted request starts a new virtual thread of
+ * its own instead of waiting in the queue. A semaphore admits up to {@code nThreads +
+ * queueCapacity} requests at the same time, the same number as with platform threads, and those in
+ * flight are reported as the queue depth.
+ */
+class RequestExecutor implements Executor {
+
+  static final int DEFAULT_QUEUE_CAPACITY = 1024;
+  static final int DEFAULT_HANDSHAKE_QUEUE_CAPACITY = 64;
+
+  private final String threadName;
+  /** Pool of platform threads, or null with virtual threads. */
+  private final ThreadPoolExecutor executor;
+  /** Factory of the virtual thread of each request, or null with platform threads. */
+  private final ThreadFactory virtualThreads;
+  private final Semaphore virtualPermits;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder rejected = new LongAdder();
+  private volatile boolean shutdown = false;
+
+  RequestExecutor(int nThreads, int queueCapacity) {
+    this(HandlerExecution.PLATFORM, nThreads, queueCapacity);
+  }
+
+  RequestExecutor(HandlerExecution execution, int nThreads, int queueCapacity) {
+    this(execution, "homekit-handler", nThreads, queueCapacity);
+  }
+
+  RequestExecutor(HandlerExecution execution, String threadName, int nThreads, int queueCapacity) {
+    this.threadName = threadName;
+    if (execution.resolve() == HandlerExecution.VIRTUAL) {
+      this.executor = null;
+      this.virtualThreads = VirtualThreads.newThreadFactory(threadName);
+      this.virtualPermits = new Semaphore(nThreads + queueCapacity);
+    } else {
+      RejectedExecutionHandler reject =
+          (task, pool) -> {
+            throw reject();
+          };
+      this.executor =
+          new ThreadPoolExecutor(
+              nThreads,
+              nThreads,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(queueCapacity),
+              new DefaultThreadFactory(threadName),
+              reject);
+      this.virtualThreads = null;
+      this.virtualPermits = null;
+    }
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    if (executor != null) {
+      executor.execute(task);
+      return;
+    }
+    if (shutdown || !virtualPermits.tryAcquire()) {
+      throw reject();
+    }
+    inFlight.incrementAndGet();
+    try {
+      virtualThreads
+          .newThread(
+              () -> {
+                try {
+                  task.run();
+                } finally {
+                  inFlight.decrementAndGet();
+                  virtualPermits.release();
+                }
+              })
+          .start();
+    } catch (RuntimeException | Error e) {
+      inFlight.decrementAndGet();
+      virtualPermits.release();
+      throw e;
+    }
+  }
+
+  private RejectedExecutionException reject() {
+    rejected.increment();
+    return new RejectedExecutionException("Queue of " + threadName + " threads is full");
+  }
+
+  /**
+   * Number of requests waiting for a handler thread, or with virtual threads the number of requests
+   * in flight.
+   */
+  int getQueueDepth() {
+    return executor != null ? executor.getQueue().size() : inFlight.get();
+  }
+
+  /** Number of handler threads currently processing a request. */
+  int getActiveThreads() {
+    return executor != null ? executor.getActiveCount() : inFlight.get();
+  }
+
+  /** Number of requests turned away because the queue was full. */
+  long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  void shutdown() {
+    shutdown = true;
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+}
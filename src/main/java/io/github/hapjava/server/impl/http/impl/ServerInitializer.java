@@ -5,36 +5,80 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.http.HttpObjectAggregator;
-import io.netty.handler.codec.http.HttpRequestDecoder;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
-import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import java.util.concurrent.Executor;
 
 class ServerInitializer extends ChannelInitializer<SocketChannel> {
 
-  private static final int MAX_POST = 1000000;
-
   public static final String HTTP_HANDLER_NAME = "http";
+  public static final String IDLE_HANDLER_NAME = "idle";
+  public static final String FLUSH_HANDLER_NAME = "flush";
+  public static final String TAP_HANDLER_NAME = "tap";
+  public static final String BINARY_HANDLER_NAME = "binary";
+  public static final String FRAME_DECODER_NAME = "frame";
+  public static final String CHUNKED_WRITER_NAME = "chunked";
 
   private final HomekitClientConnectionFactory homekit;
-  private final ChannelGroup allChannels;
-  private final EventExecutorGroup blockingExecutorGroup;
+  private final ChannelGroup channels;
+  private final Executor requestExecutor;
+  private final Executor handshakeExecutor;
+  private final ServerSettings settings;
+  private final ServerMetrics metrics;
+  private final WireTap wireTap;
+  private final ControllerRateLimiter rateLimiter;
+  private final ReconnectAdmission admission;
 
   public ServerInitializer(
-      HomekitClientConnectionFactory homekit, ChannelGroup allChannels, int nThreads) {
+      HomekitClientConnectionFactory homekit,
+      ChannelGroup channels,
+      Executor requestExecutor,
+      Executor handshakeExecutor,
+      ServerSettings settings,
+      ServerMetrics metrics,
+      WireTap wireTap,
+      ControllerRateLimiter rateLimiter,
+      ReconnectAdmission admission) {
     this.homekit = homekit;
-    this.allChannels = allChannels;
-    this.blockingExecutorGroup = new DefaultEventExecutorGroup(nThreads);
+    this.channels = channels;
+    this.requestExecutor = requestExecutor;
+    this.handshakeExecutor = handshakeExecutor;
+    this.settings = settings;
+    this.metrics = metrics;
+    this.wireTap = wireTap;
+    this.rateLimiter = rateLimiter;
+    this.admission = admission;
   }
 
   @Override
   protected void initChannel(SocketChannel ch) throws Exception {
+    ch.config().setWriteBufferWaterMark(settings.writeBufferWaterMark());
     ChannelPipeline pipeline = ch.pipeline();
-    pipeline.addLast(new LoggingHandler());
-    pipeline.addLast(HTTP_HANDLER_NAME, new HttpResponseEncoderAggregate());
-    pipeline.addLast(new HttpRequestDecoder());
-    pipeline.addLast(new HttpObjectAggregator(MAX_POST));
-    pipeline.addLast(blockingExecutorGroup, new AccessoryHandler(homekit));
-    allChannels.add(ch);
+    FlushConsolidationHandler flushConsolidationHandler = settings.newFlushConsolidationHandler();
+    if (flushConsolidationHandler != null) {
+      pipeline.addLast(FLUSH_HANDLER_NAME, flushConsolidationHandler);
+    }
+    IdleStateHandler idleStateHandler = settings.newIdleStateHandler(false);
+    if (idleStateHandler != null) {
+      pipeline.addLast(IDLE_HANDLER_NAME, idleStateHandler);
+    }
+    if (LoggingHandler.isEnabled()) {
+      pipeline.addLast(new LoggingHandler());
+    }
+    pipeline.addLast(TAP_HANDLER_NAME, new WireTapHandler(wireTap));
+    pipeline.addLast(CHUNKED_WRITER_NAME, new ChunkedWriteHandler());
+    pipeline.addLast(HTTP_HANDLER_NAME, new HomekitResponseEncoder());
+    pipeline.addLast(new HomekitRequestDecoder());
+    pipeline.addLast(
+        new AccessoryHandler(
+            homekit,
+            requestExecutor,
+            handshakeExecutor,
+            settings,
+            metrics,
+            rateLimiter,
+            admission));
+    channels.add(ch);
   }
 }
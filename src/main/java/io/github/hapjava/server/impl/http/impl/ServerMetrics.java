@@ -0,0 +1,194 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Read-only gauges and counters of a running {@link HomekitHttpServer}. The handler values only
+ * count the requests of this server, even when its {@link HomekitRuntime} is shared with other
+ * servers. All values are zero until the server has been started.
+ */
+public class ServerMetrics {
+
+  private final AtomicInteger queuedRequests = new AtomicInteger();
+  private final AtomicInteger activeRequests = new AtomicInteger();
+  private final LongAdder rejectedRequests = new LongAdder();
+  private final AtomicInteger queuedHandshakes = new AtomicInteger();
+  private final LongAdder rejectedHandshakes = new LongAdder();
+  private final LatencyHistogram handshakeLatency = new LatencyHistogram();
+  private final LongAdder admittedRightAway = new LongAdder();
+  private final LongAdder admittedAfterWait = new LongAdder();
+  private final LongAdder admissionRejected = new LongAdder();
+  private final LatencyHistogram admissionWait = new LatencyHistogram();
+  private final LongAdder reconnectWaves = new LongAdder();
+  private volatile long lastReconnectWaveNanos = 0;
+  private final LongAdder reapedConnections = new LongAdder();
+  private final ConcurrentMap<SocketAddress, IntSupplier> connectionQueues =
+      new ConcurrentHashMap<>();
+
+  /** Wraps the executor shared with other servers so that it counts the requests of this one. */
+  Executor instrument(Executor requestExecutor) {
+    return task -> {
+      queuedRequests.incrementAndGet();
+      try {
+        requestExecutor.execute(
+            () -> {
+              queuedRequests.decrementAndGet();
+              activeRequests.incrementAndGet();
+              try {
+                task.run();
+              } finally {
+                activeRequests.decrementAndGet();
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        queuedRequests.decrementAndGet();
+        rejectedRequests.increment();
+        throw e;
+      }
+    };
+  }
+
+  /**
+   * Wraps the handshake executor shared with other servers so that it counts the handshake steps of
+   * this one, and how long they took from being queued until they were handled.
+   */
+  Executor instrumentHandshakes(Executor handshakeExecutor) {
+    return task -> {
+      long queued = System.nanoTime();
+      queuedHandshakes.incrementAndGet();
+      try {
+        handshakeExecutor.execute(
+            () -> {
+              queuedHandshakes.decrementAndGet();
+              try {
+                task.run();
+              } finally {
+                handshakeLatency.record(System.nanoTime() - queued);
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        queuedHandshakes.decrementAndGet();
+        rejectedHandshakes.increment();
+        throw e;
+      }
+    };
+  }
+
+  /** @return number of requests waiting for a handler thread */
+  public int getHandlerQueueDepth() {
+    return queuedRequests.get();
+  }
+
+  /** @return number of handler threads currently processing a request */
+  public int getHandlerActiveThreads() {
+    return activeRequests.get();
+  }
+
+  /** @return number of requests answered with 503 because the handler queue was full */
+  public long getHandlerRejectedCount() {
+    return rejectedRequests.sum();
+  }
+
+  /** @return number of pair-setup and pair-verify steps waiting for a handshake thread */
+  public int getHandshakeQueueDepth() {
+    return queuedHandshakes.get();
+  }
+
+  /** @return number of handshake steps answered with 503 because the handshake queue was full */
+  public long getHandshakeRejectedCount() {
+    return rejectedHandshakes.sum();
+  }
+
+  /** @return time from queueing a handshake step until it was handled, waiting included */
+  public LatencyHistogram getHandshakeLatency() {
+    return handshakeLatency;
+  }
+
+  void admittedRightAway() {
+    admittedRightAway.increment();
+  }
+
+  void admittedAfterWait(long nanos) {
+    admittedAfterWait.increment();
+    admissionWait.record(nanos);
+  }
+
+  void admissionRejected() {
+    admissionRejected.increment();
+  }
+
+  void reconnectWaveSettled(long nanos) {
+    lastReconnectWaveNanos = nanos;
+    reconnectWaves.increment();
+  }
+
+  /** @return number of pair-verify and accessory listing requests admitted without waiting */
+  public long getAdmittedRightAwayCount() {
+    return admittedRightAway.sum();
+  }
+
+  /** @return number of pair-verify and accessory listing requests admitted after waiting */
+  public long getAdmittedAfterWaitCount() {
+    return admittedAfterWait.sum();
+  }
+
+  /** @return number of pair-verify and accessory listing requests answered with 503 */
+  public long getAdmissionRejectedCount() {
+    return admissionRejected.sum();
+  }
+
+  /** @return how long the admitted requests that had to wait waited */
+  public LatencyHistogram getAdmissionWait() {
+    return admissionWait;
+  }
+
+  /** @return number of reconnect waves that have settled */
+  public long getReconnectWaveCount() {
+    return reconnectWaves.sum();
+  }
+
+  /**
+   * @return duration of the last settled reconnect wave in milliseconds, from the first request
+   *     that could not be admitted right away to the last one
+   */
+  public long getLastReconnectWaveMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(lastReconnectWaveNanos);
+  }
+
+  void connectionOpened(SocketAddress controller, IntSupplier queueDepth) {
+    connectionQueues.put(controller, queueDepth);
+  }
+
+  void connectionClosed(SocketAddress controller) {
+    connectionQueues.remove(controller);
+  }
+
+  /**
+   * @return number of requests waiting to be started, per open connection, keyed by the address of
+   *     the controller
+   */
+  public Map<SocketAddress, Integer> getConnectionQueueDepths() {
+    Map<SocketAddress, Integer> depths = new HashMap<>();
+    connectionQueues.forEach((controller, depth) -> depths.put(controller, depth.getAsInt()));
+    return depths;
+  }
+
+  void connectionReaped() {
+    reapedConnections.increment();
+  }
+
+  /** @return number of connections closed because they were idle for too long */
+  public long getReapedConnectionCount() {
+    return reapedConnections.sum();
+  }
+}
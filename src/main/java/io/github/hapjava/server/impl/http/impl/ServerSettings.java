@@ -0,0 +1,294 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunables of a {@link HomekitHttpServer}. Unless noted otherwise, changes take effect for
+ * connections accepted afterwards, so they are normally made before starting the server.
+ */
+public class ServerSettings {
+
+  public static final int DEFAULT_WRITE_BUFFER_LOW_WATER_MARK = 8 * 1024;
+  public static final int DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK = 32 * 1024;
+  /** Long enough for a user to enter the setup code while pairing. */
+  public static final long DEFAULT_UNVERIFIED_IDLE_TIMEOUT_SECONDS = 120;
+  public static final long DEFAULT_VERIFIED_IDLE_TIMEOUT_SECONDS = 60 * 60;
+  public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 5000;
+  public static final int DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES =
+      FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES;
+  public static final int DEFAULT_MAX_CONCURRENT_REQUESTS_PER_CONNECTION = 8;
+  public static final int DEFAULT_MAX_QUEUED_REQUESTS_PER_CONNECTION = 64;
+
+  private volatile int writeBufferLowWaterMark = DEFAULT_WRITE_BUFFER_LOW_WATER_MARK;
+  private volatile int writeBufferHighWaterMark = DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK;
+  private volatile long drainTimeoutMillis = DEFAULT_DRAIN_TIMEOUT_MILLIS;
+  private volatile int explicitFlushAfterFlushes = DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES;
+  private volatile int acceptorsPerAddress = 1;
+  private volatile int maxConcurrentRequestsPerConnection =
+      DEFAULT_MAX_CONCURRENT_REQUESTS_PER_CONNECTION;
+  private volatile int maxQueuedRequestsPerConnection = DEFAULT_MAX_QUEUED_REQUESTS_PER_CONNECTION;
+  private volatile double controllerRequestsPerSecond = 0;
+  private volatile int controllerRequestBurst = 0;
+  private volatile double reconnectRequestsPerSecond = 0;
+  private volatile int reconnectRequestBurst = 0;
+  private volatile long reconnectMaxWaitMillis = 0;
+  private long[] unverifiedIdleTimeouts = {
+    0, 0, TimeUnit.SECONDS.toMillis(DEFAULT_UNVERIFIED_IDLE_TIMEOUT_SECONDS)
+  };
+  private long[] verifiedIdleTimeouts = {
+    0, 0, TimeUnit.SECONDS.toMillis(DEFAULT_VERIFIED_IDLE_TIMEOUT_SECONDS)
+  };
+
+  /** @return number of queued bytes below which a slow connection receives events again */
+  public int getWriteBufferLowWaterMark() {
+    return writeBufferLowWaterMark;
+  }
+
+  /** @return number of queued bytes above which events for a connection are held back */
+  public int getWriteBufferHighWaterMark() {
+    return writeBufferHighWaterMark;
+  }
+
+  /**
+   * Sets the write-buffer water marks of each connection. Once more than {@code high} bytes are
+   * waiting to be written to a controller, further events are held and coalesced per characteristic
+   * until fewer than {@code low} bytes are waiting.
+   *
+   * @param low low water mark in bytes
+   * @param high high water mark in bytes, not less than {@code low}
+   */
+  public synchronized void setWriteBufferWaterMark(int low, int high) {
+    if (low < 0 || high < low) {
+      throw new IllegalArgumentException(
+          "Invalid write buffer water marks, low: " + low + ", high: " + high);
+    }
+    this.writeBufferLowWaterMark = low;
+    this.writeBufferHighWaterMark = high;
+  }
+
+  /**
+   * Sets when a connection that has not completed pair-verify is closed. Such connections only
+   * carry pairing requests, so they are given up on quickly. A value of 0 disables that check.
+   *
+   * @param readerIdle time without receiving anything
+   * @param writerIdle time without sending anything
+   * @param allIdle time without receiving or sending anything
+   * @param unit unit of the three timeouts
+   */
+  public synchronized void setUnverifiedIdleTimeouts(
+      long readerIdle, long writerIdle, long allIdle, TimeUnit unit) {
+    unverifiedIdleTimeouts = toMillis(readerIdle, writerIdle, allIdle, unit);
+  }
+
+  /**
+   * Sets when a verified session is considered dead and closed, which releases its subscriptions
+   * and session keys. Controllers may stay silent for a long time while they wait for events, so
+   * these are normally much longer than the unverified timeouts. A value of 0 disables that check.
+   *
+   * @param readerIdle time without receiving anything
+   * @param writerIdle time without sending anything
+   * @param allIdle time without receiving or sending anything
+   * @param unit unit of the three timeouts
+   */
+  public synchronized void setVerifiedIdleTimeouts(
+      long readerIdle, long writerIdle, long allIdle, TimeUnit unit) {
+    verifiedIdleTimeouts = toMillis(readerIdle, writerIdle, allIdle, unit);
+  }
+
+  private static long[] toMillis(long readerIdle, long writerIdle, long allIdle, TimeUnit unit) {
+    if (readerIdle < 0 || writerIdle < 0 || allIdle < 0) {
+      throw new IllegalArgumentException("Idle timeouts must not be negative");
+    }
+    return new long[] {
+      unit.toMillis(readerIdle), unit.toMillis(writerIdle), unit.toMillis(allIdle)
+    };
+  }
+
+  /** @return a handler for the idle timeouts of the given phase, or null if they are disabled */
+  synchronized IdleStateHandler newIdleStateHandler(boolean verified) {
+    long[] timeouts = verified ? verifiedIdleTimeouts : unverifiedIdleTimeouts;
+    if (timeouts[0] == 0 && timeouts[1] == 0 && timeouts[2] == 0) {
+      return null;
+    }
+    return new IdleStateHandler(timeouts[0], timeouts[1], timeouts[2], TimeUnit.MILLISECONDS);
+  }
+
+  /** @return how long a reset or stop waits for connections to drain, in milliseconds */
+  public long getDrainTimeoutMillis() {
+    return drainTimeoutMillis;
+  }
+
+  /**
+   * Sets how long connections are given to finish their in-flight requests and write out queued
+   * responses and events when they are reset, or the server is stopped, before they are closed.
+   *
+   * @param timeout drain timeout, 0 to close connections right away
+   * @param unit unit of the timeout
+   */
+  public void setDrainTimeout(long timeout, TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Drain timeout must not be negative");
+    }
+    this.drainTimeoutMillis = unit.toMillis(timeout);
+  }
+
+  /** @return number of flushes merged before one reaches the socket, 0 if merging is disabled */
+  public int getExplicitFlushAfterFlushes() {
+    return explicitFlushAfterFlushes;
+  }
+
+  /**
+   * Sets how flushes are merged. Responses and events written within one event-loop tick, such as
+   * the events of a scene changing many accessories, leave in a single write to the socket. At most
+   * {@code explicitFlushAfterFlushes} flushes are merged before one is passed on right away.
+   *
+   * @param explicitFlushAfterFlushes maximum number of merged flushes, 0 to flush every write
+   */
+  public void setExplicitFlushAfterFlushes(int explicitFlushAfterFlushes) {
+    if (explicitFlushAfterFlushes < 0) {
+      throw new IllegalArgumentException("Number of flushes must not be negative");
+    }
+    this.explicitFlushAfterFlushes = explicitFlushAfterFlushes;
+  }
+
+  /** @return number of listening sockets bound to each local address */
+  public int getAcceptorsPerAddress() {
+    return acceptorsPerAddress;
+  }
+
+  /**
+   * Sets how many listening sockets are bound to each local address with SO_REUSEPORT, so that
+   * accepting connections is spread over that many boss threads. Only supported by the epoll
+   * transport; other transports always use one. Read when the server is started.
+   *
+   * @param acceptorsPerAddress number of listening sockets per address, at least 1
+   */
+  public void setAcceptorsPerAddress(int acceptorsPerAddress) {
+    if (acceptorsPerAddress < 1) {
+      throw new IllegalArgumentException("At least one acceptor is required");
+    }
+    this.acceptorsPerAddress = acceptorsPerAddress;
+  }
+
+  /** @return number of requests of one connection that may be handled but not yet answered */
+  public int getMaxConcurrentRequestsPerConnection() {
+    return maxConcurrentRequestsPerConnection;
+  }
+
+  /**
+   * Sets how many requests of one connection may be started before the earliest of them has been
+   * answered. Further requests wait in the queue of their connection, so a controller pipelining
+   * many slow reads cannot occupy every handler thread. Takes effect right away.
+   *
+   * @param maxConcurrentRequestsPerConnection number of requests, at least 1
+   */
+  public void setMaxConcurrentRequestsPerConnection(int maxConcurrentRequestsPerConnection) {
+    if (maxConcurrentRequestsPerConnection < 1) {
+      throw new IllegalArgumentException("At least one concurrent request is required");
+    }
+    this.maxConcurrentRequestsPerConnection = maxConcurrentRequestsPerConnection;
+  }
+
+  /** @return number of waiting requests at which a connection is no longer read from */
+  public int getMaxQueuedRequestsPerConnection() {
+    return maxQueuedRequestsPerConnection;
+  }
+
+  /**
+   * Sets how many requests may wait in the queue of one connection. Once that many are waiting, the
+   * connection is not read from until its queue has shrunk, which pushes back on the controller
+   * through TCP instead of buffering its requests. Takes effect right away.
+   *
+   * @param maxQueuedRequestsPerConnection number of requests, at least 1
+   */
+  public void setMaxQueuedRequestsPerConnection(int maxQueuedRequestsPerConnection) {
+    if (maxQueuedRequestsPerConnection < 1) {
+      throw new IllegalArgumentException("At least one queued request is required");
+    }
+    this.maxQueuedRequestsPerConnection = maxQueuedRequestsPerConnection;
+  }
+
+  /** @return requests per second each controller may start, 0 if not limited */
+  public double getControllerRequestsPerSecond() {
+    return controllerRequestsPerSecond;
+  }
+
+  /** @return number of requests a controller may start at once after having been quiet */
+  public int getControllerRequestBurst() {
+    return controllerRequestBurst;
+  }
+
+  /**
+   * Limits how many requests each controller may start, counted over all of its connections to this
+   * server and identified by its address. Requests above the limit wait in the queue of their
+   * connection, so a dashboard polling every few milliseconds is slowed down without affecting
+   * other controllers. Not limited by default. Takes effect right away.
+   *
+   * @param requestsPerSecond sustained rate, 0 to remove the limit
+   * @param burst number of requests that may be started at once, at least 1 when limited
+   */
+  public synchronized void setControllerRequestRate(double requestsPerSecond, int burst) {
+    if (requestsPerSecond < 0 || (requestsPerSecond > 0 && burst < 1)) {
+      throw new IllegalArgumentException(
+          "Invalid controller request rate: " + requestsPerSecond + "/s, burst: " + burst);
+    }
+    this.controllerRequestsPerSecond = requestsPerSecond;
+    this.controllerRequestBurst = burst;
+  }
+
+  /** @return pair-verify and accessory listing requests per second admitted, 0 if not limited */
+  public double getReconnectRequestsPerSecond() {
+    return reconnectRequestsPerSecond;
+  }
+
+  /** @return number of pair-verify and accessory listing requests admitted at once */
+  public int getReconnectRequestBurst() {
+    return reconnectRequestBurst;
+  }
+
+  /** @return how long such a request may wait to be admitted, in milliseconds */
+  public long getReconnectMaxWaitMillis() {
+    return reconnectMaxWaitMillis;
+  }
+
+  /**
+   * Limits how many pair-verify and accessory listing requests this server starts, over all
+   * controllers, so that a home reconnecting at once after a reset is admitted at a steady pace.
+   * Requests above the limit wait for their turn in the queue of their connection if it comes
+   * within {@code maxWait}, and are answered with 503 otherwise. Not limited by default. Takes
+   * effect right away.
+   *
+   * @param requestsPerSecond sustained rate, 0 to remove the limit
+   * @param burst number of requests that may be started at once, at least 1 when limited
+   * @param maxWait longest wait for admission, 0 to turn away every request above the limit
+   * @param unit unit of the maximum wait
+   */
+  public synchronized void setReconnectAdmission(
+      double requestsPerSecond, int burst, long maxWait, TimeUnit unit) {
+    if (requestsPerSecond < 0 || (requestsPerSecond > 0 && burst < 1) || maxWait < 0) {
+      throw new IllegalArgumentException(
+          "Invalid reconnect admission: "
+              + requestsPerSecond
+              + "/s, burst: "
+              + burst
+              + ", max wait: "
+              + maxWait);
+    }
+    this.reconnectRequestsPerSecond = requestsPerSecond;
+    this.reconnectRequestBurst = burst;
+    this.reconnectMaxWaitMillis = unit.toMillis(maxWait);
+  }
+
+  /** @return a handler merging flushes, or null if merging is disabled */
+  FlushConsolidationHandler newFlushConsolidationHandler() {
+    int flushes = explicitFlushAfterFlushes;
+    return flushes == 0 ? null : new FlushConsolidationHandler(flushes, true);
+  }
+
+  synchronized WriteBufferWaterMark writeBufferWaterMark() {
+    return new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark);
+  }
+}
@@ -0,0 +1,85 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.http.StreamingHttpResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import java.io.IOException;
+
+/**
+ * The body of a {@link StreamingHttpResponse}, which the {@link ChunkedWriteHandler} reads one
+ * chunk at a time whenever the channel is writable. Chunks are {@link #CHUNK_SIZE} bytes, a whole
+ * number of encrypted frames, except for the last one.
+ */
+class StreamingBodyInput implements ChunkedInput<ByteBuf> {
+
+  static final int CHUNK_SIZE = 8 * 1024;
+
+  private final StreamingHttpResponse response;
+  private ByteBuf pending;
+  private boolean produced = false;
+  private long progress = 0;
+
+  StreamingBodyInput(StreamingHttpResponse response) {
+    this.response = response;
+  }
+
+  @Override
+  public boolean isEndOfInput() {
+    return produced && (pending == null || !pending.isReadable());
+  }
+
+  @Override
+  public void close() {
+    if (pending != null) {
+      pending.release();
+      pending = null;
+    }
+  }
+
+  @Deprecated
+  @Override
+  public ByteBuf readChunk(ChannelHandlerContext ctx) throws IOException {
+    return readChunk(ctx.alloc());
+  }
+
+  @Override
+  public ByteBuf readChunk(ByteBufAllocator allocator) throws IOException {
+    if (pending == null) {
+      pending = allocator.heapBuffer(2 * CHUNK_SIZE);
+    }
+    ByteBufOutputStream out = new ByteBufOutputStream(pending);
+    while (!produced && pending.readableBytes() < CHUNK_SIZE) {
+      produced = !response.writeNext(out);
+    }
+    int length = Math.min(pending.readableBytes(), CHUNK_SIZE);
+    ByteBuf chunk = null;
+    if (length > 0) {
+      chunk = allocator.heapBuffer(length, length);
+      chunk.writeBytes(pending, length);
+      pending.discardReadBytes();
+    }
+    progress += length;
+    long expected = response.getContentLength();
+    if (progress > expected || (isEndOfInput() && progress != expected)) {
+      if (chunk != null) {
+        chunk.release();
+      }
+      throw new IOException("Body does not match its length of " + expected + " bytes");
+    }
+    return chunk;
+  }
+
+  @Override
+  public long length() {
+    return response.getContentLength();
+  }
+
+  @Override
+  public long progress() {
+    return progress;
+  }
+}
@@ -0,0 +1,74 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens that are added continuously at a rate, up to a burst. The rate and burst are passed with
+ * every call, so that a change of the {@link ServerSettings} takes effect right away. A new bucket
+ * starts full.
+ */
+class TokenBucket {
+
+  /** Returned by {@link #reserve(double, int, long, long)} when no token was taken. */
+  static final long NOT_TAKEN = -1;
+
+  private boolean filled = false;
+  private double tokens;
+  private long refilled;
+
+  /** Adds the tokens due since the last refill. */
+  synchronized void refill(double requestsPerSecond, int burst, long now) {
+    if (!filled) {
+      filled = true;
+      tokens = burst;
+    } else {
+      double elapsed = (now - refilled) / (double) TimeUnit.SECONDS.toNanos(1);
+      tokens = Math.min(burst, tokens + elapsed * requestsPerSecond);
+    }
+    refilled = now;
+  }
+
+  /** @return tokens in the bucket as of the last refill, negative while tokens are reserved */
+  synchronized double getTokens() {
+    return tokens;
+  }
+
+  /**
+   * Takes a token if one is available.
+   *
+   * @return 0 if a token was taken, otherwise the nanoseconds until one is available
+   */
+  synchronized long tryAcquire(double requestsPerSecond, int burst, long now) {
+    refill(requestsPerSecond, burst, now);
+    if (tokens >= 1) {
+      tokens--;
+      return 0;
+    }
+    return nanosFor(1 - tokens, requestsPerSecond);
+  }
+
+  /**
+   * Takes the next token, even one that is only due later, unless it is due after the maximum wait.
+   *
+   * @return 0 if a token was available, the nanoseconds until the reserved token is due, or {@link
+   *     #NOT_TAKEN}
+   */
+  synchronized long reserve(double requestsPerSecond, int burst, long maxWaitNanos, long now) {
+    refill(requestsPerSecond, burst, now);
+    if (tokens >= 1) {
+      tokens--;
+      return 0;
+    }
+    long wait = nanosFor(1 - tokens, requestsPerSecond);
+    if (wait > maxWaitNanos) {
+      return NOT_TAKEN;
+    }
+    tokens--;
+    return wait;
+  }
+
+  /** @return nanoseconds it takes to add the given number of tokens */
+  static long nanosFor(double tokens, double requestsPerSecond) {
+    return (long) Math.ceil(tokens / requestsPerSecond * TimeUnit.SECONDS.toNanos(1));
+  }
+}
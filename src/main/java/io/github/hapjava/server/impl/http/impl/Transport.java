@@ -0,0 +1,120 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Netty transport used to accept and serve HomeKit connections. Controllers keep their event
+ * connections open for as long as they are at home, so a bridge with many accessories and many
+ * controllers benefits from the native edge-triggered epoll transport on Linux.
+ */
+public enum Transport {
+
+  /** Native epoll when it is available on this platform, NIO everywhere else. */
+  AUTO,
+
+  /** Native Linux epoll. Fails at startup if the native library cannot be loaded. */
+  EPOLL,
+
+  /** The portable JDK NIO selector transport. */
+  NIO;
+
+  private static final Logger logger = LoggerFactory.getLogger(Transport.class);
+
+  /**
+   * Resolves {@link #AUTO} to the best transport available on this platform.
+   *
+   * @return the concrete transport, never {@link #AUTO}.
+   * @throws IllegalStateException if {@link #EPOLL} was requested but is not available.
+   */
+  public Transport resolve() {
+    switch (this) {
+      case AUTO:
+        if (isEpollAvailable()) {
+          return EPOLL;
+        }
+        logger.debug("Native epoll transport is not available, falling back to NIO");
+        return NIO;
+
+      case EPOLL:
+        if (!isEpollAvailable()) {
+          throw new IllegalStateException(
+              "Native epoll transport is not available", epollUnavailabilityCause());
+        }
+        return EPOLL;
+
+      default:
+        return NIO;
+    }
+  }
+
+  /**
+   * Creates an event loop group for this transport.
+   *
+   * @param nThreads number of event loops, or 0 to use Netty's default of twice the number of
+   *     available processors.
+   * @param threadFactory factory for the event loop threads.
+   * @return a new event loop group.
+   */
+  EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+    switch (resolve()) {
+      case EPOLL:
+        return new EpollEventLoopGroup(nThreads, threadFactory);
+
+      default:
+        return new NioEventLoopGroup(nThreads, threadFactory);
+    }
+  }
+
+  /** Server channel class matching {@link #newEventLoopGroup(int, ThreadFactory)}. */
+  Class<? extends ServerChannel> serverChannelClass() {
+    switch (resolve()) {
+      case EPOLL:
+        return EpollServerSocketChannel.class;
+
+      default:
+        return NioServerSocketChannel.class;
+    }
+  }
+
+  /**
+   * Lets several server channels of the bootstrap bind the same address, so that the kernel spreads
+   * incoming connections across their acceptors.
+   *
+   * @param bootstrap the bootstrap to configure.
+   * @throws IllegalStateException if this transport does not resolve to {@link #EPOLL}.
+   */
+  void enableReusePort(ServerBootstrap bootstrap) {
+    if (resolve() != EPOLL) {
+      throw new IllegalStateException("SO_REUSEPORT requires the epoll transport");
+    }
+    bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+  }
+
+  private static boolean isEpollAvailable() {
+    try {
+      return Epoll.isAvailable();
+    } catch (LinkageError e) {
+      // netty-transport-native-epoll is an optional dependency
+      return false;
+    }
+  }
+
+  private static Throwable epollUnavailabilityCause() {
+    try {
+      return Epoll.unavailabilityCause();
+    } catch (LinkageError e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads are not available before Java 21. The multi-release jar replaces this class with
+ * the one in {@code src/main/java21} when running on Java 21 or later.
+ */
+final class VirtualThreads {
+
+  private VirtualThreads() {}
+
+  static boolean isAvailable() {
+    return false;
+  }
+
+  static ThreadFactory newThreadFactory(String name) {
+    throw new IllegalStateException("Virtual threads require Java 21 or later");
+  }
+}
@@ -0,0 +1,186 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Records the plaintext HAP messages exchanged with one controller address, as received after
+ * decryption and as sent before encryption, into a fixed-size off-heap ring buffer. The oldest
+ * messages are overwritten once the buffer is full, and messages longer than {@link
+ * #MAX_RECORD_LENGTH} are truncated. Connections from other addresses only pay for comparing their
+ * address while the tap is stopped or targets someone else.
+ *
+ * <p>The recorded messages contain the decrypted traffic of the controller, so the tap should only
+ * be started while diagnosing a problem.
+ */
+public class WireTap {
+
+  public static final int DEFAULT_CAPACITY = 256 * 1024;
+  public static final int MAX_RECORD_LENGTH = 4096;
+
+  // timestamp, direction, remote port, original length, recorded length
+  private static final int HEADER_LENGTH = 8 + 1 + 4 + 4 + 4;
+  private static final byte READ = 0;
+  private static final byte WRITE = 1;
+
+  private volatile InetAddress controller;
+  private ByteBuf ring;
+  private final ByteBuf header = Unpooled.buffer(HEADER_LENGTH, HEADER_LENGTH);
+  private int head;
+  private int size;
+  private int records;
+  private int sampleRate;
+  private long seen;
+
+  /**
+   * Starts recording every message exchanged with {@code controller}, replacing what has been
+   * recorded so far.
+   *
+   * @param controller address of the controller to record
+   */
+  public void start(InetAddress controller) {
+    start(controller, 1, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Starts recording the messages exchanged with {@code controller}, replacing what has been
+   * recorded so far.
+   *
+   * @param controller address of the controller to record
+   * @param sampleRate record one in this many messages
+   * @param capacity size of the off-heap ring buffer in bytes
+   */
+  public synchronized void start(InetAddress controller, int sampleRate, int capacity) {
+    if (sampleRate < 1 || capacity < HEADER_LENGTH + 1) {
+      throw new IllegalArgumentException(
+          "Invalid sample rate " + sampleRate + " or capacity " + capacity);
+    }
+    release();
+    this.ring = Unpooled.directBuffer(capacity, capacity);
+    this.sampleRate = sampleRate;
+    this.controller = controller;
+  }
+
+  /** Stops recording and frees the ring buffer, discarding the recorded messages. */
+  public synchronized void stop() {
+    controller = null;
+    release();
+  }
+
+  private void release() {
+    if (ring != null) {
+      ring.release();
+      ring = null;
+    }
+    head = 0;
+    size = 0;
+    records = 0;
+    seen = 0;
+  }
+
+  /** @return whether messages of the connection from {@code remote} are currently recorded */
+  boolean isTapped(InetAddress remote) {
+    InetAddress tapped = controller;
+    return tapped != null && tapped.equals(remote);
+  }
+
+  void read(InetSocketAddress remote, ByteBuf message) {
+    record(READ, remote, message);
+  }
+
+  void write(InetSocketAddress remote, ByteBuf message) {
+    record(WRITE, remote, message);
+  }
+
+  private synchronized void record(byte direction, InetSocketAddress remote, ByteBuf message) {
+    if (ring == null || !remote.getAddress().equals(controller) || seen++ % sampleRate != 0) {
+      return;
+    }
+    int capacity = ring.capacity();
+    int length = message.readableBytes();
+    int recorded = Math.min(length, Math.min(MAX_RECORD_LENGTH, capacity - HEADER_LENGTH));
+    while (capacity - size < HEADER_LENGTH + recorded) {
+      evictOldest();
+    }
+    header
+        .clear()
+        .writeLong(System.currentTimeMillis())
+        .writeByte(direction)
+        .writeInt(remote.getPort())
+        .writeInt(length)
+        .writeInt(recorded);
+    int tail = copyIn(header, 0, HEADER_LENGTH, (head + size) % capacity);
+    copyIn(message, message.readerIndex(), recorded, tail);
+    size += HEADER_LENGTH + recorded;
+    records++;
+  }
+
+  private void evictOldest() {
+    copyOut(head, header.clear(), HEADER_LENGTH);
+    int length = HEADER_LENGTH + header.getInt(HEADER_LENGTH - 4);
+    head = (head + length) % ring.capacity();
+    size -= length;
+    records--;
+  }
+
+  /** Copies into the ring at {@code index}, wrapping around its end, and returns the next index. */
+  private int copyIn(ByteBuf src, int srcIndex, int length, int index) {
+    int first = Math.min(length, ring.capacity() - index);
+    ring.setBytes(index, src, srcIndex, first);
+    ring.setBytes(0, src, srcIndex + first, length - first);
+    return (index + length) % ring.capacity();
+  }
+
+  /** Appends {@code length} bytes of the ring from {@code index} to {@code dst}. */
+  private int copyOut(int index, ByteBuf dst, int length) {
+    int first = Math.min(length, ring.capacity() - index);
+    dst.writeBytes(ring, index, first);
+    dst.writeBytes(ring, 0, length - first);
+    return (index + length) % ring.capacity();
+  }
+
+  /**
+   * Writes the recorded messages, oldest first, as a timestamped hex dump.
+   *
+   * @param out stream to write the dump to
+   * @throws IOException if writing to {@code out} fails
+   */
+  public void dump(OutputStream out) throws IOException {
+    StringBuilder dump = new StringBuilder();
+    synchronized (this) {
+      if (ring == null) {
+        return;
+      }
+      SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+      ByteBuf message = Unpooled.buffer(MAX_RECORD_LENGTH);
+      int index = head;
+      for (int i = 0; i < records; i++) {
+        index = copyOut(index, header.clear(), HEADER_LENGTH);
+        int recorded = header.getInt(HEADER_LENGTH - 4);
+        index = copyOut(index, message.clear(), recorded);
+        dump.append(format.format(new Date(header.getLong(0))))
+            .append(header.getByte(8) == READ ? " READ " : " WRITE ")
+            .append(controller == null ? "" : controller.getHostAddress())
+            .append(':')
+            .append(header.getInt(9))
+            .append(' ')
+            .append(header.getInt(13))
+            .append(" bytes")
+            .append(recorded < header.getInt(13) ? " (truncated)" : "")
+            .append(System.lineSeparator());
+        ByteBufUtil.appendPrettyHexDump(dump, message);
+        dump.append(System.lineSeparator());
+      }
+    }
+    out.write(dump.toString().getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
+}
@@ -0,0 +1,48 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * Hands the plaintext passing between {@link BinaryHandler} and the HTTP codec to the {@link
+ * WireTap}. Sits above the {@link BinaryHandler} once it has been added, so it sees decrypted
+ * requests and responses before they are encrypted.
+ */
+class WireTapHandler extends ChannelDuplexHandler {
+
+  private final WireTap wireTap;
+  private InetSocketAddress remote;
+
+  WireTapHandler(WireTap wireTap) {
+    this.wireTap = wireTap;
+  }
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) {
+    SocketAddress address = ctx.channel().remoteAddress();
+    if (address instanceof InetSocketAddress) {
+      remote = (InetSocketAddress) address;
+    }
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (remote != null && msg instanceof ByteBuf && wireTap.isTapped(remote.getAddress())) {
+      wireTap.read(remote, (ByteBuf) msg);
+    }
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    if (remote != null && msg instanceof ByteBuf && wireTap.isTapped(remote.getAddress())) {
+      wireTap.write(remote, (ByteBuf) msg);
+    }
+    ctx.write(msg, promise);
+  }
+}
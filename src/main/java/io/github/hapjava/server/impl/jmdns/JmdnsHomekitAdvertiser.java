@@ -3,7 +3,11 @@ package io.github.hapjava.server.impl.jmdns;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.jmdns.JmDNS;
 import javax.jmdns.ServiceInfo;
@@ -14,7 +18,8 @@ public class JmdnsHomekitAdvertiser {
 
   private static final String SERVICE_TYPE = "_hap._tcp.local.";
 
-  private final JmDNS jmdns;
+  private final List<JmDNS> jmdns = new ArrayList<>();
+  private final List<ServiceRegistration> registrations = new ArrayList<>();
   private boolean discoverable = true;
   private static final Logger logger = LoggerFactory.getLogger(JmdnsHomekitAdvertiser.class);
   private boolean isAdvertising = false;
@@ -25,7 +30,27 @@ public class JmdnsHomekitAdvertiser {
   private int configurationIndex;
 
   public JmdnsHomekitAdvertiser(InetAddress localAddress) throws UnknownHostException, IOException {
-    jmdns = JmDNS.create(localAddress);
+    this(Collections.singletonList(localAddress));
+  }
+
+  /**
+   * Advertises on every given address, each through its own responder, so that the address records
+   * of every interface the server listens on are announced with the service.
+   */
+  public JmdnsHomekitAdvertiser(Collection<InetAddress> localAddresses)
+      throws UnknownHostException, IOException {
+    for (InetAddress localAddress : localAddresses) {
+      jmdns.add(JmDNS.create(localAddress));
+    }
+  }
+
+  /**
+   * Advertises through responders that may be shared with other advertisers, for example those of a
+   * {@link io.github.hapjava.server.impl.http.impl.HomekitRuntime}. Only the service registered by
+   * this advertiser is withdrawn when it stops.
+   */
+  public JmdnsHomekitAdvertiser(List<JmDNS> responders) {
+    jmdns.addAll(responders);
   }
 
   public synchronized void advertise(String label, String mac, int port, int configurationIndex)
@@ -47,13 +72,20 @@ public class JmdnsHomekitAdvertiser {
             new Thread(
                 () -> {
                   logger.trace("Stopping advertising in response to shutdown.");
-                  jmdns.unregisterAllServices();
+                  stop();
                 }));
     isAdvertising = true;
   }
 
   public synchronized void stop() {
-    jmdns.unregisterAllServices();
+    unregisterServices();
+  }
+
+  private void unregisterServices() {
+    for (ServiceRegistration registration : registrations) {
+      registration.responder.unregisterService(registration.info);
+    }
+    registrations.clear();
   }
 
   public synchronized void setDiscoverable(boolean discoverable) throws IOException {
@@ -61,7 +93,7 @@ public class JmdnsHomekitAdvertiser {
       this.discoverable = discoverable;
       if (isAdvertising) {
         logger.trace("Re-creating service due to change in discoverability to " + discoverable);
-        jmdns.unregisterAllServices();
+        unregisterServices();
         registerService();
       }
     }
@@ -72,7 +104,7 @@ public class JmdnsHomekitAdvertiser {
       this.configurationIndex = revision;
       if (isAdvertising) {
         logger.trace("Re-creating service due to change in configuration index to " + revision);
-        jmdns.unregisterAllServices();
+        unregisterServices();
         registerService();
       }
     }
@@ -88,6 +120,20 @@ public class JmdnsHomekitAdvertiser {
     props.put("s#", "1");
     props.put("ff", "0");
     props.put("ci", "1");
-    jmdns.registerService(ServiceInfo.create(SERVICE_TYPE, label, port, 1, 1, props));
+    for (JmDNS responder : jmdns) {
+      ServiceInfo info = ServiceInfo.create(SERVICE_TYPE, label, port, 1, 1, props);
+      responder.registerService(info);
+      registrations.add(new ServiceRegistration(responder, info));
+    }
+  }
+
+  private static class ServiceRegistration {
+    private final JmDNS responder;
+    private final ServiceInfo info;
+
+    private ServiceRegistration(JmDNS responder, ServiceInfo info) {
+      this.responder = responder;
+      this.info = info;
+    }
   }
 }
@@ -5,13 +5,11 @@ import io.github.hapjava.characteristics.Characteristic;
 import io.github.hapjava.server.impl.HomekitRegistry;
 import io.github.hapjava.server.impl.http.HttpResponse;
 import io.github.hapjava.services.Service;
-import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
@@ -26,10 +24,13 @@ public class AccessoryController {
     this.registry = registry;
   }
 
-  public HttpResponse listing() throws Exception {
-    JsonArrayBuilder accessories = Json.createArrayBuilder();
-
+  /**
+   * Builds the listing once every characteristic has supplied its value, without blocking the
+   * calling thread.
+   */
+  public CompletableFuture<HttpResponse> listing() throws Exception {
     Map<Integer, List<CompletableFuture<JsonObject>>> accessoryServiceFutures = new HashMap<>();
+    List<CompletableFuture<JsonObject>> allServiceFutures = new ArrayList<>();
     for (HomekitAccessory accessory : registry.getAccessories()) {
       int iid = 0;
       List<CompletableFuture<JsonObject>> serviceFutures = new ArrayList<>();
@@ -38,30 +39,26 @@ public class AccessoryController {
         iid += service.getCharacteristics().size() + 1;
       }
       accessoryServiceFutures.put(accessory.getId(), serviceFutures);
+      allServiceFutures.addAll(serviceFutures);
     }
 
-    Map<Integer, JsonArrayBuilder> serviceArrayBuilders = new HashMap<>();
-    for (Entry<Integer, List<CompletableFuture<JsonObject>>> entry :
-        accessoryServiceFutures.entrySet()) {
-      JsonArrayBuilder arr = Json.createArrayBuilder();
-      for (CompletableFuture<JsonObject> future : entry.getValue()) {
-        arr.add(future.join());
-      }
-      serviceArrayBuilders.put(entry.getKey(), arr);
-    }
+    return CompletableFuture.allOf(
+            allServiceFutures.toArray(new CompletableFuture<?>[allServiceFutures.size()]))
+        .thenApply(v -> toResponse(accessoryServiceFutures));
+  }
 
+  private HttpResponse toResponse(
+      Map<Integer, List<CompletableFuture<JsonObject>>> accessoryServiceFutures) {
+    List<AccessoryListingResponse.Accessory> accessories = new ArrayList<>();
     for (HomekitAccessory accessory : registry.getAccessories()) {
-      accessories.add(
-          Json.createObjectBuilder()
-              .add("aid", accessory.getId())
-              .add("services", serviceArrayBuilders.get(accessory.getId())));
+      List<JsonObject> services = new ArrayList<>();
+      for (CompletableFuture<JsonObject> future : accessoryServiceFutures.get(accessory.getId())) {
+        services.add(future.join());
+      }
+      accessories.add(new AccessoryListingResponse.Accessory(accessory.getId(), services));
     }
 
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-      Json.createWriter(baos)
-          .write(Json.createObjectBuilder().add("accessories", accessories).build());
-      return new HapJsonResponse(baos.toByteArray());
-    }
+    return new AccessoryListingResponse(accessories);
   }
 
   private CompletableFuture<JsonObject> toJson(Service service, int interfaceId) throws Exception {
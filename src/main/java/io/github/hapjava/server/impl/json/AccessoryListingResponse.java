@@ -0,0 +1,137 @@
+package io.github.hapjava.server.impl.json;
+
+import io.github.hapjava.server.impl.http.StreamingHttpResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+/**
+ * The response to {@code GET /accessories}, serialized one accessory at a time as it is sent. The
+ * JSON objects of all services are built before the response is created; what this bounds is the
+ * JSON text, of which no more than a single accessory is held while the body is streamed. The text
+ * is rendered twice, first only to count its length. {@link #getBody()} renders the whole text at
+ * once for callers that do not stream the response.
+ */
+class AccessoryListingResponse extends HapJsonResponse implements StreamingHttpResponse {
+
+  private static final JsonGeneratorFactory GENERATORS = Json.createGeneratorFactory(null);
+
+  private final List<Accessory> accessories;
+  private final int contentLength;
+  private final Target target = new Target();
+  private JsonGenerator generator;
+  private int next = 0;
+
+  AccessoryListingResponse(List<Accessory> accessories) {
+    super(new byte[0]);
+    this.accessories = accessories;
+    CountingOutputStream counter = new CountingOutputStream();
+    try {
+      while (writeNext(counter)) {}
+    } catch (IOException e) {
+      throw new IllegalStateException("Counting cannot fail", e);
+    }
+    this.contentLength = counter.count;
+    this.next = 0;
+  }
+
+  @Override
+  public int getContentLength() {
+    return contentLength;
+  }
+
+  /** Renders the whole body into a new buffer, apart from {@link #writeNext(OutputStream)}. */
+  @Override
+  public ByteBuffer getBody() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(contentLength);
+    JsonGenerator generator = GENERATORS.createGenerator(out, StandardCharsets.UTF_8);
+    generator.writeStartObject().writeStartArray("accessories");
+    for (Accessory accessory : accessories) {
+      accessory.write(generator);
+    }
+    generator.writeEnd().writeEnd();
+    generator.close();
+    return ByteBuffer.wrap(out.toByteArray());
+  }
+
+  @Override
+  public boolean writeNext(OutputStream out) throws IOException {
+    if (next > accessories.size()) {
+      return false;
+    }
+    // one generator writes the whole body, to whichever stream the current piece goes to
+    target.out = out;
+    if (next == 0) {
+      generator = GENERATORS.createGenerator(target, StandardCharsets.UTF_8);
+      generator.writeStartObject().writeStartArray("accessories");
+    }
+    if (next < accessories.size()) {
+      accessories.get(next).write(generator);
+      generator.flush();
+    } else {
+      generator.writeEnd().writeEnd();
+      generator.close();
+      generator = null;
+    }
+    next++;
+    return true;
+  }
+
+  /** An accessory and the JSON of its services. */
+  static class Accessory {
+
+    private final int aid;
+    private final List<JsonObject> services;
+
+    Accessory(int aid, List<JsonObject> services) {
+      this.aid = aid;
+      this.services = services;
+    }
+
+    void write(JsonGenerator generator) {
+      generator.writeStartObject().write("aid", aid).writeStartArray("services");
+      for (JsonObject service : services) {
+        generator.write(service);
+      }
+      generator.writeEnd().writeEnd();
+    }
+  }
+
+  /** Passes the output of the generator on to the stream of the current piece. */
+  private static class Target extends OutputStream {
+
+    private OutputStream out;
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+
+    private int count = 0;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+}
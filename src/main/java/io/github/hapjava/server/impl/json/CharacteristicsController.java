@@ -10,7 +10,10 @@ import io.github.hapjava.server.impl.http.HttpResponse;
 import io.github.hapjava.server.impl.responses.NotFoundResponse;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import javax.json.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,17 +30,21 @@ public class CharacteristicsController {
     this.subscriptions = subscriptions;
   }
 
-  public HttpResponse get(HttpRequest request) throws Exception {
+  /**
+   * Reads the requested values without blocking; the response completes once every accessory
+   * involved has supplied its value.
+   */
+  public CompletableFuture<HttpResponse> get(HttpRequest request) throws Exception {
     String uri = request.getUri();
     // Characteristics are requested with /characteristics?id=1.1,2.1,3.1
     String query = uri.substring("/characteristics?id=".length());
     String[] ids = query.split(",");
-    JsonArrayBuilder characteristics = Json.createArrayBuilder();
+    List<CompletableFuture<JsonObject>> values = new ArrayList<>(ids.length);
     for (String id : ids) {
       String[] parts = id.split("\\.");
       if (parts.length != 2) {
         logger.warn("Unexpected characteristics request: " + uri);
-        return new NotFoundResponse();
+        return CompletableFuture.completedFuture(NotFoundResponse.INSTANCE);
       }
       int aid = Integer.parseInt(parts[0]);
       int iid = Integer.parseInt(parts[1]);
@@ -46,9 +53,10 @@ public class CharacteristicsController {
       if (!characteristicMap.isEmpty()) {
         Characteristic targetCharacteristic = characteristicMap.get(iid);
         if (targetCharacteristic != null) {
-          targetCharacteristic.supplyValue(characteristic);
-
-          characteristics.add(characteristic.add("aid", aid).add("iid", iid).build());
+          values.add(
+              targetCharacteristic
+                  .supplyValueAsync(characteristic)
+                  .thenApply(v -> characteristic.add("aid", aid).add("iid", iid).build()));
         } else {
           logger.warn(
               "Accessory " + aid + " does not have characteristic " + iid + "Request: " + uri);
@@ -58,12 +66,19 @@ public class CharacteristicsController {
             "Accessory " + aid + " has no characteristics or does not exist. Request: " + uri);
       }
     }
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-      Json.createWriter(baos)
-          .write(
-              Json.createObjectBuilder().add("characteristics", characteristics.build()).build());
-      return new HapJsonResponse(baos.toByteArray());
-    }
+    return CompletableFuture.allOf(values.toArray(new CompletableFuture<?>[values.size()]))
+        .thenApply(
+            v -> {
+              JsonArrayBuilder characteristics = Json.createArrayBuilder();
+              values.forEach(value -> characteristics.add(value.join()));
+              ByteArrayOutputStream baos = new ByteArrayOutputStream();
+              Json.createWriter(baos)
+                  .write(
+                      Json.createObjectBuilder()
+                          .add("characteristics", characteristics.build())
+                          .build());
+              return new HapJsonResponse(baos.toByteArray());
+            });
   }
 
   public HttpResponse put(HttpRequest request, HomekitClientConnection connection)
@@ -97,6 +112,6 @@ public class CharacteristicsController {
     } finally {
       subscriptions.completeUpdateBatch();
     }
-    return new HapJsonNoContentResponse();
+    return HapJsonNoContentResponse.INSTANCE;
   }
 }
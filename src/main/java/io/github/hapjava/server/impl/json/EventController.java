@@ -5,6 +5,8 @@ import io.github.hapjava.server.impl.connections.PendingNotification;
 import io.github.hapjava.server.impl.http.HttpResponse;
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
@@ -12,44 +14,42 @@ import javax.json.JsonObjectBuilder;
 
 public class EventController {
 
-  public HttpResponse getMessage(int accessoryId, int iid, EventableCharacteristic changed)
-      throws Exception {
-    JsonArrayBuilder characteristics = Json.createArrayBuilder();
-
-    JsonObjectBuilder characteristicBuilder = Json.createObjectBuilder();
-    characteristicBuilder.add("aid", accessoryId);
-    characteristicBuilder.add("iid", iid);
-    changed.supplyValue(characteristicBuilder);
-    characteristics.add(characteristicBuilder.build());
-
-    JsonObject data = Json.createObjectBuilder().add("characteristics", characteristics).build();
-
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-      Json.createWriter(baos).write(data);
-      byte[] dataBytes = baos.toByteArray();
-
-      return new EventResponse(dataBytes);
-    }
+  public CompletableFuture<HttpResponse> getMessage(
+      int accessoryId, int iid, EventableCharacteristic changed) throws Exception {
+    ArrayList<PendingNotification> notifications = new ArrayList<>(1);
+    notifications.add(new PendingNotification(accessoryId, iid, changed));
+    return getMessage(notifications);
   }
 
-  public HttpResponse getMessage(ArrayList<PendingNotification> notifications) throws Exception {
-    JsonArrayBuilder characteristics = Json.createArrayBuilder();
-
+  /**
+   * Reads the changed values without blocking. The message completes once every characteristic has
+   * supplied its value.
+   */
+  public CompletableFuture<HttpResponse> getMessage(ArrayList<PendingNotification> notifications)
+      throws Exception {
+    List<CompletableFuture<JsonObject>> values = new ArrayList<>(notifications.size());
     for (PendingNotification notification : notifications) {
       JsonObjectBuilder characteristicBuilder = Json.createObjectBuilder();
       characteristicBuilder.add("aid", notification.aid);
       characteristicBuilder.add("iid", notification.iid);
-      notification.characteristic.supplyValue(characteristicBuilder);
-      characteristics.add(characteristicBuilder.build());
+      values.add(
+          notification
+              .characteristic
+              .supplyValueAsync(characteristicBuilder)
+              .thenApply(v -> characteristicBuilder.build()));
     }
 
-    JsonObject data = Json.createObjectBuilder().add("characteristics", characteristics).build();
-
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-      Json.createWriter(baos).write(data);
-      byte[] dataBytes = baos.toByteArray();
-
-      return new EventResponse(dataBytes);
-    }
+    return CompletableFuture.allOf(values.toArray(new CompletableFuture<?>[values.size()]))
+        .thenApply(
+            v -> {
+              JsonArrayBuilder characteristics = Json.createArrayBuilder();
+              values.forEach(value -> characteristics.add(value.join()));
+              JsonObject data =
+                  Json.createObjectBuilder().add("characteristics", characteristics).build();
+
+              ByteArrayOutputStream baos = new ByteArrayOutputStream();
+              Json.createWriter(baos).write(data);
+              return new EventResponse(baos.toByteArray());
+            });
   }
 }
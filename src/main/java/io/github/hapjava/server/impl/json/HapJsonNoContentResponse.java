@@ -1,6 +1,8 @@
 package io.github.hapjava.server.impl.json;
 
-class HapJsonNoContentResponse extends HapJsonResponse {
+public class HapJsonNoContentResponse extends HapJsonResponse {
+
+  public static final HapJsonNoContentResponse INSTANCE = new HapJsonNoContentResponse();
 
   public HapJsonNoContentResponse() {
     super(new byte[0]);
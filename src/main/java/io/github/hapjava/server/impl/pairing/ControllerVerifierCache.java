@@ -0,0 +1,71 @@
+package io.github.hapjava.server.impl.pairing;
+
+import io.github.hapjava.server.HomekitAuthInfo;
+import io.github.hapjava.server.impl.crypto.EdsaVerifier;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The verifiers of the long term public keys of the controllers paired with a {@link
+ * HomekitAuthInfo}, so that a pair-verify does not decode a key it has decoded before. Pairings
+ * added or removed by this library drop their entry right away, others once their key is read
+ * again.
+ */
+public final class ControllerVerifierCache {
+
+  /** Holds no reference to its keys, so an auth info that is no longer used can be collected. */
+  private static final Map<HomekitAuthInfo, ConcurrentMap<String, EdsaVerifier>> caches =
+      new WeakHashMap<>();
+
+  private final HomekitAuthInfo authInfo;
+  private final ConcurrentMap<String, EdsaVerifier> verifiers;
+
+  private ControllerVerifierCache(
+      HomekitAuthInfo authInfo, ConcurrentMap<String, EdsaVerifier> verifiers) {
+    this.authInfo = authInfo;
+    this.verifiers = verifiers;
+  }
+
+  public static ControllerVerifierCache forAuthInfo(HomekitAuthInfo authInfo) {
+    ConcurrentMap<String, EdsaVerifier> verifiers;
+    synchronized (caches) {
+      verifiers = caches.computeIfAbsent(authInfo, key -> new ConcurrentHashMap<>());
+    }
+    return new ControllerVerifierCache(authInfo, verifiers);
+  }
+
+  /**
+   * Asks the auth info for the public key of a controller every time, so that a pairing removed or
+   * replaced in any way takes effect right away, and only reuses the verifier if the key is the one
+   * it was created for.
+   *
+   * @param username the username of the controller, as passed to {@link
+   *     HomekitAuthInfo#getUserPublicKey(String)}
+   * @return the verifier of the controller's public key, or null if it is not paired
+   */
+  public EdsaVerifier get(String username) {
+    byte[] publicKey = authInfo.getUserPublicKey(username);
+    if (publicKey == null) {
+      verifiers.remove(username);
+      return null;
+    }
+    EdsaVerifier cached = verifiers.get(username);
+    if (cached != null && cached.hasPublicKey(publicKey)) {
+      return cached;
+    }
+    EdsaVerifier verifier = new EdsaVerifier(publicKey);
+    if (cached == null) {
+      verifiers.putIfAbsent(username, verifier);
+    } else {
+      verifiers.replace(username, cached, verifier);
+    }
+    return verifier;
+  }
+
+  /** Drops the verifier of a controller whose pairing was added or removed. */
+  public void invalidate(String username) {
+    verifiers.remove(username);
+  }
+}
@@ -1,9 +1,9 @@
 package io.github.hapjava.server.impl.pairing;
 
 import io.github.hapjava.server.HomekitAuthInfo;
-import io.github.hapjava.server.impl.crypto.ChachaDecoder;
-import io.github.hapjava.server.impl.crypto.ChachaEncoder;
+import io.github.hapjava.server.impl.crypto.AeadProviders;
 import io.github.hapjava.server.impl.crypto.EdsaSigner;
+import io.github.hapjava.server.impl.crypto.EdsaSigningService;
 import io.github.hapjava.server.impl.crypto.EdsaVerifier;
 import io.github.hapjava.server.impl.http.HttpResponse;
 import io.github.hapjava.server.impl.pairing.PairSetupRequest.Stage3Request;
@@ -40,8 +40,14 @@ class FinalPairHandler {
   }
 
   private HttpResponse decrypt(Stage3Request req, byte[] key) throws Exception {
-    ChachaDecoder chacha = new ChachaDecoder(key, "PS-Msg05".getBytes(StandardCharsets.UTF_8));
-    byte[] plaintext = chacha.decodeCiphertext(req.getAuthTagData(), req.getMessageData());
+    byte[] plaintext =
+        AeadProviders.getDefault()
+            .open(
+                key,
+                "PS-Msg05".getBytes(StandardCharsets.UTF_8),
+                null,
+                req.getMessageData(),
+                req.getAuthTagData());
 
     DecodeResult d = TypeLengthValueUtils.decode(plaintext);
     byte[] username = d.getBytes(MessageType.USERNAME);
@@ -65,7 +71,9 @@ class FinalPairHandler {
     if (!new EdsaVerifier(ltpk).verify(completeData, proof)) {
       throw new Exception("Invalid signature");
     }
-    authInfo.createUser(authInfo.getMac() + new String(username, StandardCharsets.UTF_8), ltpk);
+    String user = authInfo.getMac() + new String(username, StandardCharsets.UTF_8);
+    authInfo.createUser(user, ltpk);
+    ControllerVerifierCache.forAuthInfo(authInfo).invalidate(user);
     return createResponse();
   }
 
@@ -79,7 +87,7 @@ class FinalPairHandler {
     byte[] okm = new byte[32];
     hkdf.generateBytes(okm, 0, 32);
 
-    EdsaSigner signer = new EdsaSigner(authInfo.getPrivateKey());
+    EdsaSigner signer = EdsaSigningService.forAuthInfo(authInfo).getSigner();
 
     byte[] material =
         ByteUtils.joinBytes(
@@ -93,9 +101,9 @@ class FinalPairHandler {
     encoder.add(MessageType.SIGNATURE, proof);
     byte[] plaintext = encoder.toByteArray();
 
-    ChachaEncoder chacha =
-        new ChachaEncoder(hkdf_enc_key, "PS-Msg06".getBytes(StandardCharsets.UTF_8));
-    byte[] ciphertext = chacha.encodeCiphertext(plaintext);
+    byte[] ciphertext =
+        AeadProviders.getDefault()
+            .seal(hkdf_enc_key, "PS-Msg06".getBytes(StandardCharsets.UTF_8), null, plaintext);
 
     encoder = TypeLengthValueUtils.getEncoder();
     encoder.add(MessageType.STATE, (short) 6);
@@ -9,7 +9,8 @@ public enum MessageType {
   ENCRYPTED_DATA(5),
   STATE(6),
   ERROR(7),
-  SIGNATURE(10);
+  SIGNATURE(10),
+  SESSION_ID(14);
 
   private final short key;
 
@@ -3,9 +3,8 @@ package io.github.hapjava.server.impl.pairing;
 import djb.Curve25519;
 import io.github.hapjava.server.HomekitAuthInfo;
 import io.github.hapjava.server.impl.HomekitRegistry;
-import io.github.hapjava.server.impl.crypto.ChachaDecoder;
-import io.github.hapjava.server.impl.crypto.ChachaEncoder;
-import io.github.hapjava.server.impl.crypto.EdsaSigner;
+import io.github.hapjava.server.impl.crypto.AeadProviders;
+import io.github.hapjava.server.impl.crypto.EdsaSigningService;
 import io.github.hapjava.server.impl.crypto.EdsaVerifier;
 import io.github.hapjava.server.impl.http.HttpRequest;
 import io.github.hapjava.server.impl.http.HttpResponse;
@@ -15,6 +14,7 @@ import io.github.hapjava.server.impl.pairing.TypeLengthValueUtils.DecodeResult;
 import io.github.hapjava.server.impl.pairing.TypeLengthValueUtils.Encoder;
 import io.github.hapjava.server.impl.responses.NotFoundResponse;
 import io.github.hapjava.server.impl.responses.OkResponse;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import org.bouncycastle.crypto.digests.SHA512Digest;
@@ -23,6 +23,12 @@ import org.bouncycastle.crypto.params.HKDFParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Runs pair-verify for one connection. A controller whose session is still in the {@link
+ * SessionResumptionCache} may instead send a Pair Resume request, which derives the new session
+ * keys from the previous shared secret with HKDF alone; if the session is unknown or the request
+ * does not authenticate, the request is answered as the start of a full pair-verify.
+ */
 public class PairVerificationManager {
 
   private static final Logger logger = LoggerFactory.getLogger(PairVerificationManager.class);
@@ -30,28 +36,38 @@ public class PairVerificationManager {
 
   private final HomekitAuthInfo authInfo;
   private final HomekitRegistry registry;
+  private final SessionResumptionCache sessions;
 
   private byte[] hkdfKey;
   private byte[] clientPublicKey;
   private byte[] publicKey;
   private byte[] sharedSecret;
 
-  public PairVerificationManager(HomekitAuthInfo authInfo, HomekitRegistry registry) {
+  public PairVerificationManager(
+      HomekitAuthInfo authInfo, HomekitRegistry registry, SessionResumptionCache sessions) {
     this.authInfo = authInfo;
     this.registry = registry;
+    this.sessions = sessions;
   }
 
   public HttpResponse handle(HttpRequest rawRequest) throws Exception {
     PairVerificationRequest request = PairVerificationRequest.of(rawRequest.getBody());
     switch (request.getStage()) {
       case ONE:
-        return stage1((Stage1Request) request);
+        Stage1Request stage1 = (Stage1Request) request;
+        if (stage1.isResume()) {
+          HttpResponse resumed = resume(stage1);
+          if (resumed != null) {
+            return resumed;
+          }
+        }
+        return stage1(stage1);
 
       case TWO:
         return stage2((Stage2Request) request);
 
       default:
-        return new NotFoundResponse();
+        return NotFoundResponse.INSTANCE;
     }
   }
 
@@ -70,24 +86,23 @@ public class PairVerificationManager {
         ByteUtils.joinBytes(
             publicKey, authInfo.getMac().getBytes(StandardCharsets.UTF_8), clientPublicKey);
 
-    byte[] proof = new EdsaSigner(authInfo.getPrivateKey()).sign(material);
+    byte[] proof = EdsaSigningService.forAuthInfo(authInfo).getSigner().sign(material);
 
-    HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA512Digest());
-    hkdf.init(
-        new HKDFParameters(
+    hkdfKey =
+        hkdf(
             sharedSecret,
             "Pair-Verify-Encrypt-Salt".getBytes(StandardCharsets.UTF_8),
-            "Pair-Verify-Encrypt-Info".getBytes(StandardCharsets.UTF_8)));
-    hkdfKey = new byte[32];
-    hkdf.generateBytes(hkdfKey, 0, 32);
+            "Pair-Verify-Encrypt-Info",
+            32);
 
     Encoder encoder = TypeLengthValueUtils.getEncoder();
     encoder.add(MessageType.USERNAME, authInfo.getMac().getBytes(StandardCharsets.UTF_8));
     encoder.add(MessageType.SIGNATURE, proof);
     byte[] plaintext = encoder.toByteArray();
 
-    ChachaEncoder chacha = new ChachaEncoder(hkdfKey, "PV-Msg02".getBytes(StandardCharsets.UTF_8));
-    byte[] ciphertext = chacha.encodeCiphertext(plaintext);
+    byte[] ciphertext =
+        AeadProviders.getDefault()
+            .seal(hkdfKey, "PV-Msg02".getBytes(StandardCharsets.UTF_8), null, plaintext);
 
     encoder = TypeLengthValueUtils.getEncoder();
     encoder.add(MessageType.STATE, (short) 2);
@@ -97,8 +112,14 @@ public class PairVerificationManager {
   }
 
   private HttpResponse stage2(Stage2Request request) throws Exception {
-    ChachaDecoder chacha = new ChachaDecoder(hkdfKey, "PV-Msg03".getBytes(StandardCharsets.UTF_8));
-    byte[] plaintext = chacha.decodeCiphertext(request.getAuthTagData(), request.getMessageData());
+    byte[] plaintext =
+        AeadProviders.getDefault()
+            .open(
+                hkdfKey,
+                "PV-Msg03".getBytes(StandardCharsets.UTF_8),
+                null,
+                request.getMessageData(),
+                request.getAuthTagData());
 
     DecodeResult d = TypeLengthValueUtils.decode(plaintext);
     byte[] clientUsername = d.getBytes(MessageType.USERNAME);
@@ -106,17 +127,25 @@ public class PairVerificationManager {
 
     byte[] material = ByteUtils.joinBytes(clientPublicKey, clientUsername, publicKey);
 
-    byte[] clientLtpk =
-        authInfo.getUserPublicKey(
-            authInfo.getMac() + new String(clientUsername, StandardCharsets.UTF_8));
-    if (clientLtpk == null) {
+    EdsaVerifier clientVerifier =
+        ControllerVerifierCache.forAuthInfo(authInfo)
+            .get(authInfo.getMac() + new String(clientUsername, StandardCharsets.UTF_8));
+    if (clientVerifier == null) {
       throw new Exception("Unknown user: " + new String(clientUsername, StandardCharsets.UTF_8));
     }
 
     Encoder encoder = TypeLengthValueUtils.getEncoder();
-    if (new EdsaVerifier(clientLtpk).verify(material, clientSignature)) {
+    if (clientVerifier.verify(material, clientSignature)) {
       encoder.add(MessageType.STATE, (short) 4);
       logger.trace("Completed pair verification for " + registry.getLabel());
+      sessions.put(
+          hkdf(
+              sharedSecret,
+              "Pair-Verify-ResumeSessionID-Salt".getBytes(StandardCharsets.UTF_8),
+              "Pair-Verify-ResumeSessionID-Info",
+              8),
+          sharedSecret,
+          new String(clientUsername, StandardCharsets.UTF_8));
       return new UpgradeResponse(
           encoder.toByteArray(),
           createKey("Control-Write-Encryption-Key"),
@@ -128,15 +157,78 @@ public class PairVerificationManager {
     }
   }
 
+  /**
+   * Resumes a session with the shared secret it had, without any public key operations. The resumed
+   * session gets a new ID and a shared secret derived from the previous one.
+   *
+   * @return the response, or null if the session cannot be resumed
+   */
+  private HttpResponse resume(Stage1Request request) throws Exception {
+    SessionResumptionCache.Session session = sessions.get(request.getSessionId());
+    if (session == null) {
+      logger.trace("Unknown session, verifying " + registry.getLabel() + " again");
+      return null;
+    }
+    // the pairing may have been removed since
+    if (ControllerVerifierCache.forAuthInfo(authInfo).get(authInfo.getMac() + session.getUsername())
+        == null) {
+      sessions.remove(request.getSessionId());
+      return null;
+    }
+    byte[] clientPublicKey = request.getClientPublicKey();
+    byte[] requestKey =
+        hkdf(
+            session.getSharedSecret(),
+            ByteUtils.joinBytes(clientPublicKey, request.getSessionId()),
+            "Pair-Resume-Request-Info",
+            32);
+    try {
+      AeadProviders.getDefault()
+          .open(
+              requestKey,
+              "PR-Msg01".getBytes(StandardCharsets.UTF_8),
+              null,
+              new byte[0],
+              request.getAuthTagData());
+    } catch (IOException e) {
+      logger.debug("Could not authenticate resume request, verifying " + registry.getLabel(), e);
+      return null;
+    }
+
+    byte[] sessionId = new byte[8];
+    getSecureRandom().nextBytes(sessionId);
+    byte[] salt = ByteUtils.joinBytes(clientPublicKey, sessionId);
+    byte[] responseKey = hkdf(session.getSharedSecret(), salt, "Pair-Resume-Response-Info", 32);
+    byte[] authTag =
+        AeadProviders.getDefault()
+            .seal(responseKey, "PR-Msg02".getBytes(StandardCharsets.UTF_8), null, new byte[0]);
+    sharedSecret = hkdf(session.getSharedSecret(), salt, "Pair-Resume-Shared-Secret-Info", 32);
+    if (!sessions.replace(request.getSessionId(), sessionId, sharedSecret, session.getUsername())) {
+      logger.debug("Session was resumed concurrently, verifying " + registry.getLabel() + " again");
+      return null;
+    }
+
+    Encoder encoder = TypeLengthValueUtils.getEncoder();
+    encoder.add(MessageType.STATE, (short) 2);
+    encoder.add(MessageType.METHOD, PairVerificationRequest.METHOD_RESUME);
+    encoder.add(MessageType.SESSION_ID, sessionId);
+    encoder.add(MessageType.ENCRYPTED_DATA, authTag);
+    logger.trace("Resumed pair verification for " + registry.getLabel());
+    return new UpgradeResponse(
+        encoder.toByteArray(),
+        createKey("Control-Write-Encryption-Key"),
+        createKey("Control-Read-Encryption-Key"));
+  }
+
   private byte[] createKey(String info) {
+    return hkdf(sharedSecret, "Control-Salt".getBytes(StandardCharsets.UTF_8), info, 32);
+  }
+
+  private static byte[] hkdf(byte[] secret, byte[] salt, String info, int length) {
     HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA512Digest());
-    hkdf.init(
-        new HKDFParameters(
-            sharedSecret,
-            "Control-Salt".getBytes(StandardCharsets.UTF_8),
-            info.getBytes(StandardCharsets.UTF_8)));
-    byte[] key = new byte[32];
-    hkdf.generateBytes(key, 0, 32);
+    hkdf.init(new HKDFParameters(secret, salt, info.getBytes(StandardCharsets.UTF_8)));
+    byte[] key = new byte[length];
+    hkdf.generateBytes(key, 0, length);
     return key;
   }
 
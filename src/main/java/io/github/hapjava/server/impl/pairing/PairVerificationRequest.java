@@ -6,6 +6,8 @@ abstract class PairVerificationRequest {
 
   private static final short VALUE_STAGE_1 = 1;
   private static final short VALUE_STAGE_2 = 3;
+  /** The {@link MessageType#METHOD} of Pair Resume, in the request and in its response. */
+  static final short METHOD_RESUME = 6;
 
   static PairVerificationRequest of(byte[] content) throws Exception {
     DecodeResult d = TypeLengthValueUtils.decode(content);
@@ -27,15 +29,40 @@ abstract class PairVerificationRequest {
   static class Stage1Request extends PairVerificationRequest {
 
     private final byte[] clientPublicKey;
+    private final boolean resume;
+    private final byte[] sessionId;
+    private final byte[] authTagData;
 
     public Stage1Request(DecodeResult d) {
       clientPublicKey = d.getBytes(MessageType.PUBLIC_KEY);
+      byte[] method = d.getBytes(MessageType.METHOD);
+      resume = method != null && method.length == 1 && method[0] == METHOD_RESUME;
+      sessionId = d.getBytes(MessageType.SESSION_ID);
+      authTagData = d.getBytes(MessageType.ENCRYPTED_DATA);
     }
 
     public byte[] getClientPublicKey() {
       return clientPublicKey;
     }
 
+    /** Whether the controller asks to resume the session {@link #getSessionId()}. */
+    public boolean isResume() {
+      return resume
+          && clientPublicKey != null
+          && sessionId != null
+          && authTagData != null
+          && authTagData.length == 16;
+    }
+
+    public byte[] getSessionId() {
+      return sessionId;
+    }
+
+    /** The tag of the empty message proving that the controller knows the session. */
+    public byte[] getAuthTagData() {
+      return authTagData;
+    }
+
     @Override
     Stage getStage() {
       return Stage.ONE;
@@ -34,32 +34,32 @@ public class PairingManager {
       logger.trace("Entering second stage of pair for " + registry.getLabel());
       if (srpHandler == null) {
         logger.warn("Received unexpected stage 2 request for " + registry.getLabel());
-        return new UnauthorizedResponse();
+        return UnauthorizedResponse.INSTANCE;
       } else {
         try {
           return srpHandler.handle(req);
         } catch (Exception e) {
           srpHandler = null; // You don't get to try again - need a new key
           logger.warn("Exception encountered while processing pairing request", e);
-          return new UnauthorizedResponse();
+          return UnauthorizedResponse.INSTANCE;
         }
       }
     } else if (req.getStage() == Stage.THREE) {
       logger.trace("Entering third stage of pair for " + registry.getLabel());
       if (srpHandler == null) {
         logger.warn("Received unexpected stage 3 request for " + registry.getLabel());
-        return new UnauthorizedResponse();
+        return UnauthorizedResponse.INSTANCE;
       } else {
         FinalPairHandler handler = new FinalPairHandler(srpHandler.getK(), authInfo);
         try {
           return handler.handle(req);
         } catch (Exception e) {
           logger.warn("Exception while finalizing pairing", e);
-          return new UnauthorizedResponse();
+          return UnauthorizedResponse.INSTANCE;
         }
       }
     }
 
-    return new NotFoundResponse();
+    return NotFoundResponse.INSTANCE;
   }
 }
@@ -25,10 +25,14 @@ public class PairingUpdateController {
     if (method == 3) { // Add pairing
       byte[] username = d.getBytes(MessageType.USERNAME);
       byte[] ltpk = d.getBytes(MessageType.PUBLIC_KEY);
-      authInfo.createUser(authInfo.getMac() + new String(username, StandardCharsets.UTF_8), ltpk);
+      String user = authInfo.getMac() + new String(username, StandardCharsets.UTF_8);
+      authInfo.createUser(user, ltpk);
+      ControllerVerifierCache.forAuthInfo(authInfo).invalidate(user);
     } else if (method == 4) { // Remove pairing
       byte[] username = d.getBytes(MessageType.USERNAME);
-      authInfo.removeUser(authInfo.getMac() + new String(username, StandardCharsets.UTF_8));
+      String user = authInfo.getMac() + new String(username, StandardCharsets.UTF_8);
+      authInfo.removeUser(user);
+      ControllerVerifierCache.forAuthInfo(authInfo).invalidate(user);
       if (!authInfo.hasUser()) {
         advertiser.setDiscoverable(true);
       }
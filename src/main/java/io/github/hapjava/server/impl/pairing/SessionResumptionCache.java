@@ -0,0 +1,168 @@
+package io.github.hapjava.server.impl.pairing;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.util.Pack;
+
+/**
+ * The shared secrets of recently verified sessions of one accessory server, by the 8 byte session
+ * ID that both sides derive from them, so that a returning controller can resume its session with
+ * Pair Resume instead of a full pair-verify. Holds at most {@link #getCapacity()} sessions,
+ * dropping the least recently used, and each one for at most {@link #getTimeToLiveNanos()}.
+ */
+public class SessionResumptionCache {
+
+  public static final int DEFAULT_CAPACITY = 64;
+  public static final long DEFAULT_TIME_TO_LIVE_NANOS = TimeUnit.MINUTES.toNanos(30);
+
+  private final int capacity;
+  private final long timeToLiveNanos;
+  private final LinkedHashMap<Long, Session> sessions;
+
+  public SessionResumptionCache() {
+    this(DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE_NANOS);
+  }
+
+  /**
+   * @param capacity maximum number of sessions held, 0 to disable resumption
+   * @param timeToLiveNanos time after which a session can no longer be resumed
+   */
+  public SessionResumptionCache(int capacity, long timeToLiveNanos) {
+    this.capacity = capacity;
+    this.timeToLiveNanos = timeToLiveNanos;
+    this.sessions =
+        new LinkedHashMap<Long, Session>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Long, Session> eldest) {
+            if (size() <= SessionResumptionCache.this.capacity) {
+              return false;
+            }
+            eldest.getValue().destroy();
+            return true;
+          }
+        };
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public long getTimeToLiveNanos() {
+    return timeToLiveNanos;
+  }
+
+  public synchronized int size() {
+    return sessions.size();
+  }
+
+  /** Forgets all sessions, so that every controller has to verify again. */
+  public synchronized void clear() {
+    sessions.values().forEach(Session::destroy);
+    sessions.clear();
+  }
+
+  void put(byte[] sessionId, byte[] sharedSecret, String username) {
+    put(sessionId, sharedSecret, username, System.nanoTime());
+  }
+
+  synchronized void put(byte[] sessionId, byte[] sharedSecret, String username, long now) {
+    if (capacity <= 0) {
+      return;
+    }
+    expire(now);
+    Session previous =
+        sessions.put(
+            Pack.bigEndianToLong(sessionId, 0),
+            new Session(sharedSecret.clone(), username, now + timeToLiveNanos));
+    if (previous != null) {
+      previous.destroy();
+    }
+  }
+
+  /** Returns a copy of the session, or null if there is none or it has expired. */
+  Session get(byte[] sessionId) {
+    return get(sessionId, System.nanoTime());
+  }
+
+  synchronized Session get(byte[] sessionId, long now) {
+    if (sessionId == null || sessionId.length != 8) {
+      return null;
+    }
+    expire(now);
+    Session session = sessions.get(Pack.bigEndianToLong(sessionId, 0));
+    return session == null
+        ? null
+        : new Session(session.sharedSecret.clone(), session.username, session.expires);
+  }
+
+  /**
+   * Replaces a session by the one it was resumed as, unless it has been resumed, removed or expired
+   * in the meantime, so that each session can be resumed only once.
+   *
+   * @return whether the session was still there and has been replaced
+   */
+  boolean replace(byte[] sessionId, byte[] newSessionId, byte[] sharedSecret, String username) {
+    return replace(sessionId, newSessionId, sharedSecret, username, System.nanoTime());
+  }
+
+  synchronized boolean replace(
+      byte[] sessionId, byte[] newSessionId, byte[] sharedSecret, String username, long now) {
+    expire(now);
+    Session session = sessions.remove(Pack.bigEndianToLong(sessionId, 0));
+    if (session == null) {
+      return false;
+    }
+    session.destroy();
+    put(newSessionId, sharedSecret, username, now);
+    return true;
+  }
+
+  /** Removes the session of a pairing that no longer exists. */
+  synchronized void remove(byte[] sessionId) {
+    Session session = sessions.remove(Pack.bigEndianToLong(sessionId, 0));
+    if (session != null) {
+      session.destroy();
+    }
+  }
+
+  private void expire(long now) {
+    Iterator<Session> iterator = sessions.values().iterator();
+    while (iterator.hasNext()) {
+      Session session = iterator.next();
+      if (now - session.expires >= 0) {
+        session.destroy();
+        iterator.remove();
+      }
+    }
+  }
+
+  static class Session {
+
+    private final byte[] sharedSecret;
+    private final String username;
+    private final long expires;
+
+    Session(byte[] sharedSecret, String username, long expires) {
+      this.sharedSecret = sharedSecret;
+      this.username = username;
+      this.expires = expires;
+    }
+
+    byte[] getSharedSecret() {
+      return sharedSecret;
+    }
+
+    String getUsername() {
+      return username;
+    }
+
+    private void destroy() {
+      Arrays.fill(sharedSecret, (byte) 0);
+    }
+  }
+}
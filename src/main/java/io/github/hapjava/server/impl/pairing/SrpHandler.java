@@ -47,14 +47,14 @@ class SrpHandler {
         return step2((Stage2Request) request);
 
       default:
-        return new NotFoundResponse();
+        return NotFoundResponse.INSTANCE;
     }
   }
 
   private HttpResponse step1() throws Exception {
     if (session.getState() != State.INIT) {
       logger.warn("Session is not in state INIT when receiving step1");
-      return new ConflictResponse();
+      return ConflictResponse.INSTANCE;
     }
 
     SRP6VerifierGenerator verifierGenerator = new SRP6VerifierGenerator(config);
@@ -71,7 +71,7 @@ class SrpHandler {
   private HttpResponse step2(Stage2Request request) throws Exception {
     if (session.getState() != State.STEP_1) {
       logger.warn("Session is not in state Stage 1 when receiving step2");
-      return new ConflictResponse();
+      return ConflictResponse.INSTANCE;
     }
     BigInteger m2 = session.step2(request.getA(), request.getM1());
     Encoder encoder = TypeLengthValueUtils.getEncoder();
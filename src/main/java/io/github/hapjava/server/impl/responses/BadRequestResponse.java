@@ -0,0 +1,13 @@
+package io.github.hapjava.server.impl.responses;
+
+import io.github.hapjava.server.impl.http.HttpResponse;
+
+public class BadRequestResponse implements HttpResponse {
+
+  public static final BadRequestResponse INSTANCE = new BadRequestResponse();
+
+  @Override
+  public int getStatusCode() {
+    return 400;
+  }
+}
@@ -4,6 +4,8 @@ import io.github.hapjava.server.impl.http.HttpResponse;
 
 public class ConflictResponse implements HttpResponse {
 
+  public static final ConflictResponse INSTANCE = new ConflictResponse();
+
   @Override
   public int getStatusCode() {
     return 409;
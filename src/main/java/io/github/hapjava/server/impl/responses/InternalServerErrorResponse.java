@@ -6,6 +6,9 @@ import java.nio.charset.StandardCharsets;
 
 public class InternalServerErrorResponse implements HttpResponse {
 
+  /** Shared response without a body, for failures that should not be described to the client. */
+  public static final InternalServerErrorResponse INSTANCE = new InternalServerErrorResponse(null);
+
   private final Exception e;
 
   public InternalServerErrorResponse(Exception e) {
@@ -19,6 +22,9 @@ public class InternalServerErrorResponse implements HttpResponse {
 
   @Override
   public ByteBuffer getBody() {
+    if (e == null) {
+      return HttpResponse.super.getBody();
+    }
     return ByteBuffer.wrap(e.getClass().getName().getBytes(StandardCharsets.UTF_8));
   }
 
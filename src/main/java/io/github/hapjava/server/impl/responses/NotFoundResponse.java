@@ -4,6 +4,8 @@ import io.github.hapjava.server.impl.http.HttpResponse;
 
 public class NotFoundResponse implements HttpResponse {
 
+  public static final NotFoundResponse INSTANCE = new NotFoundResponse();
+
   @Override
   public int getStatusCode() {
     return 404;
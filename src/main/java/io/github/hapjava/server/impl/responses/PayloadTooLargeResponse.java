@@ -0,0 +1,13 @@
+package io.github.hapjava.server.impl.responses;
+
+import io.github.hapjava.server.impl.http.HttpResponse;
+
+public class PayloadTooLargeResponse implements HttpResponse {
+
+  public static final PayloadTooLargeResponse INSTANCE = new PayloadTooLargeResponse();
+
+  @Override
+  public int getStatusCode() {
+    return 413;
+  }
+}
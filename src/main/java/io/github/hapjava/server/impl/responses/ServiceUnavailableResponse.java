@@ -0,0 +1,13 @@
+package io.github.hapjava.server.impl.responses;
+
+import io.github.hapjava.server.impl.http.HttpResponse;
+
+public class ServiceUnavailableResponse implements HttpResponse {
+
+  public static final ServiceUnavailableResponse INSTANCE = new ServiceUnavailableResponse();
+
+  @Override
+  public int getStatusCode() {
+    return 503;
+  }
+}
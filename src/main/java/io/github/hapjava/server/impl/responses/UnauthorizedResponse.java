@@ -4,6 +4,8 @@ import io.github.hapjava.server.impl.http.HttpResponse;
 
 public class UnauthorizedResponse implements HttpResponse {
 
+  public static final UnauthorizedResponse INSTANCE = new UnauthorizedResponse();
+
   @Override
   public int getStatusCode() {
     return 401;
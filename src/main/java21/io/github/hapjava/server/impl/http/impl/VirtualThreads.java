@@ -0,0 +1,17 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import java.util.concurrent.ThreadFactory;
+
+/** Java 21 version of the class, used from the multi-release jar. */
+final class VirtualThreads {
+
+  private VirtualThreads() {}
+
+  static boolean isAvailable() {
+    return true;
+  }
+
+  static ThreadFactory newThreadFactory(String name) {
+    return Thread.ofVirtual().name(name + "-", 1).factory();
+  }
+}
@@ -87,18 +87,18 @@ public class HomekitRootTest {
   @Test
   public void testAddAccessoryResetsWeb() {
     root.start();
-    verify(webHandler, never()).resetConnections();
+    verify(webHandler, never()).resetConnections(any(HomekitClientConnectionFactory.class));
     root.addAccessory(accessory);
-    verify(webHandler).resetConnections();
+    verify(webHandler).resetConnections(any(HomekitClientConnectionFactory.class));
   }
 
   @Test
   public void testRemoveAccessoryResetsWeb() {
     root.addAccessory(accessory);
     root.start();
-    verify(webHandler, never()).resetConnections();
+    verify(webHandler, never()).resetConnections(any(HomekitClientConnectionFactory.class));
     root.removeAccessory(accessory);
-    verify(webHandler).resetConnections();
+    verify(webHandler).resetConnections(any(HomekitClientConnectionFactory.class));
   }
 
   @Test(expected = IndexOutOfBoundsException.class)
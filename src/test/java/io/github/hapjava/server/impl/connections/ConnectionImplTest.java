@@ -0,0 +1,53 @@
+package io.github.hapjava.server.impl.connections;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.github.hapjava.server.HomekitAuthInfo;
+import io.github.hapjava.server.impl.HomekitRegistry;
+import io.github.hapjava.server.impl.http.HttpRequest;
+import io.github.hapjava.server.impl.jmdns.JmdnsHomekitAdvertiser;
+import io.github.hapjava.server.impl.pairing.SessionResumptionCache;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConnectionImplTest {
+
+  @Test
+  public void testCloseDoesNotWaitForRequestInProgress() throws Exception {
+    CountDownLatch handling = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    HomekitRegistry registry = mock(HomekitRegistry.class);
+    when(registry.isAllowUnauthenticatedRequests())
+        .thenAnswer(
+            invocation -> {
+              // stands in for a slow setter, which runs while the request is being handled
+              handling.countDown();
+              release.await();
+              return false;
+            });
+    HttpRequest request = mock(HttpRequest.class);
+    when(request.getUri()).thenReturn("/accessories");
+    ConnectionImpl connection =
+        new ConnectionImpl(
+            mock(HomekitAuthInfo.class),
+            registry,
+            response -> {},
+            new SubscriptionManager(),
+            new SessionResumptionCache(),
+            mock(JmdnsHomekitAdvertiser.class));
+
+    Thread requestThread = new Thread(() -> connection.handleRequest(request));
+    requestThread.start();
+    try {
+      Assert.assertTrue(handling.await(5, TimeUnit.SECONDS));
+      CompletableFuture.runAsync(connection::close).get(5, TimeUnit.SECONDS);
+    } finally {
+      release.countDown();
+      requestThread.join();
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package io.github.hapjava.server.impl.connections;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.hapjava.characteristics.EventableCharacteristic;
+import io.github.hapjava.server.impl.http.HomekitClientConnection;
+import io.github.hapjava.server.impl.http.HttpResponse;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+
+public class SubscriptionManagerTest {
+
+  private SubscriptionManager subscriptions;
+  private EventableCharacteristic characteristic;
+  private HomekitClientConnection connection;
+
+  @Before
+  public void setup() {
+    subscriptions = new SubscriptionManager();
+    characteristic = mock(EventableCharacteristic.class);
+    when(characteristic.supplyValueAsync(any()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    connection = mock(HomekitClientConnection.class);
+    subscriptions.addSubscription(2, 10, characteristic, connection);
+  }
+
+  @Test
+  public void testEventIsSentToWritableConnection() {
+    when(connection.isWritable()).thenReturn(true);
+    subscriptions.publish(2, 10, characteristic);
+
+    verify(connection).outOfBand(any());
+    Assert.assertEquals(0, subscriptions.getMetrics().getDeferredCount());
+  }
+
+  @Test
+  public void testChangesAreCoalescedWhileConnectionIsNotWritable() {
+    when(connection.isWritable()).thenReturn(false);
+    subscriptions.publish(2, 10, characteristic);
+    subscriptions.publish(2, 10, characteristic);
+    subscriptions.publish(2, 10, characteristic);
+
+    verify(connection, never()).outOfBand(any());
+    Assert.assertEquals(1, subscriptions.getMetrics().getDeferredCount());
+    Assert.assertEquals(2, subscriptions.getMetrics().getCoalescedCount());
+
+    when(connection.isWritable()).thenReturn(true);
+    subscriptions.flushDeferred(connection);
+    subscriptions.flushDeferred(connection);
+
+    verify(connection, times(1)).outOfBand(any());
+  }
+
+  @Test
+  public void testSlowReadDoesNotHoldUpOtherCharacteristics() {
+    when(connection.isWritable()).thenReturn(true);
+    CompletableFuture<Void> slowRead = new CompletableFuture<>();
+    when(characteristic.supplyValueAsync(any())).thenReturn(slowRead);
+    EventableCharacteristic other = mock(EventableCharacteristic.class);
+    when(other.supplyValueAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+    subscriptions.addSubscription(3, 11, other, connection);
+
+    subscriptions.publish(2, 10, characteristic);
+    subscriptions.publish(3, 11, other);
+
+    verify(connection).outOfBand(argThat(isEventOf(3)));
+    verify(connection, times(1)).outOfBand(any());
+    slowRead.complete(null);
+    verify(connection).outOfBand(argThat(isEventOf(2)));
+  }
+
+  @Test
+  public void testEventsOfOneCharacteristicStayInOrder() {
+    when(connection.isWritable()).thenReturn(true);
+    CompletableFuture<Void> slowRead = new CompletableFuture<>();
+    when(characteristic.supplyValueAsync(any()))
+        .thenReturn(slowRead)
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    subscriptions.publish(2, 10, characteristic);
+    subscriptions.publish(2, 10, characteristic);
+
+    verify(connection, never()).outOfBand(any());
+    slowRead.complete(null);
+    verify(connection, times(2)).outOfBand(any());
+  }
+
+  @Test
+  public void testReadThatNeverCompletesIsSkipped() throws Exception {
+    Timer timer = mock(Timer.class);
+    when(timer.newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class)))
+        .thenReturn(mock(Timeout.class));
+    subscriptions = new SubscriptionManager(timer, 1000);
+    subscriptions.addSubscription(2, 10, characteristic, connection);
+    when(connection.isWritable()).thenReturn(true);
+    when(characteristic.supplyValueAsync(any()))
+        .thenReturn(new CompletableFuture<>())
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    subscriptions.publish(2, 10, characteristic);
+    subscriptions.publish(2, 10, characteristic);
+    verify(connection, never()).outOfBand(any());
+
+    ArgumentCaptor<TimerTask> timeout = ArgumentCaptor.forClass(TimerTask.class);
+    verify(timer).newTimeout(timeout.capture(), anyLong(), any(TimeUnit.class));
+    timeout.getValue().run(mock(Timeout.class));
+    verify(connection, times(1)).outOfBand(any());
+  }
+
+  @Test
+  public void testDeferredChangesAreSentWhenConnectionDrains() {
+    when(connection.isWritable()).thenReturn(false);
+    subscriptions.publish(2, 10, characteristic);
+    CompletableFuture<Void> drained = subscriptions.drain(connection);
+
+    verify(connection, times(1)).outOfBand(any());
+    Assert.assertTrue(drained.isDone());
+
+    subscriptions.publish(2, 10, characteristic);
+    verify(connection, times(2)).outOfBand(any());
+    subscriptions.removeConnection(connection);
+    Assert.assertEquals(0, subscriptions.getMetrics().getDroppedCount());
+  }
+
+  @Test
+  public void testDrainWaitsForSlowRead() {
+    when(connection.isWritable()).thenReturn(true);
+    CompletableFuture<Void> slowRead = new CompletableFuture<>();
+    when(characteristic.supplyValueAsync(any())).thenReturn(slowRead);
+    subscriptions.publish(2, 10, characteristic);
+    CompletableFuture<Void> drained = subscriptions.drain(connection);
+
+    Assert.assertFalse(drained.isDone());
+    slowRead.complete(null);
+    Assert.assertTrue(drained.isDone());
+    verify(connection).outOfBand(any());
+  }
+
+  @Test
+  public void testDeferredChangesAreDroppedWhenConnectionCloses() {
+    when(connection.isWritable()).thenReturn(false);
+    subscriptions.publish(2, 10, characteristic);
+    subscriptions.removeConnection(connection);
+
+    Assert.assertEquals(1, subscriptions.getMetrics().getDroppedCount());
+  }
+
+  private static ArgumentMatcher<HttpResponse> isEventOf(int aid) {
+    return new ArgumentMatcher<HttpResponse>() {
+      @Override
+      public boolean matches(Object argument) {
+        ByteBuffer body = ((HttpResponse) argument).getBody().duplicate();
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8).contains("\"aid\":" + aid + ",");
+      }
+    };
+  }
+}
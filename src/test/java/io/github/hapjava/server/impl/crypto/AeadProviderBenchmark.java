@@ -0,0 +1,63 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Encrypts full 1024 byte session frames with each {@link AeadProvider}; multiply the frames per
+ * second by 1024 for the throughput. {@code JDK} needs Java 11 or later.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AeadProviderBenchmark {
+
+  private static final int FRAME_LENGTH = 1024;
+
+  @Param({"BouncyCastle", "JDK"})
+  public String provider;
+
+  private final byte[] additionalData = {0x00, 0x04};
+  private final byte[] plaintext = new byte[FRAME_LENGTH];
+  private final byte[] ciphertext = new byte[FRAME_LENGTH + 16];
+  private AeadContext context;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    byte[] key = new byte[32];
+    random.nextBytes(key);
+    random.nextBytes(plaintext);
+    AeadProvider aead =
+        "JDK".equals(provider) ? new JdkAeadProvider() : new BouncyCastleAeadProvider();
+    context = aead.newContext(key, true);
+  }
+
+  @Benchmark
+  public byte[] encryptFrame() {
+    context.encrypt(additionalData, 0, 2, plaintext, 0, FRAME_LENGTH, ciphertext, 0);
+    return ciphertext;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(AeadProviderBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
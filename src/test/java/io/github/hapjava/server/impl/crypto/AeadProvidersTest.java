@@ -0,0 +1,86 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class AeadProvidersTest {
+
+  private final AeadProvider bouncyCastle = new BouncyCastleAeadProvider();
+
+  @Test
+  public void testBouncyCastlePassesSelfTest() throws Exception {
+    AeadProviders.selfTest(bouncyCastle);
+  }
+
+  @Test
+  public void testFailingProviderIsSkipped() {
+    AeadProvider broken =
+        new BouncyCastleAeadProvider() {
+          @Override
+          public byte[] seal(byte[] key, byte[] nonce, byte[] additionalData, byte[] plaintext)
+              throws IOException {
+            byte[] sealed = super.seal(key, nonce, additionalData, plaintext);
+            sealed[0] ^= 1;
+            return sealed;
+          }
+        };
+
+    Assert.assertSame(bouncyCastle, AeadProviders.select(broken, bouncyCastle));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNoWorkingProviderIsAnError() {
+    AeadProviders.select(
+        new JdkAeadProvider() {
+          @Override
+          public AeadContext newContext(byte[] key, boolean forEncryption) {
+            throw new IllegalStateException();
+          }
+        });
+  }
+
+  @Test
+  public void testJdkMatchesBouncyCastle() throws Exception {
+    AeadProvider jdk = new JdkAeadProvider();
+    try {
+      AeadProviders.selfTest(jdk);
+    } catch (IllegalStateException e) {
+      Assume.assumeNoException("The JDK has no ChaCha20-Poly1305", e);
+    }
+
+    Random random = new Random(3);
+    byte[] key = new byte[32];
+    random.nextBytes(key);
+    AeadContext jdkEncryption = jdk.newContext(key, true);
+    AeadContext bouncyCastleEncryption = bouncyCastle.newContext(key, true);
+    AeadContext jdkDecryption = jdk.newContext(key, false);
+    for (int i = 0; i < 20; i++) {
+      byte[] plaintext = new byte[random.nextInt(1025)];
+      random.nextBytes(plaintext);
+      byte[] additionalData = {(byte) plaintext.length, (byte) (plaintext.length >>> 8)};
+      byte[] expected = new byte[plaintext.length + 16];
+      byte[] actual = new byte[plaintext.length + 16];
+
+      bouncyCastleEncryption.encrypt(
+          additionalData, 0, 2, plaintext, 0, plaintext.length, expected, 0);
+      jdkEncryption.encrypt(additionalData, 0, 2, plaintext, 0, plaintext.length, actual, 0);
+      Assert.assertArrayEquals(expected, actual);
+
+      jdkDecryption.decrypt(additionalData, 0, 2, actual, 0, plaintext.length);
+      Assert.assertArrayEquals(plaintext, Arrays.copyOf(actual, plaintext.length));
+    }
+
+    byte[] frame = new byte[4 + 16];
+    jdk.newContext(key, true).encrypt(new byte[] {4, 0}, 0, 2, frame, 0, 4, frame, 0);
+    frame[4] ^= 1;
+    try {
+      jdk.newContext(key, false).decrypt(new byte[] {4, 0}, 0, 2, frame, 0, 4);
+      Assert.fail();
+    } catch (IOException expected) {
+    }
+  }
+}
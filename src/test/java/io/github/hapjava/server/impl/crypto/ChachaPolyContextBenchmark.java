@@ -0,0 +1,68 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.util.Pack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Encrypts full 1024 byte frames with a new {@link ChachaEncoder} per frame, as sessions did, and
+ * with one {@link ChachaPolyContext}. Multiply the frames per second by 1024 for the throughput and
+ * run with {@code -prof gc} to see the bytes allocated per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChachaPolyContextBenchmark {
+
+  private static final int FRAME_LENGTH = 1024;
+
+  private final byte[] key = new byte[32];
+  private final byte[] additionalData = {0x00, 0x04};
+  private final byte[] plaintext = new byte[FRAME_LENGTH];
+  private final byte[] ciphertext = new byte[FRAME_LENGTH + 16];
+  private ChachaPolyContext context;
+  private long nonce = 0;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    random.nextBytes(key);
+    random.nextBytes(plaintext);
+    context = new ChachaPolyContext(key, true);
+  }
+
+  @Benchmark
+  public byte[] encoderPerFrame() throws IOException {
+    return new ChachaEncoder(key, Pack.longToLittleEndian(nonce++))
+        .encodeCiphertext(plaintext, additionalData);
+  }
+
+  @Benchmark
+  public byte[] reusedContext() {
+    context.encrypt(additionalData, 0, 2, plaintext, 0, FRAME_LENGTH, ciphertext, 0);
+    return ciphertext;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder().include(ChachaPolyContextBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
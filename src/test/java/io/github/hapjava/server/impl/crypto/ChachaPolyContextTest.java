@@ -0,0 +1,68 @@
+package io.github.hapjava.server.impl.crypto;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.bouncycastle.util.Pack;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChachaPolyContextTest {
+
+  private static final byte[] KEY = new byte[32];
+
+  static {
+    new Random(1).nextBytes(KEY);
+  }
+
+  @Test
+  public void testFramesMatchOneEncoderPerFrame() throws Exception {
+    ChachaPolyContext context = new ChachaPolyContext(KEY, true);
+    Random random = new Random(2);
+    for (int nonce = 0; nonce < 5; nonce++) {
+      byte[] plaintext = new byte[random.nextInt(1025)];
+      random.nextBytes(plaintext);
+      byte[] additionalData = {(byte) plaintext.length, (byte) (plaintext.length >>> 8)};
+
+      byte[] expected =
+          new ChachaEncoder(KEY, Pack.longToLittleEndian(nonce))
+              .encodeCiphertext(plaintext, additionalData);
+      byte[] actual = new byte[plaintext.length + 16];
+      context.encrypt(additionalData, 0, 2, plaintext, 0, plaintext.length, actual, 0);
+
+      Assert.assertArrayEquals(expected, actual);
+    }
+  }
+
+  @Test
+  public void testDecryptsInPlace() throws Exception {
+    ChachaPolyContext encryption = new ChachaPolyContext(KEY, true);
+    ChachaPolyContext decryption = new ChachaPolyContext(KEY, false);
+    byte[] additionalData = {7, 0};
+    for (int i = 0; i < 3; i++) {
+      byte[] plaintext = ("frame " + i).getBytes("US-ASCII");
+      byte[] buffer = new byte[4 + plaintext.length + 16];
+      encryption.encrypt(additionalData, 0, 2, plaintext, 0, plaintext.length, buffer, 4);
+
+      decryption.decrypt(additionalData, 0, 2, buffer, 4, plaintext.length);
+
+      Assert.assertArrayEquals(plaintext, Arrays.copyOfRange(buffer, 4, 4 + plaintext.length));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testTamperedAdditionalDataIsRejected() throws Exception {
+    byte[] buffer = new byte[32 + 16];
+    new ChachaPolyContext(KEY, true).encrypt(new byte[] {32, 0}, 0, 2, buffer, 0, 32, buffer, 0);
+
+    new ChachaPolyContext(KEY, false).decrypt(new byte[] {33, 0}, 0, 2, buffer, 0, 32);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testDestroyedContextCannotBeUsed() {
+    ChachaPolyContext context = new ChachaPolyContext(KEY, true);
+    context.destroy();
+
+    context.encrypt(new byte[2], 0, 2, new byte[1], 0, 1, new byte[17], 0);
+  }
+}
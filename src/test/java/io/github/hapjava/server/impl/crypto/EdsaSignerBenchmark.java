@@ -0,0 +1,66 @@
+package io.github.hapjava.server.impl.crypto;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.github.hapjava.server.HomekitAuthInfo;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Signs the material of one pair-verify with a signer created for the handshake, as every handshake
+ * used to, and with the signer of the {@link EdsaSigningService}. Run with {@code -prof gc} to
+ * compare the allocations as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EdsaSignerBenchmark {
+
+  private final byte[] privateKey = new byte[32];
+  /** Both public keys and the accessory identifier, as in M2 of pair-verify. */
+  private final byte[] material = new byte[32 + 17 + 32];
+
+  private EdsaSigningService service;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    random.nextBytes(privateKey);
+    random.nextBytes(material);
+    HomekitAuthInfo authInfo = mock(HomekitAuthInfo.class);
+    when(authInfo.getPrivateKey()).thenReturn(privateKey);
+    service = EdsaSigningService.forAuthInfo(authInfo);
+  }
+
+  @Benchmark
+  public byte[] newSigner() throws Exception {
+    return new EdsaSigner(privateKey).sign(material);
+  }
+
+  @Benchmark
+  public byte[] signingService() throws Exception {
+    return service.getSigner().sign(material);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(EdsaSignerBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,66 @@
+package io.github.hapjava.server.impl.crypto;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.github.hapjava.server.HomekitAuthInfo;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EdsaSigningServiceTest {
+
+  private static final byte[] MATERIAL = "PV-Msg02 material".getBytes(StandardCharsets.UTF_8);
+
+  private final byte[] firstKey = key(1);
+  private final byte[] secondKey = key(2);
+  private HomekitAuthInfo authInfo;
+
+  @Before
+  public void setup() {
+    authInfo = mock(HomekitAuthInfo.class);
+    when(authInfo.getPrivateKey()).thenReturn(firstKey.clone());
+  }
+
+  @Test
+  public void testSignaturesMatchANewSigner() throws Exception {
+    EdsaSigner expected = new EdsaSigner(firstKey);
+    EdsaSigner signer = EdsaSigningService.forAuthInfo(authInfo).getSigner();
+
+    Assert.assertArrayEquals(expected.getPublicKey(), signer.getPublicKey());
+    Assert.assertArrayEquals(expected.sign(MATERIAL), signer.sign(MATERIAL));
+    Assert.assertTrue(
+        new EdsaVerifier(signer.getPublicKey()).verify(MATERIAL, signer.sign(MATERIAL)));
+  }
+
+  @Test
+  public void testSignerIsSharedPerAuthInfo() {
+    EdsaSigner signer = EdsaSigningService.forAuthInfo(authInfo).getSigner();
+
+    Assert.assertSame(signer, EdsaSigningService.forAuthInfo(authInfo).getSigner());
+    HomekitAuthInfo other = mock(HomekitAuthInfo.class);
+    when(other.getPrivateKey()).thenReturn(firstKey.clone());
+    Assert.assertNotSame(signer, EdsaSigningService.forAuthInfo(other).getSigner());
+  }
+
+  @Test
+  public void testChangedPrivateKeyIsPickedUp() throws Exception {
+    EdsaSigningService service = EdsaSigningService.forAuthInfo(authInfo);
+    EdsaSigner first = service.getSigner();
+
+    when(authInfo.getPrivateKey()).thenReturn(secondKey.clone());
+    EdsaSigner second = service.getSigner();
+
+    Assert.assertNotSame(first, second);
+    Assert.assertArrayEquals(new EdsaSigner(secondKey).getPublicKey(), second.getPublicKey());
+    Assert.assertArrayEquals(new EdsaSigner(secondKey).sign(MATERIAL), second.sign(MATERIAL));
+  }
+
+  private static byte[] key(int fill) {
+    byte[] key = new byte[32];
+    Arrays.fill(key, (byte) fill);
+    return key;
+  }
+}
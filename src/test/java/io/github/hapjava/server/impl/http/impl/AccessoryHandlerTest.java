@@ -0,0 +1,314 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import static org.mockito.Mockito.mock;
+
+import io.github.hapjava.server.impl.http.HomekitClientConnection;
+import io.github.hapjava.server.impl.http.HttpRequest;
+import io.github.hapjava.server.impl.http.HttpResponse;
+import io.github.hapjava.server.impl.responses.OkResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.Timer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccessoryHandlerTest {
+
+  private final Map<String, CompletableFuture<HttpResponse>> responses = new HashMap<>();
+  private final ServerMetrics metrics = new ServerMetrics();
+  private final ServerSettings settings = new ServerSettings();
+  private CompletableFuture<Void> eventsDrained = CompletableFuture.completedFuture(null);
+  private boolean closed = false;
+  private int handshakeSteps = 0;
+  private Executor requestExecutor = Runnable::run;
+  private EmbeddedChannel channel;
+
+  @Before
+  public void setup() {
+    channel = new EmbeddedChannel();
+    channel.pipeline().addLast(ServerInitializer.HTTP_HANDLER_NAME, new HomekitResponseEncoder());
+    channel.pipeline().addLast(new HomekitRequestDecoder());
+    channel
+        .pipeline()
+        .addLast(
+            new AccessoryHandler(
+                callback -> new StubConnection(),
+                task -> requestExecutor.execute(task),
+                task -> {
+                  handshakeSteps++;
+                  task.run();
+                },
+                settings,
+                metrics,
+                new ControllerRateLimiter(settings),
+                new ReconnectAdmission(settings, metrics, mock(Timer.class))));
+    // the channel was already active before the handlers were added
+    channel.pipeline().fireChannelActive();
+  }
+
+  @Test
+  public void testPipelinedResponsesAreWrittenInRequestOrder() {
+    responses.put("/characteristics?id=1.1", new CompletableFuture<>());
+    responses.put("/characteristics?id=2.1", new CompletableFuture<>());
+    channel.writeInbound(
+        Unpooled.copiedBuffer(
+            "GET /characteristics?id=1.1 HTTP/1.1\r\n\r\n"
+                + "GET /characteristics?id=2.1 HTTP/1.1\r\n\r\n",
+            StandardCharsets.US_ASCII));
+    channel.runPendingTasks();
+
+    // both requests have been started although the first has not been answered yet
+    Assert.assertEquals(2, responses.size());
+
+    responses.get("/characteristics?id=2.1").complete(new OkResponse(bytes("second")));
+    channel.runPendingTasks();
+    Assert.assertNull(channel.readOutbound());
+
+    responses.get("/characteristics?id=1.1").complete(new OkResponse(bytes("first")));
+    channel.runPendingTasks();
+    Assert.assertTrue(readOutbound().endsWith("first"));
+    Assert.assertTrue(readOutbound().endsWith("second"));
+  }
+
+  @Test
+  public void testConcurrentRequestsPerConnectionAreCapped() {
+    settings.setMaxConcurrentRequestsPerConnection(1);
+    responses.put("/characteristics?id=1.1", new CompletableFuture<>());
+    channel.writeInbound(
+        Unpooled.copiedBuffer(
+            "GET /characteristics?id=1.1 HTTP/1.1\r\n\r\n"
+                + "GET /characteristics?id=2.1 HTTP/1.1\r\n\r\n",
+            StandardCharsets.US_ASCII));
+    channel.runPendingTasks();
+
+    Assert.assertEquals(1, responses.size());
+    Assert.assertEquals(
+        Integer.valueOf(1), metrics.getConnectionQueueDepths().get(channel.remoteAddress()));
+
+    responses.get("/characteristics?id=1.1").complete(new OkResponse(bytes("first")));
+    channel.runPendingTasks();
+    Assert.assertEquals(2, responses.size());
+    Assert.assertEquals(
+        Integer.valueOf(0), metrics.getConnectionQueueDepths().get(channel.remoteAddress()));
+  }
+
+  @Test
+  public void testFullQueueStopsReading() {
+    settings.setMaxConcurrentRequestsPerConnection(1);
+    settings.setMaxQueuedRequestsPerConnection(2);
+    responses.put("/characteristics?id=1.1", new CompletableFuture<>());
+    channel.writeInbound(
+        Unpooled.copiedBuffer(
+            "GET /characteristics?id=1.1 HTTP/1.1\r\n\r\n"
+                + "GET /characteristics?id=2.1 HTTP/1.1\r\n\r\n"
+                + "GET /characteristics?id=3.1 HTTP/1.1\r\n\r\n",
+            StandardCharsets.US_ASCII));
+    channel.runPendingTasks();
+    Assert.assertFalse(channel.config().isAutoRead());
+
+    responses.get("/characteristics?id=1.1").complete(new OkResponse(bytes("first")));
+    channel.runPendingTasks();
+    Assert.assertTrue(channel.config().isAutoRead());
+  }
+
+  @Test
+  public void testHandshakesRunOnTheHandshakeExecutor() {
+    channel.writeInbound(
+        Unpooled.copiedBuffer(
+            "POST /pair-verify HTTP/1.1\r\nContent-Length: 0\r\n\r\n"
+                + "GET /accessories HTTP/1.1\r\n\r\n",
+            StandardCharsets.US_ASCII));
+    channel.runPendingTasks();
+
+    Assert.assertEquals(2, responses.size());
+    Assert.assertEquals(1, handshakeSteps);
+  }
+
+  @Test
+  public void testRequestsNotAdmittedAreAnsweredWith503InOrder() {
+    settings.setReconnectAdmission(1, 1, 0, TimeUnit.SECONDS);
+    responses.put("/accessories", new CompletableFuture<>());
+    channel.writeInbound(
+        Unpooled.copiedBuffer(
+            "GET /accessories HTTP/1.1\r\n\r\n"
+                + "GET /accessories HTTP/1.1\r\n\r\n"
+                + "GET /characteristics?id=1.1 HTTP/1.1\r\n\r\n",
+            StandardCharsets.US_ASCII));
+    channel.runPendingTasks();
+
+    Assert.assertEquals(2, responses.size());
+    Assert.assertNull(channel.readOutbound());
+    responses.get("/accessories").complete(new OkResponse(bytes("listing")));
+    channel.runPendingTasks();
+    Assert.assertTrue(readOutbound().endsWith("listing"));
+    Assert.assertTrue(readOutbound().startsWith("HTTP/1.1 503 "));
+    Assert.assertEquals(1, metrics.getAdmissionRejectedCount());
+  }
+
+  @Test
+  public void testRequestsAreAnsweredWith503WhileTheExecutorIsFull() throws Exception {
+    RequestExecutor executor = new RequestExecutor(1, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch busy = new CountDownLatch(1);
+    executor.execute(
+        () -> {
+          busy.countDown();
+          awaitUninterruptibly(release);
+        });
+    busy.await();
+    executor.execute(() -> awaitUninterruptibly(release));
+    requestExecutor = executor;
+    try {
+      channel.writeInbound(
+          Unpooled.copiedBuffer(
+              "GET /characteristics?id=1.1 HTTP/1.1\r\n\r\n", StandardCharsets.US_ASCII));
+      channel.runPendingTasks();
+
+      Assert.assertTrue(readOutbound().startsWith("HTTP/1.1 503 "));
+      Assert.assertEquals(1, executor.getRejectedCount());
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+
+    // the connection keeps working once the executor has room again
+    requestExecutor = Runnable::run;
+    responses.put(
+        "/characteristics?id=2.1", CompletableFuture.completedFuture(new OkResponse(bytes("ok"))));
+    channel.writeInbound(
+        Unpooled.copiedBuffer(
+            "GET /characteristics?id=2.1 HTTP/1.1\r\n\r\n", StandardCharsets.US_ASCII));
+    channel.runPendingTasks();
+    Assert.assertTrue(readOutbound().endsWith("ok"));
+    Assert.assertTrue(channel.isOpen());
+    Assert.assertTrue(channel.config().isAutoRead());
+  }
+
+  @Test
+  public void testFailedStageIsAnsweredWith500() {
+    CompletableFuture<HttpResponse> failed = new CompletableFuture<>();
+    responses.put("/accessories", failed);
+    channel.writeInbound(
+        Unpooled.copiedBuffer("GET /accessories HTTP/1.1\r\n\r\n", StandardCharsets.US_ASCII));
+    channel.runPendingTasks();
+
+    failed.completeExceptionally(new IllegalStateException());
+    channel.runPendingTasks();
+    Assert.assertTrue(readOutbound().startsWith("HTTP/1.1 500 "));
+  }
+
+  @Test
+  public void testDrainedConnectionClosesAfterInFlightResponse() {
+    responses.put("/accessories", new CompletableFuture<>());
+    channel.writeInbound(
+        Unpooled.copiedBuffer("GET /accessories HTTP/1.1\r\n\r\n", StandardCharsets.US_ASCII));
+    channel.runPendingTasks();
+
+    channel.pipeline().fireUserEventTriggered(AccessoryHandler.DrainEvent.INSTANCE);
+    Assert.assertTrue(channel.isOpen());
+
+    responses.get("/accessories").complete(new OkResponse(bytes("listing")));
+    channel.runPendingTasks();
+    Assert.assertTrue(readOutbound().endsWith("listing"));
+    Assert.assertFalse(channel.isOpen());
+  }
+
+  @Test
+  public void testDrainedConnectionClosesAfterHeldBackEvents() {
+    eventsDrained = new CompletableFuture<>();
+    channel.pipeline().fireUserEventTriggered(AccessoryHandler.DrainEvent.INSTANCE);
+    channel.runPendingTasks();
+    Assert.assertTrue(channel.isOpen());
+
+    eventsDrained.complete(null);
+    channel.runPendingTasks();
+    Assert.assertFalse(channel.isOpen());
+  }
+
+  @Test
+  public void testIdleConnectionIsReaped() {
+    channel.pipeline().fireUserEventTriggered(IdleStateEvent.ALL_IDLE_STATE_EVENT);
+
+    Assert.assertFalse(channel.isOpen());
+    Assert.assertTrue(closed);
+    Assert.assertEquals(1, metrics.getReapedConnectionCount());
+    Assert.assertTrue(metrics.getConnectionQueueDepths().isEmpty());
+  }
+
+  private String readOutbound() {
+    ByteBuf buf = channel.readOutbound();
+    try {
+      return buf.toString(StandardCharsets.US_ASCII);
+    } finally {
+      buf.release();
+    }
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private class StubConnection implements HomekitClientConnection {
+
+    @Override
+    public CompletionStage<HttpResponse> handleRequest(HttpRequest request) {
+      return responses.computeIfAbsent(request.getUri(), uri -> new CompletableFuture<>());
+    }
+
+    @Override
+    public void decryptRequest(ByteBuffer frame) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void encryptResponse(ByteBuffer plaintext, ByteBuffer ciphertext) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int encryptedLength(int plaintextLength) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public void outOfBand(HttpResponse message) {}
+
+    @Override
+    public boolean isWritable() {
+      return true;
+    }
+
+    @Override
+    public void writabilityChanged(boolean writable) {}
+
+    @Override
+    public CompletionStage<Void> drain() {
+      return eventsDrained;
+    }
+  }
+}
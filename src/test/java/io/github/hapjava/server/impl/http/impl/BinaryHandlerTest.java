@@ -0,0 +1,179 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.http.HomekitClientConnection;
+import io.github.hapjava.server.impl.http.HttpRequest;
+import io.github.hapjava.server.impl.http.HttpResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinaryHandlerTest {
+
+  private CountingAllocator allocator;
+  private EmbeddedChannel channel;
+
+  @Before
+  public void setup() {
+    allocator = new CountingAllocator();
+    channel = new EmbeddedChannel();
+    channel.config().setAllocator(allocator);
+    channel.pipeline().addLast(new BinaryHandler(new FramingConnection()));
+    channel.pipeline().addLast(new HomekitResponseEncoder());
+    // the first inbound message switches the handler to encrypted mode
+    channel.writeInbound(Unpooled.wrappedBuffer(new byte[0]));
+    allocator.allocations = 0;
+  }
+
+  @Test
+  public void testLargeListingUsesOnePlaintextAndOneCiphertextBuffer() throws Exception {
+    byte[] body = new byte[200 * 1024];
+    Arrays.fill(body, (byte) 'a');
+
+    channel.writeOutbound(response(HttpResponse.HttpVersion.HTTP_1_1, body));
+
+    Assert.assertTrue(
+        "Expected at most 2 buffer allocations but saw " + allocator.allocations,
+        allocator.allocations <= 2);
+    String plaintext = readFrames();
+    Assert.assertTrue(plaintext.startsWith("HTTP/1.1 200 OK\r\n"));
+    Assert.assertTrue(plaintext.endsWith("\r\n\r\n" + new String(body, StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testEventUsesOnePlaintextAndOneCiphertextBuffer() throws Exception {
+    byte[] body =
+        "{\"characteristics\":[{\"aid\":2,\"iid\":10,\"value\":true}]}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    channel.writeOutbound(response(HttpResponse.HttpVersion.EVENT_1_0, body));
+
+    Assert.assertTrue(
+        "Expected at most 2 buffer allocations but saw " + allocator.allocations,
+        allocator.allocations <= 2);
+    String plaintext = readFrames();
+    Assert.assertTrue(plaintext.startsWith("EVENT/1.0 200 OK\r\n"));
+    Assert.assertTrue(plaintext.endsWith(new String(body, StandardCharsets.UTF_8)));
+  }
+
+  /** Reads the single outbound buffer and strips the framing added by {@link FramingConnection}. */
+  private String readFrames() {
+    ByteBuf ciphertext = channel.readOutbound();
+    Assert.assertNull("Response was split into several writes", channel.readOutbound());
+    ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+    while (ciphertext.isReadable()) {
+      int length = ciphertext.readUnsignedShortLE();
+      byte[] frame = new byte[length];
+      ciphertext.readBytes(frame);
+      ciphertext.skipBytes(16);
+      plaintext.write(frame, 0, length);
+    }
+    ciphertext.release();
+    return new String(plaintext.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static HttpResponse response(HttpResponse.HttpVersion version, byte[] body) {
+    return new HttpResponse() {
+      @Override
+      public int getStatusCode() {
+        return 200;
+      }
+
+      @Override
+      public ByteBuffer getBody() {
+        return ByteBuffer.wrap(body);
+      }
+
+      @Override
+      public HttpVersion getVersion() {
+        return version;
+      }
+
+      @Override
+      public Map<String, String> getHeaders() {
+        return Collections.singletonMap("Content-type", "application/hap+json");
+      }
+    };
+  }
+
+  /** Frames like a real session, but leaves the payload in the clear and uses an empty tag. */
+  private static class FramingConnection implements HomekitClientConnection {
+
+    @Override
+    public CompletionStage<HttpResponse> handleRequest(HttpRequest request) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void decryptRequest(ByteBuffer frame) {}
+
+    @Override
+    public void encryptResponse(ByteBuffer plaintext, ByteBuffer ciphertext) {
+      while (plaintext.hasRemaining()) {
+        int length = Math.min(plaintext.remaining(), 0x400);
+        ciphertext.put((byte) length).put((byte) (length >>> 8));
+        ByteBuffer frame = plaintext.slice();
+        frame.limit(length);
+        ciphertext.put(frame);
+        plaintext.position(plaintext.position() + length);
+        ciphertext.put(new byte[16]);
+      }
+    }
+
+    @Override
+    public int encryptedLength(int plaintextLength) {
+      return plaintextLength + (plaintextLength + 0x3FF) / 0x400 * 18;
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void outOfBand(HttpResponse message) {}
+
+    @Override
+    public boolean isWritable() {
+      return true;
+    }
+
+    @Override
+    public void writabilityChanged(boolean writable) {}
+
+    @Override
+    public CompletionStage<Void> drain() {
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+
+  private static class CountingAllocator extends PooledByteBufAllocator {
+
+    private int allocations;
+
+    CountingAllocator() {
+      super(true);
+    }
+
+    @Override
+    protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+      allocations++;
+      return super.newHeapBuffer(initialCapacity, maxCapacity);
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+      allocations++;
+      return super.newDirectBuffer(initialCapacity, maxCapacity);
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ControllerRateLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final ServerSettings settings = new ServerSettings();
+  private final ControllerRateLimiter limiter = new ControllerRateLimiter(settings);
+  private InetAddress dashboard;
+  private InetAddress phone;
+
+  @Before
+  public void setup() throws Exception {
+    dashboard = InetAddress.getByName("192.0.2.10");
+    phone = InetAddress.getByName("192.0.2.11");
+    limiter.register(dashboard);
+    limiter.register(phone);
+  }
+
+  @Test
+  public void testUnlimitedByDefault() {
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(0, limiter.tryAcquire(dashboard, 0));
+    }
+  }
+
+  @Test
+  public void testBurstThenSustainedRate() {
+    settings.setControllerRequestRate(10, 2);
+
+    Assert.assertEquals(0, limiter.tryAcquire(dashboard, 0));
+    Assert.assertEquals(0, limiter.tryAcquire(dashboard, 0));
+    Assert.assertEquals(SECOND / 10, limiter.tryAcquire(dashboard, 0));
+    Assert.assertEquals(0, limiter.tryAcquire(dashboard, SECOND / 10));
+  }
+
+  @Test
+  public void testControllersAreLimitedIndependently() {
+    settings.setControllerRequestRate(1, 1);
+
+    Assert.assertEquals(0, limiter.tryAcquire(dashboard, 0));
+    Assert.assertTrue(limiter.tryAcquire(dashboard, 0) > 0);
+    Assert.assertEquals(0, limiter.tryAcquire(phone, 0));
+  }
+
+  @Test
+  public void testBucketIsSharedUntilLastConnectionCloses() {
+    settings.setControllerRequestRate(1, 1);
+    limiter.register(dashboard);
+
+    Assert.assertEquals(0, limiter.tryAcquire(dashboard, 0));
+    limiter.unregister(dashboard);
+    Assert.assertTrue(limiter.tryAcquire(dashboard, 0) > 0);
+    limiter.unregister(dashboard);
+    Assert.assertEquals(0, limiter.tryAcquire(dashboard, 0));
+  }
+}
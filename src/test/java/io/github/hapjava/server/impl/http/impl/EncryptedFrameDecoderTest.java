@@ -0,0 +1,173 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.crypto.AeadContext;
+import io.github.hapjava.server.impl.crypto.AeadProviders;
+import io.github.hapjava.server.impl.http.HomekitClientConnection;
+import io.github.hapjava.server.impl.http.HttpRequest;
+import io.github.hapjava.server.impl.http.HttpResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EncryptedFrameDecoderTest {
+
+  private static final byte[] KEY = new byte[32];
+
+  static {
+    Arrays.fill(KEY, (byte) 7);
+  }
+
+  private EmbeddedChannel channel;
+  private AeadContext outbound;
+
+  @Before
+  public void setup() {
+    channel = new EmbeddedChannel(new EncryptedFrameDecoder(new DecryptingConnection()));
+    outbound = AeadProviders.getDefault().newContext(KEY, true);
+  }
+
+  @Test
+  public void testArbitrarySegmentationYieldsThePlaintext() throws Exception {
+    Random random = new Random(0x5eed);
+    for (int run = 0; run < 200; run++) {
+      setup();
+      ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+      ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+      int frames = 1 + random.nextInt(8);
+      for (int i = 0; i < frames; i++) {
+        byte[] frame = new byte[random.nextInt(EncryptedFrameDecoder.MAX_FRAME_LENGTH + 1)];
+        random.nextBytes(frame);
+        plaintext.write(frame);
+        ciphertext.write(encrypt(frame));
+      }
+
+      byte[] stream = ciphertext.toByteArray();
+      for (int pos = 0; pos < stream.length; ) {
+        // mostly small segments, so that lengths and tags are split as well
+        int segment =
+            Math.min(stream.length - pos, 1 + random.nextInt(random.nextBoolean() ? 3 : 1500));
+        channel.writeInbound(Unpooled.wrappedBuffer(stream, pos, segment));
+        pos += segment;
+      }
+
+      Assert.assertArrayEquals("run " + run, plaintext.toByteArray(), readInbound());
+    }
+  }
+
+  @Test
+  public void testFramesInOneSegmentAreAllDecoded() throws Exception {
+    byte[] first = "GET /accessories HTTP/1.1\r\n\r\n".getBytes("US-ASCII");
+    byte[] second = "GET /characteristics?id=1.1 HTTP/1.1\r\n\r\n".getBytes("US-ASCII");
+    ByteBuf stream = Unpooled.wrappedBuffer(encrypt(first), encrypt(second));
+
+    channel.writeInbound(stream);
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    expected.write(first);
+    expected.write(second);
+    Assert.assertArrayEquals(expected.toByteArray(), readInbound());
+  }
+
+  @Test
+  public void testTamperedFrameIsRejected() throws Exception {
+    byte[] frame = encrypt("GET /accessories HTTP/1.1\r\n\r\n".getBytes("US-ASCII"));
+    frame[5] ^= 1;
+
+    try {
+      channel.writeInbound(Unpooled.wrappedBuffer(frame));
+      Assert.fail();
+    } catch (DecoderException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+    Assert.assertNull(channel.readInbound());
+  }
+
+  @Test(expected = CorruptedFrameException.class)
+  public void testOversizedFrameIsRejected() {
+    channel.writeInbound(Unpooled.wrappedBuffer(new byte[] {0x01, 0x04}));
+  }
+
+  private byte[] readInbound() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteBuf buf;
+    while ((buf = channel.readInbound()) != null) {
+      byte[] bytes = new byte[buf.readableBytes()];
+      buf.readBytes(bytes);
+      buf.release();
+      out.write(bytes, 0, bytes.length);
+    }
+    return out.toByteArray();
+  }
+
+  private byte[] encrypt(byte[] plaintext) throws IOException {
+    byte[] additionalData = {(byte) plaintext.length, (byte) (plaintext.length >>> 8)};
+    byte[] frame = new byte[2 + plaintext.length + 16];
+    System.arraycopy(additionalData, 0, frame, 0, 2);
+    outbound.encrypt(additionalData, 0, 2, plaintext, 0, plaintext.length, frame, 2);
+    return frame;
+  }
+
+  /** Decrypts like an upgraded session whose read key is {@link #KEY}. */
+  private static class DecryptingConnection implements HomekitClientConnection {
+
+    private final AeadContext inbound = AeadProviders.getDefault().newContext(KEY, false);
+
+    @Override
+    public void decryptRequest(ByteBuffer frame) throws IOException {
+      int length = frame.remaining() - 16;
+      inbound.decrypt(
+          new byte[] {(byte) length, (byte) (length >>> 8)},
+          0,
+          2,
+          frame.array(),
+          frame.arrayOffset() + frame.position(),
+          length);
+    }
+
+    @Override
+    public CompletionStage<HttpResponse> handleRequest(HttpRequest request) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void encryptResponse(ByteBuffer plaintext, ByteBuffer ciphertext) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int encryptedLength(int plaintextLength) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void outOfBand(HttpResponse message) {}
+
+    @Override
+    public boolean isWritable() {
+      return true;
+    }
+
+    @Override
+    public void writabilityChanged(boolean writable) {}
+
+    @Override
+    public CompletionStage<Void> drain() {
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Sends a burst of events, as a scene changing many accessories does, to every connected controller
+ * the way out-of-band events are sent: one {@code writeAndFlush} per event from a thread outside
+ * the event loop. The operation completes once every controller has received the whole burst, so
+ * the sampled times include the p99 burst latency. The number of flushes that reached the socket,
+ * each of which is one write system call, is reported per event as the {@code
+ * socketFlushesPerEvent} counter of the average time results, since JMH reports such counters only
+ * in that mode and in throughput mode.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.github.hapjava.server.impl.http.impl.EventBurstBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SampleTime, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EventBurstBenchmark {
+
+  private static final byte[] EVENT =
+      ("EVENT/1.0 200 OK\r\nContent-type: application/hap+json\r\nContent-Length: 55\r\n\r\n"
+              + "{\"characteristics\":[{\"aid\":2,\"iid\":10,\"value\":true}]}")
+          .getBytes(StandardCharsets.UTF_8);
+
+  @Param({"0", "256"})
+  public int explicitFlushAfterFlushes;
+
+  @Param({"40"})
+  public int burst;
+
+  @Param({"16"})
+  public int connections;
+
+  private final LongAdder socketFlushes = new LongAdder();
+  private EventLoopGroup serverGroup;
+  private EventLoopGroup clientGroup;
+  private Channel serverChannel;
+  private ChannelGroup controllers;
+  private ByteBuf event;
+  private volatile CountDownLatch delivered;
+  private long events;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    Transport transport = Transport.AUTO.resolve();
+    ServerSettings settings = new ServerSettings();
+    settings.setExplicitFlushAfterFlushes(explicitFlushAfterFlushes);
+    serverGroup = transport.newEventLoopGroup(0, new DefaultThreadFactory("bench-server"));
+    clientGroup = transport.newEventLoopGroup(0, new DefaultThreadFactory("bench-client"));
+    controllers = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    event = Unpooled.unreleasableBuffer(Unpooled.directBuffer(EVENT.length).writeBytes(EVENT));
+
+    serverChannel =
+        new ServerBootstrap()
+            .group(serverGroup)
+            .channel(transport.serverChannelClass())
+            .childHandler(
+                new ChannelInitializer<Channel>() {
+                  @Override
+                  protected void initChannel(Channel ch) {
+                    ch.pipeline().addLast(new FlushCounter());
+                    if (explicitFlushAfterFlushes > 0) {
+                      ch.pipeline().addLast(settings.newFlushConsolidationHandler());
+                    }
+                    controllers.add(ch);
+                  }
+                })
+            .bind(InetAddress.getLoopbackAddress(), 0)
+            .sync()
+            .channel();
+
+    Bootstrap client =
+        new Bootstrap()
+            .group(clientGroup)
+            .channel(
+                transport == Transport.EPOLL ? EpollSocketChannel.class : NioSocketChannel.class)
+            .handler(
+                new ChannelInitializer<Channel>() {
+                  @Override
+                  protected void initChannel(Channel ch) {
+                    ch.pipeline().addLast(new Controller());
+                  }
+                });
+    InetSocketAddress address = (InetSocketAddress) serverChannel.localAddress();
+    for (int i = 0; i < connections; i++) {
+      client.connect(address).sync();
+    }
+    while (controllers.size() < connections) {
+      Thread.sleep(1);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void startIteration() {
+    events = 0;
+    socketFlushes.reset();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    controllers.close().sync();
+    serverChannel.close().sync();
+    clientGroup.shutdownGracefully().sync();
+    serverGroup.shutdownGracefully().sync();
+  }
+
+  @Benchmark
+  public void burst(SocketFlushes flushes) throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(connections * burst);
+    delivered = latch;
+    for (int i = 0; i < burst; i++) {
+      for (Channel controller : controllers) {
+        controller.writeAndFlush(event.duplicate());
+      }
+    }
+    latch.await();
+    events += burst;
+  }
+
+  /** Socket flushes per delivered event of each iteration, reported by JMH with the latency. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class SocketFlushes {
+
+    public double socketFlushesPerEvent;
+
+    @TearDown(Level.Iteration)
+    public void endIteration(EventBurstBenchmark benchmark) {
+      if (benchmark.events > 0) {
+        socketFlushesPerEvent =
+            benchmark.socketFlushes.sum() / (double) (benchmark.events * benchmark.connections);
+      }
+    }
+  }
+
+  /** Sits next to the socket and counts the flushes that reach it. */
+  private class FlushCounter extends ChannelOutboundHandlerAdapter {
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+      socketFlushes.increment();
+      ctx.flush();
+    }
+  }
+
+  private class Controller extends ChannelInboundHandlerAdapter {
+
+    private int received;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      ByteBuf buf = (ByteBuf) msg;
+      received += buf.readableBytes();
+      buf.release();
+      while (received >= EVENT.length) {
+        received -= EVENT.length;
+        delivered.countDown();
+      }
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(EventBurstBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
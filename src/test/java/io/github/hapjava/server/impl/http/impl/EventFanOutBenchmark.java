@@ -0,0 +1,208 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares event fan-out across {@link Transport}s: one EVENT/1.0 message is written to every
+ * connected controller and the operation completes once all of them have received it. The reported
+ * time is the fan-out latency; the server-side CPU time spent per delivered event is reported as
+ * the {@code serverCpuMicrosPerEvent} counter of the average time results, since JMH reports such
+ * counters only in that mode and in throughput mode.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.github.hapjava.server.impl.http.impl.EventFanOutBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SampleTime, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EventFanOutBenchmark {
+
+  private static final byte[] EVENT =
+      ("EVENT/1.0 200 OK\r\nContent-type: application/hap+json\r\nContent-Length: 55\r\n\r\n"
+              + "{\"characteristics\":[{\"aid\":2,\"iid\":10,\"value\":true}]}")
+          .getBytes(StandardCharsets.UTF_8);
+
+  private static final String SERVER_THREAD_PREFIX = "bench-server";
+
+  @Param({"NIO", "EPOLL"})
+  public Transport transport;
+
+  @Param({"32", "256"})
+  public int connections;
+
+  private EventLoopGroup serverGroup;
+  private EventLoopGroup clientGroup;
+  private Channel serverChannel;
+  private ChannelGroup controllers;
+  private ByteBuf event;
+  private volatile CountDownLatch delivered;
+
+  private long events;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    serverGroup = transport.newEventLoopGroup(0, new DefaultThreadFactory(SERVER_THREAD_PREFIX));
+    clientGroup = transport.newEventLoopGroup(0, new DefaultThreadFactory("bench-client"));
+    controllers = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    event = Unpooled.unreleasableBuffer(Unpooled.directBuffer(EVENT.length).writeBytes(EVENT));
+
+    serverChannel =
+        new ServerBootstrap()
+            .group(serverGroup)
+            .channel(transport.serverChannelClass())
+            .childHandler(
+                new ChannelInitializer<Channel>() {
+                  @Override
+                  protected void initChannel(Channel ch) {
+                    controllers.add(ch);
+                  }
+                })
+            .bind(InetAddress.getLoopbackAddress(), 0)
+            .sync()
+            .channel();
+
+    Bootstrap client =
+        new Bootstrap()
+            .group(clientGroup)
+            .channel(
+                transport.resolve() == Transport.EPOLL
+                    ? EpollSocketChannel.class
+                    : NioSocketChannel.class)
+            .handler(
+                new ChannelInitializer<Channel>() {
+                  @Override
+                  protected void initChannel(Channel ch) {
+                    ch.pipeline().addLast(new Controller());
+                  }
+                });
+    InetSocketAddress address = (InetSocketAddress) serverChannel.localAddress();
+    for (int i = 0; i < connections; i++) {
+      client.connect(address).sync();
+    }
+    while (controllers.size() < connections) {
+      Thread.sleep(1);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void startIteration() {
+    events = 0;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    controllers.close().sync();
+    serverChannel.close().sync();
+    clientGroup.shutdownGracefully().sync();
+    serverGroup.shutdownGracefully().sync();
+  }
+
+  @Benchmark
+  public void fanOut(ServerCpu serverCpu) throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(connections);
+    delivered = latch;
+    controllers.writeAndFlush(event.duplicate());
+    latch.await();
+    events++;
+  }
+
+  /** Server CPU time per delivered event of each iteration, reported by JMH with the latency. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class ServerCpu {
+
+    public double serverCpuMicrosPerEvent;
+
+    private long cpuAtIterationStart;
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+      serverCpuMicrosPerEvent = 0;
+      cpuAtIterationStart = serverCpuTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration(EventFanOutBenchmark benchmark) {
+      long cpu = serverCpuTime() - cpuAtIterationStart;
+      if (benchmark.events > 0) {
+        serverCpuMicrosPerEvent = cpu / 1000.0 / (benchmark.events * benchmark.connections);
+      }
+    }
+  }
+
+  private static long serverCpuTime() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    long total = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith(SERVER_THREAD_PREFIX)) {
+        long cpu = threads.getThreadCpuTime(thread.getId());
+        if (cpu > 0) {
+          total += cpu;
+        }
+      }
+    }
+    return total;
+  }
+
+  private class Controller extends ChannelInboundHandlerAdapter {
+
+    private int received;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      ByteBuf buf = (ByteBuf) msg;
+      received += buf.readableBytes();
+      buf.release();
+      while (received >= EVENT.length) {
+        received -= EVENT.length;
+        delivered.countDown();
+      }
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(EventFanOutBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,83 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Reads 1000 accessories at once whose backend takes {@link #LATENCY_MILLIS} to answer, the way
+ * {@code supplyValue} blocks on a slow future, and reports the reads per second the {@link
+ * RequestExecutor} achieves with the default number of platform threads and with virtual threads.
+ *
+ * <p>{@code VIRTUAL} needs Java 21 and the classes of {@code META-INF/versions/21}, so run the
+ * benchmark on Java 21 with the multi-release jar on the class path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HandlerExecutionBenchmark {
+
+  private static final int ACCESSORIES = 1000;
+  private static final long LATENCY_MILLIS = 20;
+
+  @Param({"PLATFORM", "VIRTUAL"})
+  public HandlerExecution execution;
+
+  private RequestExecutor executor;
+
+  @Setup
+  public void setup() {
+    executor =
+        new RequestExecutor(
+            execution,
+            Runtime.getRuntime().availableProcessors(),
+            RequestExecutor.DEFAULT_QUEUE_CAPACITY);
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ACCESSORIES)
+  public void readSlowAccessories() throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(ACCESSORIES);
+    for (int i = 0; i < ACCESSORIES; i++) {
+      executor.execute(
+          () -> {
+            try {
+              Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            done.countDown();
+          });
+    }
+    done.await();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder().include(HandlerExecutionBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
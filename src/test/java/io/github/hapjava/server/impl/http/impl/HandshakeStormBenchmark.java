@@ -0,0 +1,98 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.crypto.EdsaSigner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Starts {@link #CONTROLLERS} handshakes at once, each signing like pair-verify does, followed by
+ * one characteristic read, and reports how long the read takes to be answered when the handshakes
+ * share the handler threads and when they run on the handshake executor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HandshakeStormBenchmark {
+
+  private static final int CONTROLLERS = 30;
+
+  @Param({"false", "true"})
+  public boolean dedicated;
+
+  private final byte[] material = new byte[32 + 17 + 32];
+  private final EdsaSigner signer = new EdsaSigner(new byte[32]);
+  private RequestExecutor requestExecutor;
+  private RequestExecutor handshakeExecutor;
+  private CountDownLatch handshakes;
+
+  @Setup
+  public void setup() {
+    int threads = Runtime.getRuntime().availableProcessors();
+    requestExecutor =
+        new RequestExecutor(
+            HandlerExecution.PLATFORM, threads, RequestExecutor.DEFAULT_QUEUE_CAPACITY);
+    handshakeExecutor =
+        new RequestExecutor(
+            HandlerExecution.PLATFORM,
+            "homekit-handshake",
+            threads,
+            RequestExecutor.DEFAULT_HANDSHAKE_QUEUE_CAPACITY);
+  }
+
+  @TearDown
+  public void tearDown() {
+    requestExecutor.shutdown();
+    handshakeExecutor.shutdown();
+  }
+
+  @Benchmark
+  public void readDuringReconnectStorm() throws Exception {
+    Executor executor = dedicated ? handshakeExecutor : requestExecutor;
+    handshakes = new CountDownLatch(CONTROLLERS);
+    for (int i = 0; i < CONTROLLERS; i++) {
+      executor.execute(
+          () -> {
+            try {
+              signer.sign(material);
+            } catch (Exception e) {
+              throw new IllegalStateException(e);
+            }
+            handshakes.countDown();
+          });
+    }
+    CountDownLatch read = new CountDownLatch(1);
+    requestExecutor.execute(read::countDown);
+    read.await();
+  }
+
+  /** Lets the storm finish outside the measured read, so the next one starts from idle threads. */
+  @TearDown(Level.Invocation)
+  public void awaitHandshakes() throws InterruptedException {
+    handshakes.await();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(HandshakeStormBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
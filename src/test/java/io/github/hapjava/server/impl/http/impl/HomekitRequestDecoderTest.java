@@ -0,0 +1,97 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.http.HttpMethod;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HomekitRequestDecoderTest {
+
+  private EmbeddedChannel channel;
+
+  @Before
+  public void setup() {
+    channel = new EmbeddedChannel(new HomekitResponseEncoder(), new HomekitRequestDecoder());
+  }
+
+  @Test
+  public void testPipelinedRequests() {
+    write(
+        "GET /accessories HTTP/1.1\r\nHost: bridge\r\n\r\n"
+            + "PUT /characteristics HTTP/1.1\r\ncontent-length: 4\r\n\r\n{}{}"
+            + "POST /pair-verify HTTP/1.1\r\nContent-Length: 0\r\n\r\n");
+
+    assertRequest(HttpMethod.GET, "/accessories", "");
+    assertRequest(HttpMethod.PUT, "/characteristics", "{}{}");
+    assertRequest(HttpMethod.POST, "/pair-verify", "");
+    Assert.assertNull(channel.readInbound());
+  }
+
+  @Test
+  public void testRequestSplitIntoSingleBytes() {
+    byte[] request =
+        "PUT /characteristics HTTP/1.1\r\nContent-Length: 11\r\n\r\n{\"a\":true}\n"
+            .getBytes(StandardCharsets.US_ASCII);
+    for (byte b : request) {
+      channel.writeInbound(Unpooled.wrappedBuffer(new byte[] {b}));
+    }
+
+    assertRequest(HttpMethod.PUT, "/characteristics", "{\"a\":true}\n");
+  }
+
+  @Test
+  public void testOversizedBodyIsRejectedBeforeItArrives() {
+    write("POST /pair-verify HTTP/1.1\r\nContent-Length: 100000\r\n\r\n");
+
+    Assert.assertNull(channel.readInbound());
+    assertRejected("HTTP/1.1 413 ");
+  }
+
+  @Test
+  public void testOversizedHeadIsRejected() {
+    byte[] uri = new byte[HomekitRequestDecoder.MAX_HEADER_LENGTH];
+    Arrays.fill(uri, (byte) 'a');
+    write("GET /characteristics?id=" + new String(uri, StandardCharsets.US_ASCII));
+
+    assertRejected("HTTP/1.1 400 ");
+  }
+
+  @Test
+  public void testMalformedRequestIsRejected() {
+    write("DELETE /pairings HTTP/1.1\r\n\r\n");
+
+    Assert.assertNull(channel.readInbound());
+    assertRejected("HTTP/1.1 400 ");
+  }
+
+  @Test
+  public void testChunkedBodyIsRejected() {
+    write("PUT /characteristics HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n");
+
+    assertRejected("HTTP/1.1 400 ");
+  }
+
+  private void write(String request) {
+    channel.writeInbound(Unpooled.copiedBuffer(request, StandardCharsets.US_ASCII));
+  }
+
+  private void assertRequest(HttpMethod method, String uri, String body) {
+    HomekitHttpRequest request = channel.readInbound();
+    Assert.assertEquals(method, request.getMethod());
+    Assert.assertEquals(uri, request.getUri());
+    Assert.assertEquals(body, new String(request.getBody(), StandardCharsets.US_ASCII));
+    request.release();
+  }
+
+  private void assertRejected(String statusLine) {
+    ByteBuf response = channel.readOutbound();
+    Assert.assertTrue(response.toString(StandardCharsets.US_ASCII).startsWith(statusLine));
+    response.release();
+    Assert.assertFalse(channel.isOpen());
+  }
+}
@@ -0,0 +1,204 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.http.HttpResponse;
+import io.github.hapjava.server.impl.http.StreamingHttpResponse;
+import io.github.hapjava.server.impl.responses.NotFoundResponse;
+import io.github.hapjava.server.impl.responses.OkResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HomekitResponseEncoderTest {
+
+  private EmbeddedChannel channel;
+
+  @Before
+  public void setup() {
+    channel = new EmbeddedChannel(new HomekitResponseEncoder());
+  }
+
+  @Test
+  public void testJsonResponse() {
+    channel.writeOutbound(new JsonResponse("{\"a\":1}".getBytes(StandardCharsets.UTF_8)));
+
+    Assert.assertEquals(
+        "HTTP/1.1 200 OK\r\n"
+            + "Content-type: application/hap+json\r\n"
+            + "Content-Length: 7\r\n"
+            + "Connection: keep-alive\r\n"
+            + "\r\n"
+            + "{\"a\":1}",
+        readOutbound());
+  }
+
+  @Test
+  public void testEventResponse() {
+    channel.writeOutbound(
+        new JsonResponse(new byte[0]) {
+          @Override
+          public HttpVersion getVersion() {
+            return HttpVersion.EVENT_1_0;
+          }
+        });
+
+    Assert.assertEquals(
+        "EVENT/1.0 200 OK\r\n"
+            + "Content-type: application/hap+json\r\n"
+            + "Content-Length: 0\r\n"
+            + "Connection: keep-alive\r\n"
+            + "\r\n",
+        readOutbound());
+  }
+
+  @Test
+  public void testFixedResponse() {
+    channel.writeOutbound(NotFoundResponse.INSTANCE);
+    channel.writeOutbound(NotFoundResponse.INSTANCE);
+
+    String expected =
+        "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: keep-alive\r\n\r\n";
+    Assert.assertEquals(expected, readOutbound());
+    Assert.assertEquals(expected, readOutbound());
+  }
+
+  @Test
+  public void testUncommonStatus() {
+    channel.writeOutbound((HttpResponse) () -> 507);
+
+    Assert.assertEquals(
+        "HTTP/1.1 507 Insufficient Storage\r\nContent-Length: 0\r\nConnection: keep-alive\r\n\r\n",
+        readOutbound());
+  }
+
+  @Test
+  public void testLargeBodyIsNotCopied() {
+    byte[] body = new byte[HomekitResponseEncoder.COPY_THRESHOLD + 1];
+    Arrays.fill(body, (byte) 'x');
+    channel.writeOutbound(new JsonResponse(body));
+
+    ByteBuf buf = channel.readOutbound();
+    body[body.length - 1] = 'y';
+    String encoded = buf.toString(StandardCharsets.UTF_8);
+    buf.release();
+    Assert.assertTrue(encoded.startsWith("HTTP/1.1 200 OK\r\n"));
+    Assert.assertTrue(encoded.contains("Content-Length: " + body.length + "\r\n"));
+    Assert.assertTrue(encoded.endsWith("\r\n\r\n" + new String(body, StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testSmallStreamingBodyIsWrittenWithTheHeader() {
+    channel.writeOutbound(new PiecesResponse(3, 100));
+
+    Assert.assertEquals(
+        "HTTP/1.1 200 OK\r\n"
+            + "Content-Length: 300\r\n"
+            + "Connection: keep-alive\r\n"
+            + "\r\n"
+            + repeat('x', 300),
+        readOutbound());
+    Assert.assertNull(channel.readOutbound());
+  }
+
+  @Test
+  public void testLargeStreamingBodyIsWrittenInChunks() {
+    channel = new EmbeddedChannel(new ChunkedWriteHandler(), new HomekitResponseEncoder());
+    PiecesResponse response = new PiecesResponse(100, 3000);
+
+    channel.writeOutbound(response);
+
+    Assert.assertEquals(
+        "HTTP/1.1 200 OK\r\nContent-Length: 300000\r\nConnection: keep-alive\r\n\r\n",
+        readOutbound());
+    StringBuilder body = new StringBuilder();
+    ByteBuf chunk;
+    while ((chunk = channel.readOutbound()) != null) {
+      Assert.assertTrue(chunk.readableBytes() <= StreamingBodyInput.CHUNK_SIZE);
+      body.append(chunk.toString(StandardCharsets.UTF_8));
+      chunk.release();
+    }
+    Assert.assertEquals(repeat('x', 300000), body.toString());
+  }
+
+  @Test
+  public void testStreamingBodyIsProducedWhenFlushed() {
+    channel = new EmbeddedChannel(new ChunkedWriteHandler(), new HomekitResponseEncoder());
+    PiecesResponse response = new PiecesResponse(100, 3000);
+
+    channel.writeOneOutbound(response);
+    Assert.assertEquals(0, response.written);
+
+    channel.flushOutbound();
+    Assert.assertEquals(100, response.written);
+    channel.finishAndReleaseAll();
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  private String readOutbound() {
+    ByteBuf buf = channel.readOutbound();
+    try {
+      return buf.toString(StandardCharsets.UTF_8);
+    } finally {
+      buf.release();
+    }
+  }
+
+  /** A body of {@code count} pieces of {@code size} times 'x'. */
+  private static class PiecesResponse implements StreamingHttpResponse {
+
+    private final int count;
+    private final byte[] piece;
+    private int written = 0;
+
+    PiecesResponse(int count, int size) {
+      this.count = count;
+      this.piece = new byte[size];
+      Arrays.fill(piece, (byte) 'x');
+    }
+
+    @Override
+    public int getStatusCode() {
+      return 200;
+    }
+
+    @Override
+    public int getContentLength() {
+      return count * piece.length;
+    }
+
+    @Override
+    public boolean writeNext(OutputStream out) throws IOException {
+      if (written == count) {
+        return false;
+      }
+      out.write(piece);
+      written++;
+      return true;
+    }
+  }
+
+  private static class JsonResponse extends OkResponse {
+
+    JsonResponse(byte[] body) {
+      super(body);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+      return Collections.singletonMap("Content-type", "application/hap+json");
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import static org.mockito.Mockito.mock;
+
+import io.github.hapjava.server.impl.http.HomekitClientConnectionFactory;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HomekitRuntimeTest {
+
+  private final HomekitRuntime runtime =
+      new HomekitRuntime(Transport.NIO, 1, 2, 2, RequestExecutor.DEFAULT_QUEUE_CAPACITY);
+
+  @After
+  public void tearDown() {
+    runtime.shutdown();
+  }
+
+  @Test
+  public void testThreadCountStaysFlatAsServersAreAdded() throws Exception {
+    List<HomekitHttpServer> servers = new ArrayList<>();
+    servers.add(startServer());
+    int threads = homekitThreads();
+    for (int i = 0; i < 9; i++) {
+      servers.add(startServer());
+    }
+
+    Assert.assertEquals(threads, homekitThreads());
+    servers.forEach(HomekitHttpServer::stop);
+  }
+
+  @Test
+  public void testStoppingOneServerLeavesTheRuntimeRunning() throws Exception {
+    startServer().stop();
+
+    HomekitHttpServer server = startServer();
+    server.stop();
+  }
+
+  @Test
+  public void testMetricsOnlyCountTheirOwnServer() throws Exception {
+    ServerMetrics first = new ServerMetrics();
+    ServerMetrics second = new ServerMetrics();
+    Executor firstExecutor = first.instrument(runtime.getRequestExecutor());
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+
+    firstExecutor.execute(
+        () -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    started.await();
+
+    Assert.assertEquals(1, first.getHandlerActiveThreads());
+    Assert.assertEquals(0, second.getHandlerActiveThreads());
+    Assert.assertEquals(1, runtime.getHandlerActiveThreads());
+    release.countDown();
+  }
+
+  @Test
+  public void testRejectedRequestsAreCounted() {
+    ServerMetrics metrics = new ServerMetrics();
+    Executor executor =
+        metrics.instrument(
+            task -> {
+              throw new RejectedExecutionException();
+            });
+
+    try {
+      executor.execute(() -> {});
+      Assert.fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    Assert.assertEquals(1, metrics.getHandlerRejectedCount());
+    Assert.assertEquals(0, metrics.getHandlerQueueDepth());
+  }
+
+  @Test
+  public void testHandshakesRunWhileAllHandlersAreBusy() throws Exception {
+    ServerMetrics metrics = new ServerMetrics();
+    Executor requests = metrics.instrument(runtime.getRequestExecutor());
+    Executor handshakes = metrics.instrumentHandshakes(runtime.getHandshakeExecutor());
+    CountDownLatch release = new CountDownLatch(1);
+    for (int i = 0; i < 3; i++) {
+      requests.execute(
+          () -> {
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          });
+    }
+
+    CountDownLatch handshake = new CountDownLatch(1);
+    handshakes.execute(handshake::countDown);
+
+    Assert.assertTrue(handshake.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(1, metrics.getHandlerQueueDepth());
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (metrics.getHandshakeLatency().getCount() == 0 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    Assert.assertEquals(1, metrics.getHandshakeLatency().getCount());
+    Assert.assertEquals(0, metrics.getHandshakeQueueDepth());
+    release.countDown();
+  }
+
+  private HomekitHttpServer startServer() throws Exception {
+    HomekitHttpServer server =
+        new HomekitHttpServer(
+            runtime, Collections.singletonList(InetAddress.getLoopbackAddress()), 0);
+    Assert.assertTrue(server.start(mock(HomekitClientConnectionFactory.class)).get() > 0);
+    return server;
+  }
+
+  private static int homekitThreads() {
+    return (int)
+        Thread.getAllStackTraces().keySet().stream()
+            .filter(t -> t.getName().startsWith("homekit-"))
+            .count();
+  }
+}
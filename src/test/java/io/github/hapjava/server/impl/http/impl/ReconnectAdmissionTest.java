@@ -0,0 +1,101 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReconnectAdmissionTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final ServerSettings settings = new ServerSettings();
+  private final ServerMetrics metrics = new ServerMetrics();
+  private final Timer timer = mock(Timer.class);
+  private final ReconnectAdmission admission = new ReconnectAdmission(settings, metrics, timer);
+
+  @Before
+  public void setup() {
+    when(timer.newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class)))
+        .thenReturn(mock(Timeout.class));
+  }
+
+  @Test
+  public void testUnlimitedByDefault() {
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(0, admission.tryAcquire("/pair-verify", 0));
+    }
+  }
+
+  @Test
+  public void testOnlyReconnectRequestsAreLimited() {
+    settings.setReconnectAdmission(1, 1, 0, TimeUnit.SECONDS);
+
+    Assert.assertEquals(0, admission.tryAcquire("/accessories", 0));
+    Assert.assertEquals(ReconnectAdmission.REJECTED, admission.tryAcquire("/pair-verify", 0));
+    Assert.assertEquals(0, admission.tryAcquire("/characteristics?id=1.1", 0));
+    Assert.assertEquals(0, admission.tryAcquire("/pair-setup", 0));
+  }
+
+  @Test
+  public void testExcessRequestsWaitTheirTurnUpToTheMaximum() {
+    settings.setReconnectAdmission(10, 2, 250, TimeUnit.MILLISECONDS);
+
+    Assert.assertEquals(0, admission.tryAcquire("/pair-verify", 0));
+    Assert.assertEquals(0, admission.tryAcquire("/pair-verify", 0));
+    Assert.assertEquals(SECOND / 10, admission.tryAcquire("/pair-verify", 0));
+    Assert.assertEquals(2 * SECOND / 10, admission.tryAcquire("/pair-verify", 0));
+    Assert.assertEquals(ReconnectAdmission.REJECTED, admission.tryAcquire("/pair-verify", 0));
+    // the rejected request did not reserve a token
+    Assert.assertEquals(2 * SECOND / 10, admission.tryAcquire("/pair-verify", SECOND / 10));
+
+    Assert.assertEquals(2, metrics.getAdmittedRightAwayCount());
+    Assert.assertEquals(3, metrics.getAdmittedAfterWaitCount());
+    Assert.assertEquals(1, metrics.getAdmissionRejectedCount());
+    Assert.assertEquals(3, metrics.getAdmissionWait().getCount());
+  }
+
+  @Test
+  public void testWaveSettlesOnceTheBucketIsFull() {
+    settings.setReconnectAdmission(10, 1, 0, TimeUnit.SECONDS);
+
+    admission.tryAcquire("/pair-verify", 0);
+    admission.tryAcquire("/pair-verify", 0);
+    admission.tryAcquire("/accessories", SECOND / 20);
+    Assert.assertEquals(0, metrics.getReconnectWaveCount());
+
+    Assert.assertEquals(0, admission.tryAcquire("/accessories", SECOND));
+    Assert.assertEquals(1, metrics.getReconnectWaveCount());
+    Assert.assertEquals(50, metrics.getLastReconnectWaveMillis());
+  }
+
+  @Test
+  public void testWaveSettlesWithoutFurtherRequests() {
+    settings.setReconnectAdmission(10, 1, 0, TimeUnit.SECONDS);
+
+    admission.tryAcquire("/pair-verify", 0);
+    admission.tryAcquire("/pair-verify", 0);
+    admission.tryAcquire("/accessories", SECOND / 20);
+    // one check, due once the bucket has filled up again
+    verify(timer).newTimeout(any(TimerTask.class), eq(SECOND / 10), eq(TimeUnit.NANOSECONDS));
+
+    admission.settle(SECOND / 20 + 1);
+    Assert.assertEquals(0, metrics.getReconnectWaveCount());
+    verify(timer, times(2)).newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class));
+
+    admission.settle(SECOND);
+    Assert.assertEquals(1, metrics.getReconnectWaveCount());
+    Assert.assertEquals(50, metrics.getLastReconnectWaveMillis());
+  }
+}
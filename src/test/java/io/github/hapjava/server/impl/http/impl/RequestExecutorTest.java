@@ -0,0 +1,71 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestExecutorTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final RequestExecutor executor = new RequestExecutor(2, 1);
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void testThreadsAndQueueAreBounded() throws Exception {
+    CountDownLatch started = new CountDownLatch(2);
+    for (int i = 0; i < 3; i++) {
+      executor.execute(
+          () -> {
+            started.countDown();
+            awaitRelease();
+          });
+    }
+    Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    Assert.assertEquals(2, executor.getActiveThreads());
+    Assert.assertEquals(1, executor.getQueueDepth());
+    try {
+      executor.execute(() -> {});
+      Assert.fail("Executor should be full");
+    } catch (RejectedExecutionException e) {
+      Assert.assertEquals(1, executor.getRejectedCount());
+    }
+  }
+
+  @Test
+  public void testShutdownFinishesQueuedRequestsAndRejectsNewOnes() throws Exception {
+    CountDownLatch finished = new CountDownLatch(3);
+    for (int i = 0; i < 3; i++) {
+      executor.execute(
+          () -> {
+            awaitRelease();
+            finished.countDown();
+          });
+    }
+
+    executor.shutdown();
+    try {
+      executor.execute(() -> {});
+      Assert.fail("Executor has been shut down");
+    } catch (RejectedExecutionException expected) {
+    }
+    release.countDown();
+    Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+  }
+
+  private void awaitRelease() {
+    try {
+      release.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.github.hapjava.server.impl.http.HttpResponse;
+import io.github.hapjava.server.impl.responses.NotFoundResponse;
+import io.github.hapjava.server.impl.responses.OkResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link HomekitResponseEncoder} with the previous path, which converted each response to
+ * a Netty {@link FullHttpResponse} and ran it through {@link HttpResponseEncoder}, joining the
+ * parts into one buffer. Run with {@code -prof gc} to see the allocation rate per response.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.github.hapjava.server.impl.http.impl.ResponseEncoderBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ResponseEncoderBenchmark {
+
+  private static final HttpVersion EVENT_VERSION = new HttpVersion("EVENT", 1, 0, true);
+
+  @Param({"event", "listing", "notFound"})
+  public String response;
+
+  private HttpResponse message;
+  private EmbeddedChannel channel;
+  private ChannelHandlerContext ctx;
+  private final HomekitResponseEncoder encoder = new HomekitResponseEncoder();
+  private final NettyEncoder nettyEncoder = new NettyEncoder();
+  private final List<Object> out = new ArrayList<>();
+
+  @Setup
+  public void setup() {
+    switch (response) {
+      case "event":
+        message =
+            new JsonResponse(
+                "{\"characteristics\":[{\"aid\":2,\"iid\":10,\"value\":true}]}"
+                    .getBytes(StandardCharsets.UTF_8)) {
+              @Override
+              public HttpVersion getVersion() {
+                return HttpVersion.EVENT_1_0;
+              }
+            };
+        break;
+      case "listing":
+        byte[] body = new byte[32 * 1024];
+        Arrays.fill(body, (byte) 'a');
+        message = new JsonResponse(body);
+        break;
+      default:
+        message = NotFoundResponse.INSTANCE;
+    }
+    channel = new EmbeddedChannel();
+    channel.pipeline().addLast(encoder);
+    ctx = channel.pipeline().firstContext();
+  }
+
+  @TearDown
+  public void tearDown() {
+    channel.finishAndReleaseAll();
+  }
+
+  @Benchmark
+  public int homekitEncoder() throws Exception {
+    encoder.encode(ctx, message, out);
+    return drain();
+  }
+
+  @Benchmark
+  public int nettyEncoder() throws Exception {
+    nettyEncoder.encode(ctx, toNetty(message), out);
+    return drain();
+  }
+
+  private int drain() {
+    int length = 0;
+    for (Object buf : out) {
+      length += ((ByteBuf) buf).readableBytes();
+      ReferenceCountUtil.release(buf);
+    }
+    out.clear();
+    return length;
+  }
+
+  private static FullHttpResponse toNetty(HttpResponse homekitResponse) {
+    FullHttpResponse response =
+        new DefaultFullHttpResponse(
+            homekitResponse.getVersion() == HttpResponse.HttpVersion.EVENT_1_0
+                ? EVENT_VERSION
+                : HttpVersion.HTTP_1_1,
+            HttpResponseStatus.valueOf(homekitResponse.getStatusCode()),
+            Unpooled.wrappedBuffer(homekitResponse.getBody()));
+    for (Map.Entry<String, String> header : homekitResponse.getHeaders().entrySet()) {
+      response.headers().add(header.getKey(), header.getValue());
+    }
+    response.headers().set(HttpHeaders.Names.CONTENT_LENGTH, response.content().readableBytes());
+    response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+    return response;
+  }
+
+  private static class NettyEncoder extends HttpResponseEncoder {
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> out)
+        throws Exception {
+      int first = out.size();
+      super.encode(ctx, msg, out);
+      int parts = out.size() - first;
+      if (parts > 1) {
+        CompositeByteBuf composite = ctx.alloc().compositeBuffer(parts);
+        for (int i = first; i < out.size(); i++) {
+          composite.addComponent(true, (ByteBuf) out.get(i));
+        }
+        out.subList(first, out.size()).clear();
+        out.add(composite);
+      }
+    }
+  }
+
+  private static class JsonResponse extends OkResponse {
+
+    JsonResponse(byte[] body) {
+      super(body);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+      return Collections.singletonMap("Content-type", "application/hap+json");
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(ResponseEncoderBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,81 @@
+package io.github.hapjava.server.impl.http.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WireTapTest {
+
+  private static final InetSocketAddress CONTROLLER =
+      new InetSocketAddress(InetAddress.getLoopbackAddress(), 51234);
+
+  private final WireTap wireTap = new WireTap();
+
+  @After
+  public void tearDown() {
+    wireTap.stop();
+  }
+
+  @Test
+  public void testOnlyTappedAddressIsRecorded() throws Exception {
+    wireTap.start(CONTROLLER.getAddress());
+    Assert.assertTrue(wireTap.isTapped(CONTROLLER.getAddress()));
+    Assert.assertFalse(wireTap.isTapped(InetAddress.getByName("192.0.2.1")));
+
+    wireTap.read(CONTROLLER, message("GET /accessories"));
+    wireTap.write(new InetSocketAddress("192.0.2.1", 51234), message("PUT /characteristics"));
+
+    String dump = dump();
+    Assert.assertTrue(dump.contains(" READ "));
+    Assert.assertFalse(dump.contains(" WRITE "));
+  }
+
+  @Test
+  public void testOldestMessagesAreOverwritten() throws Exception {
+    wireTap.start(CONTROLLER.getAddress(), 1, 200);
+    for (int i = 0; i < 20; i++) {
+      wireTap.write(CONTROLLER, message("EVENT/1.0 200 OK #" + (char) ('a' + i)));
+    }
+
+    String dump = dump();
+    Assert.assertFalse(dump.contains("#a"));
+    Assert.assertTrue(dump.contains("#t"));
+  }
+
+  @Test
+  public void testMessagesAreSampled() throws Exception {
+    wireTap.start(CONTROLLER.getAddress(), 2, WireTap.DEFAULT_CAPACITY);
+    for (int i = 0; i < 4; i++) {
+      wireTap.read(CONTROLLER, message("GET /accessories"));
+    }
+
+    Assert.assertEquals(2, dump().split(" READ ").length - 1);
+  }
+
+  @Test
+  public void testStoppedTapRecordsNothing() throws Exception {
+    wireTap.start(CONTROLLER.getAddress());
+    wireTap.stop();
+    wireTap.read(CONTROLLER, message("GET /accessories"));
+
+    Assert.assertFalse(wireTap.isTapped(CONTROLLER.getAddress()));
+    Assert.assertEquals("", dump());
+  }
+
+  private String dump() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    wireTap.dump(out);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static ByteBuf message(String message) {
+    return Unpooled.copiedBuffer(message, StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,109 @@
+package io.github.hapjava.server.impl.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Serializes the listing of a bridge with 150 accessories as one document, the way it used to be
+ * built, and streamed. Run with {@code -prof gc} to compare the bytes allocated per listing; the
+ * streamed listing only ever holds one accessory as text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AccessoryListingBenchmark {
+
+  private static final int ACCESSORIES = 150;
+
+  private final List<AccessoryListingResponse.Accessory> accessories = new ArrayList<>();
+  private final List<List<JsonObject>> services = new ArrayList<>();
+
+  @Setup
+  public void setup() {
+    for (int aid = 1; aid <= ACCESSORIES; aid++) {
+      List<JsonObject> accessoryServices = new ArrayList<>();
+      for (int service = 0; service < 3; service++) {
+        JsonArrayBuilder characteristics = Json.createArrayBuilder();
+        for (int iid = 2; iid < 8; iid++) {
+          characteristics.add(
+              Json.createObjectBuilder()
+                  .add("iid", service * 8 + iid)
+                  .add("type", "23")
+                  .add("perms", Json.createArrayBuilder().add("pr").add("pw").add("ev"))
+                  .add("format", "string")
+                  .add("value", "Accessory " + aid)
+                  .add("description", "Name"));
+        }
+        accessoryServices.add(
+            Json.createObjectBuilder()
+                .add("iid", service * 8 + 1)
+                .add("type", "43")
+                .add("characteristics", characteristics)
+                .build());
+      }
+      services.add(accessoryServices);
+      accessories.add(new AccessoryListingResponse.Accessory(aid, accessoryServices));
+    }
+  }
+
+  @Benchmark
+  public byte[] document() {
+    JsonArrayBuilder listing = Json.createArrayBuilder();
+    for (int aid = 1; aid <= ACCESSORIES; aid++) {
+      JsonArrayBuilder jsonServices = Json.createArrayBuilder();
+      services.get(aid - 1).forEach(jsonServices::add);
+      JsonObjectBuilder accessory = Json.createObjectBuilder().add("aid", aid);
+      listing.add(accessory.add("services", jsonServices));
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    Json.createWriter(baos).write(Json.createObjectBuilder().add("accessories", listing).build());
+    return baos.toByteArray();
+  }
+
+  @Benchmark
+  public int streamed() throws Exception {
+    AccessoryListingResponse response = new AccessoryListingResponse(accessories);
+    Sink sink = new Sink();
+    while (response.writeNext(sink)) {}
+    return response.getContentLength();
+  }
+
+  /** Stands in for the chunk buffers, which are reused. */
+  private static class Sink extends OutputStream {
+
+    @Override
+    public void write(int b) {}
+
+    @Override
+    public void write(byte[] b, int off, int len) {}
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder().include(AccessoryListingBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,78 @@
+package io.github.hapjava.server.impl.json;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AccessoryListingResponseTest {
+
+  @Test
+  public void testStreamedListingMatchesTheDocument() throws Exception {
+    List<AccessoryListingResponse.Accessory> accessories = new ArrayList<>();
+    JsonArrayBuilder document = Json.createArrayBuilder();
+    for (int aid = 1; aid <= 3; aid++) {
+      List<JsonObject> services = Arrays.asList(service(1, "3E"), service(8, "43"));
+      accessories.add(new AccessoryListingResponse.Accessory(aid, services));
+      JsonArrayBuilder jsonServices = Json.createArrayBuilder();
+      services.forEach(jsonServices::add);
+      document.add(Json.createObjectBuilder().add("aid", aid).add("services", jsonServices));
+    }
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    Json.createWriter(expected)
+        .write(Json.createObjectBuilder().add("accessories", document).build());
+
+    AccessoryListingResponse response = new AccessoryListingResponse(accessories);
+
+    Assert.assertEquals(expected.size(), response.getContentLength());
+    Assert.assertEquals(expected.toString("UTF-8"), write(response));
+  }
+
+  @Test
+  public void testBodyIsRenderedOnDemand() throws Exception {
+    List<AccessoryListingResponse.Accessory> accessories =
+        Collections.singletonList(
+            new AccessoryListingResponse.Accessory(1, Collections.singletonList(service(1, "3E"))));
+    AccessoryListingResponse response = new AccessoryListingResponse(accessories);
+
+    ByteBuffer body = response.getBody();
+    Assert.assertEquals(response.getContentLength(), body.remaining());
+    byte[] bytes = new byte[body.remaining()];
+    body.get(bytes);
+    // rendering the body does not affect streaming it
+    Assert.assertEquals(write(response), new String(bytes, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testEmptyListing() throws Exception {
+    AccessoryListingResponse response = new AccessoryListingResponse(Collections.emptyList());
+
+    Assert.assertEquals("{\"accessories\":[]}", write(response));
+    Assert.assertEquals(18, response.getContentLength());
+  }
+
+  private static JsonObject service(int iid, String type) {
+    return Json.createObjectBuilder()
+        .add("iid", iid)
+        .add("type", type)
+        .add(
+            "characteristics",
+            Json.createArrayBuilder()
+                .add(Json.createObjectBuilder().add("iid", iid + 1).add("value", "Lamp ü")))
+        .build();
+  }
+
+  private static String write(AccessoryListingResponse response) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    while (response.writeNext(out)) {}
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
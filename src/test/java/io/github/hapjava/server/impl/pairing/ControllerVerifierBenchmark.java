@@ -0,0 +1,68 @@
+package io.github.hapjava.server.impl.pairing;
+
+import io.github.hapjava.server.impl.crypto.EdsaSigner;
+import io.github.hapjava.server.impl.crypto.EdsaVerifier;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Verifies the signature of M3 of pair-verify the way every handshake used to, reading the public
+ * key of the controller and decoding it, and with the {@link ControllerVerifierCache}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ControllerVerifierBenchmark {
+
+  private final PairVerifyController.AuthInfo authInfo = new PairVerifyController.AuthInfo();
+  private final String username = authInfo.getMac() + PairVerifyController.USERNAME;
+  /** Both public keys and the controller identifier, as in M3 of pair-verify. */
+  private final byte[] material = new byte[32 + 12 + 32];
+
+  private byte[] signature;
+  private ControllerVerifierCache cache;
+
+  @Setup
+  public void setup() throws Exception {
+    Random random = new Random(0);
+    byte[] controllerKey = new byte[32];
+    random.nextBytes(controllerKey);
+    random.nextBytes(material);
+    EdsaSigner controller = new EdsaSigner(controllerKey);
+    authInfo.createUser(username, controller.getPublicKey());
+    signature = controller.sign(material);
+    cache = ControllerVerifierCache.forAuthInfo(authInfo);
+  }
+
+  @Benchmark
+  public boolean newVerifier() throws Exception {
+    return new EdsaVerifier(authInfo.getUserPublicKey(username)).verify(material, signature);
+  }
+
+  @Benchmark
+  public boolean verifierCache() throws Exception {
+    return cache.get(username).verify(material, signature);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder().include(ControllerVerifierBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,78 @@
+package io.github.hapjava.server.impl.pairing;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.hapjava.server.HomekitAuthInfo;
+import io.github.hapjava.server.impl.crypto.EdsaSigner;
+import io.github.hapjava.server.impl.crypto.EdsaVerifier;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ControllerVerifierCacheTest {
+
+  private static final String MAC = "12:34:56:78:9A:BC";
+  private static final String USERNAME = MAC + PairVerifyController.USERNAME;
+  private static final byte[] MATERIAL = "PV-Msg03 material".getBytes(StandardCharsets.UTF_8);
+
+  private final EdsaSigner controller = signer(1);
+  private HomekitAuthInfo authInfo;
+  private ControllerVerifierCache cache;
+
+  @Before
+  public void setup() {
+    authInfo = mock(HomekitAuthInfo.class);
+    when(authInfo.getUserPublicKey(USERNAME)).thenReturn(controller.getPublicKey());
+    cache = ControllerVerifierCache.forAuthInfo(authInfo);
+  }
+
+  @Test
+  public void testVerifierIsReusedForTheSameKey() throws Exception {
+    EdsaVerifier verifier = cache.get(USERNAME);
+
+    Assert.assertTrue(verifier.verify(MATERIAL, controller.sign(MATERIAL)));
+    Assert.assertSame(verifier, cache.get(USERNAME));
+    Assert.assertSame(verifier, ControllerVerifierCache.forAuthInfo(authInfo).get(USERNAME));
+  }
+
+  @Test
+  public void testUnknownControllerIsNotCached() {
+    Assert.assertNull(cache.get("unknown"));
+    Assert.assertNull(cache.get("unknown"));
+    verify(authInfo, times(2)).getUserPublicKey("unknown");
+  }
+
+  @Test
+  public void testPairingRemovedOnTheAuthInfoIsSeenRightAway() {
+    cache.get(USERNAME);
+
+    when(authInfo.getUserPublicKey(USERNAME)).thenReturn(null);
+
+    Assert.assertNull(cache.get(USERNAME));
+  }
+
+  @Test
+  public void testReplacedKeyIsSeenRightAway() throws Exception {
+    EdsaVerifier first = cache.get(USERNAME);
+    EdsaSigner replacement = signer(2);
+
+    when(authInfo.getUserPublicKey(USERNAME)).thenReturn(replacement.getPublicKey());
+
+    EdsaVerifier second = cache.get(USERNAME);
+    Assert.assertNotSame(first, second);
+    Assert.assertTrue(second.verify(MATERIAL, replacement.sign(MATERIAL)));
+    Assert.assertFalse(second.verify(MATERIAL, controller.sign(MATERIAL)));
+    Assert.assertSame(second, cache.get(USERNAME));
+  }
+
+  private static EdsaSigner signer(int fill) {
+    byte[] key = new byte[32];
+    Arrays.fill(key, (byte) fill);
+    return new EdsaSigner(key);
+  }
+}
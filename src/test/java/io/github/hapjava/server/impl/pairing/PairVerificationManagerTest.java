@@ -0,0 +1,92 @@
+package io.github.hapjava.server.impl.pairing;
+
+import static org.mockito.Mockito.mock;
+
+import io.github.hapjava.server.impl.HomekitRegistry;
+import io.github.hapjava.server.impl.http.HttpResponse;
+import io.github.hapjava.server.impl.jmdns.JmdnsHomekitAdvertiser;
+import java.nio.ByteBuffer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PairVerificationManagerTest {
+
+  private PairVerifyController controller;
+  private HomekitRegistry registry;
+  private SessionResumptionCache sessions;
+
+  @Before
+  public void setup() {
+    controller = new PairVerifyController();
+    registry = new HomekitRegistry("test");
+    sessions = new SessionResumptionCache();
+  }
+
+  @Test
+  public void testVerifiedSessionCanBeResumedRepeatedly() throws Exception {
+    assertUpgraded(controller.verify(newManager()), false);
+    Assert.assertEquals(1, sessions.size());
+
+    assertUpgraded(controller.resume(newManager(), false), true);
+    assertUpgraded(controller.resume(newManager(), false), true);
+    Assert.assertEquals(1, sessions.size());
+  }
+
+  @Test
+  public void testUnknownSessionFallsBackToFullVerify() throws Exception {
+    controller.verify(newManager());
+    sessions.clear();
+
+    assertUpgraded(controller.resume(newManager(), false), false);
+  }
+
+  @Test
+  public void testUnauthenticatedResumeFallsBackToFullVerify() throws Exception {
+    controller.verify(newManager());
+
+    assertUpgraded(controller.resume(newManager(), true), false);
+    assertUpgraded(controller.resume(newManager(), false), true);
+  }
+
+  @Test
+  public void testRemovedPairingIsNotResumed() throws Exception {
+    controller.verify(newManager());
+    controller.authInfo.removeUser(controller.authInfo.getMac() + PairVerifyController.USERNAME);
+
+    try {
+      controller.resume(newManager(), false);
+      Assert.fail();
+    } catch (Exception e) {
+      Assert.assertTrue(e.getMessage().startsWith("Unknown user"));
+    }
+    Assert.assertEquals(0, sessions.size());
+  }
+
+  @Test
+  public void testRemovedPairingIsNotVerified() throws Exception {
+    controller.verify(newManager());
+    controller.removePairing(
+        new PairingUpdateController(controller.authInfo, mock(JmdnsHomekitAdvertiser.class)));
+
+    try {
+      controller.verify(newManager());
+      Assert.fail();
+    } catch (Exception e) {
+      Assert.assertTrue(e.getMessage().startsWith("Unknown user"));
+    }
+  }
+
+  private PairVerificationManager newManager() {
+    return new PairVerificationManager(controller.authInfo, registry, sessions);
+  }
+
+  private void assertUpgraded(HttpResponse response, boolean resumed) throws Exception {
+    Assert.assertTrue(response instanceof UpgradeResponse);
+    Assert.assertEquals(
+        resumed, PairVerifyController.decode(response).getBytes(MessageType.METHOD) != null);
+    Assert.assertEquals(
+        ByteBuffer.wrap(controller.accessoryWriteKey()),
+        ((UpgradeResponse) response).getWriteKey());
+  }
+}
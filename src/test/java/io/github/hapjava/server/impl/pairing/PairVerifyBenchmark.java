@@ -0,0 +1,60 @@
+package io.github.hapjava.server.impl.pairing;
+
+import io.github.hapjava.server.impl.HomekitRegistry;
+import io.github.hapjava.server.impl.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Handshakes per second of a reconnecting controller with a full pair-verify and with Pair Resume.
+ * Both include the work of the controller, which for a full pair-verify is about as much as that of
+ * the accessory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PairVerifyBenchmark {
+
+  private PairVerifyController controller;
+  private HomekitRegistry registry;
+  private SessionResumptionCache sessions;
+
+  @Setup
+  public void setup() throws Exception {
+    controller = new PairVerifyController();
+    registry = new HomekitRegistry("benchmark");
+    sessions = new SessionResumptionCache();
+    controller.verify(new PairVerificationManager(controller.authInfo, registry, sessions));
+  }
+
+  @Benchmark
+  public HttpResponse fullVerify() throws Exception {
+    return controller.verify(new PairVerificationManager(controller.authInfo, registry, sessions));
+  }
+
+  @Benchmark
+  public HttpResponse resume() throws Exception {
+    return controller.resume(
+        new PairVerificationManager(controller.authInfo, registry, sessions), false);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(PairVerifyBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,240 @@
+package io.github.hapjava.server.impl.pairing;
+
+import djb.Curve25519;
+import io.github.hapjava.server.HomekitAuthInfo;
+import io.github.hapjava.server.impl.crypto.AeadProviders;
+import io.github.hapjava.server.impl.crypto.EdsaSigner;
+import io.github.hapjava.server.impl.http.HttpMethod;
+import io.github.hapjava.server.impl.http.HttpRequest;
+import io.github.hapjava.server.impl.http.HttpResponse;
+import io.github.hapjava.server.impl.pairing.TypeLengthValueUtils.DecodeResult;
+import io.github.hapjava.server.impl.pairing.TypeLengthValueUtils.Encoder;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.params.HKDFParameters;
+
+/** The controller side of pair-verify and Pair Resume, paired with an in-memory accessory. */
+class PairVerifyController {
+
+  static final String USERNAME = "controller-1";
+
+  final AuthInfo authInfo = new AuthInfo();
+  private final Random random = new Random(1);
+  private final byte[] longTermSecretKey = randomBytes(32);
+  private byte[] sharedSecret;
+  private byte[] sessionId;
+
+  PairVerifyController() {
+    authInfo.createUser(
+        authInfo.getMac() + USERNAME, new EdsaSigner(longTermSecretKey).getPublicKey());
+  }
+
+  /** Runs a full pair-verify and returns the final response. */
+  HttpResponse verify(PairVerificationManager accessory) throws Exception {
+    byte[] publicKey = new byte[32];
+    byte[] privateKey = randomBytes(32);
+    Curve25519.keygen(publicKey, null, privateKey);
+    Encoder m1 = TypeLengthValueUtils.getEncoder();
+    m1.add(MessageType.STATE, (short) 1);
+    m1.add(MessageType.PUBLIC_KEY, publicKey);
+    return finishVerify(accessory, publicKey, privateKey, accessory.handle(request(m1)));
+  }
+
+  /**
+   * Asks to resume the last session and returns the final response, continuing with a full
+   * pair-verify if the accessory does not resume.
+   */
+  HttpResponse resume(PairVerificationManager accessory, boolean tamper) throws Exception {
+    byte[] publicKey = new byte[32];
+    byte[] privateKey = randomBytes(32);
+    Curve25519.keygen(publicKey, null, privateKey);
+    byte[] requestKey =
+        hkdf(
+            sharedSecret,
+            ByteUtils.joinBytes(publicKey, sessionId),
+            "Pair-Resume-Request-Info".getBytes(StandardCharsets.UTF_8));
+    byte[] authTag =
+        AeadProviders.getDefault()
+            .seal(requestKey, "PR-Msg01".getBytes(StandardCharsets.UTF_8), null, new byte[0]);
+    if (tamper) {
+      authTag[0] ^= 1;
+    }
+    Encoder m1 = TypeLengthValueUtils.getEncoder();
+    m1.add(MessageType.STATE, (short) 1);
+    m1.add(MessageType.METHOD, (short) 6);
+    m1.add(MessageType.PUBLIC_KEY, publicKey);
+    m1.add(MessageType.SESSION_ID, sessionId);
+    m1.add(MessageType.ENCRYPTED_DATA, authTag);
+    HttpResponse m2 = accessory.handle(request(m1));
+
+    DecodeResult d = decode(m2);
+    if (d.getBytes(MessageType.METHOD) == null) {
+      return finishVerify(accessory, publicKey, privateKey, m2);
+    }
+    byte[] newSessionId = d.getBytes(MessageType.SESSION_ID);
+    byte[] salt = ByteUtils.joinBytes(publicKey, newSessionId);
+    AeadProviders.getDefault()
+        .open(
+            hkdf(sharedSecret, salt, "Pair-Resume-Response-Info".getBytes(StandardCharsets.UTF_8)),
+            "PR-Msg02".getBytes(StandardCharsets.UTF_8),
+            null,
+            new byte[0],
+            d.getBytes(MessageType.ENCRYPTED_DATA));
+    sharedSecret =
+        hkdf(sharedSecret, salt, "Pair-Resume-Shared-Secret-Info".getBytes(StandardCharsets.UTF_8));
+    sessionId = newSessionId;
+    return m2;
+  }
+
+  /** Removes the pairing of this controller the way an admin controller does. */
+  void removePairing(PairingUpdateController accessory) throws Exception {
+    Encoder request = TypeLengthValueUtils.getEncoder();
+    request.add(MessageType.STATE, (short) 1);
+    request.add(MessageType.METHOD, (short) 4);
+    request.add(MessageType.USERNAME, USERNAME.getBytes(StandardCharsets.UTF_8));
+    accessory.handle(request(request));
+  }
+
+  /** The key the accessory writes with, and the controller reads with, after the last verify. */
+  byte[] accessoryWriteKey() {
+    return hkdf(
+        sharedSecret,
+        "Control-Salt".getBytes(StandardCharsets.UTF_8),
+        "Control-Read-Encryption-Key".getBytes(StandardCharsets.UTF_8));
+  }
+
+  private HttpResponse finishVerify(
+      PairVerificationManager accessory, byte[] publicKey, byte[] privateKey, HttpResponse m2)
+      throws Exception {
+    DecodeResult d = decode(m2);
+    byte[] accessoryPublicKey = d.getBytes(MessageType.PUBLIC_KEY);
+    sharedSecret = new byte[32];
+    Curve25519.curve(sharedSecret, privateKey, accessoryPublicKey);
+    byte[] hkdfKey =
+        hkdf(
+            sharedSecret,
+            "Pair-Verify-Encrypt-Salt".getBytes(StandardCharsets.UTF_8),
+            "Pair-Verify-Encrypt-Info".getBytes(StandardCharsets.UTF_8));
+
+    byte[] username = USERNAME.getBytes(StandardCharsets.UTF_8);
+    Encoder plaintext = TypeLengthValueUtils.getEncoder();
+    plaintext.add(MessageType.USERNAME, username);
+    plaintext.add(
+        MessageType.SIGNATURE,
+        new EdsaSigner(longTermSecretKey)
+            .sign(ByteUtils.joinBytes(publicKey, username, accessoryPublicKey)));
+    Encoder m3 = TypeLengthValueUtils.getEncoder();
+    m3.add(MessageType.STATE, (short) 3);
+    m3.add(
+        MessageType.ENCRYPTED_DATA,
+        AeadProviders.getDefault()
+            .seal(
+                hkdfKey,
+                "PV-Msg03".getBytes(StandardCharsets.UTF_8),
+                null,
+                plaintext.toByteArray()));
+    HttpResponse m4 = accessory.handle(request(m3));
+
+    sessionId =
+        Arrays.copyOf(
+            hkdf(
+                sharedSecret,
+                "Pair-Verify-ResumeSessionID-Salt".getBytes(StandardCharsets.UTF_8),
+                "Pair-Verify-ResumeSessionID-Info".getBytes(StandardCharsets.UTF_8)),
+            8);
+    return m4;
+  }
+
+  static DecodeResult decode(HttpResponse response) throws Exception {
+    ByteBuffer body = response.getBody().duplicate();
+    byte[] bytes = new byte[body.remaining()];
+    body.get(bytes);
+    return TypeLengthValueUtils.decode(bytes);
+  }
+
+  private static HttpRequest request(Encoder body) {
+    byte[] bytes = body.toByteArray();
+    return new HttpRequest() {
+      @Override
+      public String getUri() {
+        return "/pair-verify";
+      }
+
+      @Override
+      public byte[] getBody() {
+        return bytes;
+      }
+
+      @Override
+      public HttpMethod getMethod() {
+        return HttpMethod.POST;
+      }
+    };
+  }
+
+  private static byte[] hkdf(byte[] secret, byte[] salt, byte[] info) {
+    HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA512Digest());
+    hkdf.init(new HKDFParameters(secret, salt, info));
+    byte[] key = new byte[32];
+    hkdf.generateBytes(key, 0, 32);
+    return key;
+  }
+
+  private byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  static class AuthInfo implements HomekitAuthInfo {
+
+    private final byte[] privateKey = new byte[32];
+    private final Map<String, byte[]> users = new HashMap<>();
+
+    AuthInfo() {
+      new Random(2).nextBytes(privateKey);
+    }
+
+    @Override
+    public String getPin() {
+      return "031-45-154";
+    }
+
+    @Override
+    public String getMac() {
+      return "12:34:56:78:9A:BC";
+    }
+
+    @Override
+    public BigInteger getSalt() {
+      return BigInteger.ONE;
+    }
+
+    @Override
+    public byte[] getPrivateKey() {
+      return privateKey;
+    }
+
+    @Override
+    public void createUser(String username, byte[] publicKey) {
+      users.put(username, publicKey);
+    }
+
+    @Override
+    public void removeUser(String username) {
+      users.remove(username);
+    }
+
+    @Override
+    public byte[] getUserPublicKey(String username) {
+      return users.get(username);
+    }
+  }
+}
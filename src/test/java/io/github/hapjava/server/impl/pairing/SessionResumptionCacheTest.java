@@ -0,0 +1,70 @@
+package io.github.hapjava.server.impl.pairing;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SessionResumptionCacheTest {
+
+  private static final byte[] SECRET = {1, 2, 3};
+
+  @Test
+  public void testLeastRecentlyUsedSessionIsDropped() {
+    SessionResumptionCache cache = new SessionResumptionCache(2, 1000);
+    cache.put(id(1), SECRET, "a", 0);
+    cache.put(id(2), SECRET, "b", 0);
+    cache.get(id(1), 1);
+
+    cache.put(id(3), SECRET, "c", 2);
+
+    Assert.assertNotNull(cache.get(id(1), 3));
+    Assert.assertNull(cache.get(id(2), 3));
+    Assert.assertNotNull(cache.get(id(3), 3));
+  }
+
+  @Test
+  public void testSessionExpires() {
+    SessionResumptionCache cache = new SessionResumptionCache(2, 1000);
+    cache.put(id(1), SECRET, "a", 0);
+
+    Assert.assertEquals("a", cache.get(id(1), 999).getUsername());
+    Assert.assertNull(cache.get(id(1), 1000));
+    Assert.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testSessionIsCopied() {
+    SessionResumptionCache cache = new SessionResumptionCache(2, 1000);
+    byte[] secret = SECRET.clone();
+    cache.put(id(1), secret, "a", 0);
+    secret[0] = 0;
+
+    SessionResumptionCache.Session session = cache.get(id(1), 0);
+    cache.remove(id(1));
+
+    Assert.assertArrayEquals(SECRET, session.getSharedSecret());
+  }
+
+  @Test
+  public void testSessionIsResumedOnlyOnce() {
+    SessionResumptionCache cache = new SessionResumptionCache(2, 1000);
+    cache.put(id(1), SECRET, "a", 0);
+
+    Assert.assertTrue(cache.replace(id(1), id(2), SECRET, "a", 1));
+    Assert.assertFalse(cache.replace(id(1), id(3), SECRET, "a", 1));
+    Assert.assertNull(cache.get(id(1), 1));
+    Assert.assertNotNull(cache.get(id(2), 1));
+    Assert.assertNull(cache.get(id(3), 1));
+  }
+
+  @Test
+  public void testZeroCapacityDisablesResumption() {
+    SessionResumptionCache cache = new SessionResumptionCache(0, 1000);
+    cache.put(id(1), SECRET, "a", 0);
+
+    Assert.assertNull(cache.get(id(1), 0));
+  }
+
+  private static byte[] id(int id) {
+    return new byte[] {0, 0, 0, 0, 0, 0, 0, (byte) id};
+  }
+}